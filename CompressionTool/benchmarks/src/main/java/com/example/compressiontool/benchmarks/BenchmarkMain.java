@@ -0,0 +1,66 @@
+package com.example.compressiontool.benchmarks;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatFactory;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs the JMH benchmarks once per thread count and writes all results to one JSON file, so
+// runs can be diffed against each other. Other arguments are passed to JMH unchanged, e.g.
+//   java -jar target/benchmarks.jar --threads 1,4 --out results.json Zip -p corpus=TINY_FILES
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        String threads = "1," + Runtime.getRuntime().availableProcessors();
+        String out = "jmh-results.json";
+        List<String> jmhArgs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = args[++i];
+            } else if (args[i].equals("--out") && i + 1 < args.length) {
+                out = args[++i];
+            } else {
+                jmhArgs.add(args[i]);
+            }
+        }
+
+        CommandLineOptions commandLine = new CommandLineOptions(jmhArgs.toArray(new String[0]));
+        List<RunResult> results = new ArrayList<>();
+        for (String count : threads.split(",")) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(count.trim()));
+            results.addAll(new Runner(options.build()).run());
+        }
+
+        File outFile = new File(out);
+        try (PrintStream stream = new PrintStream(outFile, "UTF-8")) {
+            ResultFormatFactory.getInstance(ResultFormatType.JSON, stream).writeOut(results);
+        }
+
+        System.out.println();
+        System.out.printf("%-40s %-12s %-8s %-7s %-6s %-8s %12s%n",
+                "Benchmark", "Corpus", "Buffer", "Level", "Thr", "ms/op", "MB/s");
+        for (RunResult result : results) {
+            var params = result.getParams();
+            // Class and method only, e.g. ZipBenchmark.compressZip
+            String benchmark = params.getBenchmark();
+            benchmark = benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1);
+            double msPerOp = result.getPrimaryResult().getScore();
+            double megabytes = Double.parseDouble(params.getParam("sizeMb")) * params.getThreads();
+            System.out.printf("%-40s %-12s %-8s %-7s %-6d %-8.2f %12.1f%n",
+                    benchmark,
+                    params.getParam("corpus"), params.getParam("bufferSize"), params.getParam("level"),
+                    params.getThreads(), msPerOp, megabytes / (msPerOp / 1000));
+        }
+        System.out.println("Results written to " + outFile.getAbsolutePath());
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.compressiontool.benchmarks;
+
+import com.example.compressiontool.CompressionService;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+final class BenchmarkSupport {
+
+    static final long MB = 1024 * 1024;
+
+    private BenchmarkSupport() {}
+
+    // A plain service: without Spring there is no activity repository, so nothing is logged
+    static CompressionService service(int bufferSize, int level) {
+        CompressionService service = new CompressionService();
+        service.setBufferSize(bufferSize);
+        service.setCompressionLevel(level);
+        return service;
+    }
+
+    static File tempDirectory(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    static void delete(File dir) throws IOException {
+        if (dir == null || !dir.exists()) return;
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
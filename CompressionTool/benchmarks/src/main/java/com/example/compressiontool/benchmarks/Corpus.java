@@ -0,0 +1,110 @@
+package com.example.compressiontool.benchmarks;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.SplittableRandom;
+import java.util.zip.DeflaterOutputStream;
+
+// Synthetic inputs with fixed seeds, so every run measures the same bytes
+public enum Corpus {
+    TEXT,
+    LOGS,
+    JSON,
+    RANDOM,
+    COMPRESSED,
+    TINY_FILES;
+
+    private static final String[] WORDS = {
+            "the", "of", "and", "to", "in", "a", "is", "that", "for", "it", "as", "was", "with", "be", "by",
+            "on", "not", "he", "this", "are", "or", "his", "from", "at", "which", "but", "have", "an", "had",
+            "they", "you", "were", "their", "one", "all", "we", "can", "her", "has", "there", "been", "if",
+            "more", "when", "will", "would", "who", "so", "no", "compression", "archive", "stream", "buffer",
+            "directory", "service", "request", "response", "performance", "window", "dictionary", "entry"
+    };
+    private static final String[] LEVELS = {"INFO", "INFO", "INFO", "DEBUG", "WARN", "ERROR"};
+    private static final DateTimeFormatter LOG_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    // Creates the corpus under dir and returns it; TINY_FILES is a directory, the rest are single files
+    public File create(File dir, long size) throws IOException {
+        SplittableRandom random = new SplittableRandom(ordinal() * 7919L + 17);
+        File target = new File(dir, name().toLowerCase() + (this == TINY_FILES ? "" : ".dat"));
+        switch (this) {
+            case TINY_FILES -> {
+                target.mkdirs();
+                long written = 0;
+                for (int i = 0; written < size; i++) {
+                    File sub = new File(target, "d" + (i % 32));
+                    sub.mkdirs();
+                    String extension = i % 3 == 0 ? ".json" : i % 3 == 1 ? ".log" : ".txt";
+                    byte[] content = text(random, 64 + random.nextInt(2048));
+                    Files.write(new File(sub, "f" + i + extension).toPath(), content);
+                    written += content.length;
+                }
+            }
+            case COMPRESSED -> {
+                // Deflated text: what a JPEG, ZIP or video looks like to a compressor
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+                    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                    try (DeflaterOutputStream deflater = new DeflaterOutputStream(compressed)) {
+                        while (compressed.size() < size) {
+                            deflater.write(text(random, 64 * 1024));
+                        }
+                    }
+                    out.write(compressed.toByteArray(), 0, (int) Math.min(size, compressed.size()));
+                }
+            }
+            default -> {
+                try (OutputStream out = new BufferedOutputStream(new FileOutputStream(target))) {
+                    long written = 0;
+                    LocalDateTime time = LocalDateTime.of(2024, 1, 1, 0, 0);
+                    int id = 0;
+                    while (written < size) {
+                        byte[] chunk = switch (this) {
+                            case TEXT -> text(random, 4096);
+                            case LOGS -> {
+                                time = time.plusNanos(random.nextLong(50_000_000L));
+                                yield (time.format(LOG_TIME) + " " + LEVELS[random.nextInt(LEVELS.length)]
+                                        + " [worker-" + random.nextInt(16) + "] c.e.c.CompressionService - "
+                                        + new String(text(random, 40 + random.nextInt(80)), StandardCharsets.US_ASCII)
+                                        + " took=" + random.nextInt(5000) + "ms\n").getBytes(StandardCharsets.US_ASCII);
+                            }
+                            case JSON -> ("{\"id\":" + id++ + ",\"type\":\"" + WORDS[random.nextInt(WORDS.length)]
+                                    + "\",\"user\":{\"name\":\"user" + random.nextInt(10_000) + "\",\"active\":"
+                                    + random.nextBoolean() + "},\"score\":" + random.nextDouble()
+                                    + ",\"tags\":[\"" + WORDS[random.nextInt(WORDS.length)] + "\",\""
+                                    + WORDS[random.nextInt(WORDS.length)] + "\"]}\n").getBytes(StandardCharsets.US_ASCII);
+                            default -> {
+                                byte[] bytes = new byte[4096];
+                                random.nextBytes(bytes);
+                                yield bytes;
+                            }
+                        };
+                        int length = (int) Math.min(chunk.length, size - written);
+                        out.write(chunk, 0, length);
+                        written += length;
+                    }
+                }
+            }
+        }
+        return target;
+    }
+
+    // Words drawn with a skewed distribution so common words dominate, as in real prose
+    private static byte[] text(SplittableRandom random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            int index = (int) (WORDS.length * Math.pow(random.nextDouble(), 3));
+            text.append(WORDS[index]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        text.setLength(length);
+        return text.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.compressiontool.benchmarks;
+
+import com.example.compressiontool.CompressionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// compressGZIP / decompressGZIP on single files. Thread-scoped so each benchmark thread
+// works on its own copy of the corpus, as concurrent requests would.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GzipBenchmark {
+
+    @Param({"TEXT", "LOGS", "JSON", "RANDOM", "COMPRESSED"})
+    public Corpus corpus;
+
+    @Param({"8"})
+    public int sizeMb;
+
+    @Param({"8192", "65536", "262144"})
+    public int bufferSize;
+
+    @Param({"1", "6", "9"})
+    public int level;
+
+    private File workDir;
+    private File source;
+    private File compressed;
+    private File output;
+    private CompressionService service;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        workDir = BenchmarkSupport.tempDirectory("bench-gzip");
+        source = corpus.create(workDir, sizeMb * BenchmarkSupport.MB);
+        service = BenchmarkSupport.service(bufferSize, level);
+        compressed = new File(workDir, "input.gz");
+        service.compressGZIP(source, compressed);
+        output = new File(workDir, "output");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        BenchmarkSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public long compressGzip() throws IOException {
+        service.compressGZIP(source, output);
+        return output.length();
+    }
+
+    @Benchmark
+    public long decompressGzip() throws IOException {
+        service.decompressGZIP(compressed, output);
+        return output.length();
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.compressiontool.benchmarks;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramLogWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Drives /api/compression/* on a running instance and reports latency percentiles, MB/s and
+// error rates per endpoint. Start the server against the in-memory stand-in database with
+//   mvn spring-boot:run -Ploadtest -Dspring-boot.run.profiles=loadtest
+// then, from benchmarks/:
+//   java -cp target/benchmarks.jar com.example.compressiontool.benchmarks.LoadGenerator \
+//        --concurrency 16 --duration 60 --sizes 4k:60,256k:30,8m:10
+//
+// Without --rate the generator runs a closed model: each of --concurrency workers sends its next
+// request as soon as the previous one returns. With --rate it runs an open model: requests arrive
+// on a Poisson schedule regardless of how the server keeps up, and latency is measured from the
+// scheduled arrival time so queueing delay is not hidden (no coordinated omission).
+public class LoadGenerator {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private static class Payload {
+        final String fileName;
+        final byte[] plain;
+        final byte[] gzip;
+        final byte[] zip;
+
+        Payload(String fileName, byte[] plain, byte[] gzip, byte[] zip) {
+            this.fileName = fileName;
+            this.plain = plain;
+            this.gzip = gzip;
+            this.zip = zip;
+        }
+    }
+
+    private static class EndpointStats {
+        final Histogram latency = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3);
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong bytesSent = new AtomicLong();
+        final AtomicLong bytesReceived = new AtomicLong();
+    }
+
+    private final String baseUrl;
+    private final List<String> endpoints;
+    private final List<Payload> payloads = new ArrayList<>();
+    private final List<Integer> payloadWeights = new ArrayList<>();
+    private final Map<String, EndpointStats> stats = new LinkedHashMap<>();
+    private final HttpClient client;
+    private volatile long measureFrom;
+
+    LoadGenerator(String baseUrl, List<String> endpoints) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.endpoints = endpoints;
+        for (String endpoint : endpoints) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("url", "http://localhost:8081");
+        options.put("endpoints", "compress/gzip,decompress/gzip,compress/zip,decompress/zip");
+        options.put("sizes", "4k:60,256k:30,8m:10");
+        options.put("corpus", "LOGS");
+        options.put("concurrency", "8");
+        options.put("rate", "");
+        options.put("duration", "60");
+        options.put("warmup", "10");
+        options.put("out", "loadtest-results");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String key = args[i].replaceFirst("^--", "");
+            if (!options.containsKey(key)) {
+                System.err.println("Unknown option " + args[i] + "; options: " + options.keySet());
+                System.exit(2);
+            }
+            options.put(key, args[i + 1]);
+        }
+
+        LoadGenerator generator = new LoadGenerator(options.get("url"), List.of(options.get("endpoints").split(",")));
+        generator.preparePayloads(options.get("sizes"), Corpus.valueOf(options.get("corpus").toUpperCase()));
+
+        long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("duration")));
+        long warmup = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        String rate = options.get("rate");
+        if (rate.isEmpty()) {
+            System.out.printf("Closed model: %d workers, %ds warmup + %ds%n", concurrency, warmup / 1_000_000_000, duration / 1_000_000_000);
+            generator.runClosed(concurrency, warmup, duration);
+        } else {
+            System.out.printf("Open model: %s req/s, %ds warmup + %ds%n", rate, warmup / 1_000_000_000, duration / 1_000_000_000);
+            generator.runOpen(Double.parseDouble(rate), warmup, duration);
+        }
+        generator.report(new File(options.get("out")), duration);
+    }
+
+    // Sizes as "4k:60,1m:30,16m:10", i.e. size:weight pairs
+    void preparePayloads(String sizes, Corpus corpus) throws IOException {
+        if (corpus == Corpus.TINY_FILES) {
+            throw new IllegalArgumentException("Load payloads are single files; pick a file corpus");
+        }
+        File dir = BenchmarkSupport.tempDirectory("loadtest");
+        try {
+            for (String spec : sizes.split(",")) {
+                String[] parts = spec.split(":");
+                long size = parseSize(parts[0]);
+                File sizeDir = new File(dir, parts[0]);
+                sizeDir.mkdirs();
+                File file = corpus.create(sizeDir, size);
+                byte[] plain = Files.readAllBytes(file.toPath());
+                String fileName = "load-" + parts[0] + ".txt";
+
+                ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                    out.write(plain);
+                }
+                ByteArrayOutputStream zip = new ByteArrayOutputStream();
+                try (ZipOutputStream out = new ZipOutputStream(zip)) {
+                    out.putNextEntry(new ZipEntry(fileName));
+                    out.write(plain);
+                    out.closeEntry();
+                }
+                payloads.add(new Payload(fileName, plain, gzip.toByteArray(), zip.toByteArray()));
+                payloadWeights.add(parts.length > 1 ? Integer.parseInt(parts[1]) : 1);
+            }
+        } finally {
+            BenchmarkSupport.delete(dir);
+        }
+    }
+
+    void runClosed(int concurrency, long warmup, long duration) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup;
+        long end = measureFrom + duration;
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            long seed = i;
+            workers.execute(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                while (System.nanoTime() < end) {
+                    send(random, System.nanoTime());
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration + warmup + TimeUnit.MINUTES.toNanos(10), TimeUnit.NANOSECONDS);
+    }
+
+    void runOpen(double requestsPerSecond, long warmup, long duration) throws InterruptedException {
+        long start = System.nanoTime();
+        measureFrom = start + warmup;
+        long end = measureFrom + duration;
+        SplittableRandom random = new SplittableRandom(42);
+        double meanGapNanos = 1_000_000_000 / requestsPerSecond;
+        // One virtual thread per request, so a slow server cannot throttle the arrival rate
+        try (ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            long next = start;
+            while (next < end) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                long intended = next;
+                SplittableRandom requestRandom = random.split();
+                requests.execute(() -> send(requestRandom, intended));
+                next += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            }
+        }
+    }
+
+    private void send(SplittableRandom random, long intendedStart) {
+        String endpoint = endpoints.get(random.nextInt(endpoints.size()));
+        Payload payload = pickPayload(random);
+        byte[] body = endpoint.startsWith("decompress/gzip") ? payload.gzip
+                : endpoint.startsWith("decompress/zip") ? payload.zip : payload.plain;
+        String fileName = payload.fileName + (body == payload.gzip ? ".gz" : body == payload.zip ? ".zip" : "");
+
+        String boundary = "----load" + Long.toHexString(random.nextLong());
+        byte[] head = ("--" + boundary + "\r\nContent-Disposition: form-data; name=\"file\"; filename=\"" + fileName
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/compression/" + endpoint))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, body, tail)))
+                .build();
+
+        boolean ok;
+        long received = 0;
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream in = response.body()) {
+                byte[] buffer = new byte[64 * 1024];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    received += count;
+                }
+            }
+            ok = response.statusCode() / 100 == 2;
+        } catch (IOException e) {
+            ok = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (intendedStart < measureFrom) {
+            return;
+        }
+        EndpointStats endpointStats = stats.get(endpoint);
+        endpointStats.latency.recordValue(Math.min(HIGHEST_TRACKABLE_MICROS,
+                TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStart)));
+        endpointStats.requests.incrementAndGet();
+        endpointStats.bytesSent.addAndGet(body.length);
+        endpointStats.bytesReceived.addAndGet(received);
+        if (!ok) {
+            endpointStats.errors.incrementAndGet();
+        }
+    }
+
+    private Payload pickPayload(SplittableRandom random) {
+        int total = payloadWeights.stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (int i = 0; i < payloads.size(); i++) {
+            pick -= payloadWeights.get(i);
+            if (pick < 0) {
+                return payloads.get(i);
+            }
+        }
+        return payloads.get(payloads.size() - 1);
+    }
+
+    void report(File outDir, long duration) throws IOException {
+        outDir.mkdirs();
+        double seconds = duration / 1e9;
+        StringBuilder json = new StringBuilder("{\n  \"durationSeconds\": ").append(seconds).append(",\n  \"endpoints\": {");
+
+        System.out.printf("%n%-18s %8s %7s %9s %9s %9s %9s %9s %9s%n",
+                "Endpoint", "Requests", "Errors", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms", "MB/s");
+        String separator = "\n";
+        for (Map.Entry<String, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats s = entry.getValue();
+            Histogram h = s.latency;
+            double megabytesPerSecond = (s.bytesSent.get() + s.bytesReceived.get()) / 1048576.0 / seconds;
+            double errorRate = s.requests.get() == 0 ? 0 : (double) s.errors.get() / s.requests.get();
+            System.out.printf(Locale.ROOT, "%-18s %8d %6.2f%% %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey(), s.requests.get(), errorRate * 100,
+                    ms(h, 50), ms(h, 95), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0, megabytesPerSecond);
+
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"requests\": %d, \"errors\": %d, \"errorRate\": %.6f, \"bytesSent\": %d, "
+                            + "\"bytesReceived\": %d, \"mbPerSecond\": %.3f, \"requestsPerSecond\": %.3f, "
+                            + "\"latencyMs\": {\"p50\": %.3f, \"p95\": %.3f, \"p99\": %.3f, \"p999\": %.3f, \"max\": %.3f}}",
+                    entry.getKey(), s.requests.get(), s.errors.get(), errorRate, s.bytesSent.get(),
+                    s.bytesReceived.get(), megabytesPerSecond, s.requests.get() / seconds,
+                    ms(h, 50), ms(h, 95), ms(h, 99), ms(h, 99.9), h.getMaxValue() / 1000.0));
+            separator = ",\n";
+
+            // Full histogram, readable with HdrHistogram's HistogramLogProcessor or plotters
+            String name = entry.getKey().replace('/', '-');
+            try (PrintStream log = new PrintStream(new File(outDir, name + ".hlog"), StandardCharsets.UTF_8)) {
+                HistogramLogWriter writer = new HistogramLogWriter(log);
+                writer.outputComment("Latency of /api/compression/" + entry.getKey() + " in microseconds");
+                writer.outputLogFormatVersion();
+                writer.outputLegend();
+                writer.outputIntervalHistogram(h);
+            }
+            try (PrintStream percentiles = new PrintStream(new File(outDir, name + ".hgrm"), StandardCharsets.UTF_8)) {
+                h.outputPercentileDistribution(percentiles, 1000.0);
+            }
+        }
+        json.append("\n  }\n}\n");
+        Files.writeString(new File(outDir, "summary.json").toPath(), json.toString());
+        System.out.println("Histograms and summary.json written to " + outDir.getAbsolutePath());
+    }
+
+    private static double ms(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static long parseSize(String size) {
+        String value = size.trim().toLowerCase();
+        long unit = 1;
+        if (value.endsWith("k")) unit = 1024;
+        if (value.endsWith("m")) unit = 1024 * 1024;
+        if (value.endsWith("g")) unit = 1024L * 1024 * 1024;
+        return Long.parseLong(unit == 1 ? value : value.substring(0, value.length() - 1)) * unit;
+    }
+}
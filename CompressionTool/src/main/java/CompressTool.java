@@ -6,6 +6,7 @@ import java.util.*;
 import java.util.zip.*;
 
 import com.example.compressiontool.CompressionService;
+import com.example.compressiontool.StatisticsStore;
 
 public class CompressTool {
     private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
@@ -13,11 +14,8 @@ public class CompressTool {
 
     private static CompressionService compressionService = new CompressionService();
     
-    // Statistics tracking
-    private static int totalOperations = 0;
-    private static long totalBytesSaved = 0;
-    private static int filesCompressed = 0;
-    private static int filesDecompressed = 0;
+    // Statistics tracking, shared with the UI and batch runs
+    private static StatisticsStore statistics;
     
     // Current operation files
     private static File currentCompressFile = null;
@@ -34,10 +32,14 @@ public class CompressTool {
     private static String currentCompressionRatio = "-";
     
     public static void main(String[] args) {
+        // With arguments there is no menu: see CompressToolBatch
+        if (args.length > 0) {
+            System.exit(CompressToolBatch.run(args));
+        }
         Scanner scanner = new Scanner(System.in);
         
         displayWelcomeBanner();
-        loadStatistics();
+        statistics = StatisticsStore.openOrInMemory();
         
         while (true) {
             displayMainMenu();
@@ -75,7 +77,6 @@ public class CompressTool {
                 case 8:
                     System.out.println("\n" + getCurrentTime() + " Thank you for using the Advanced File Compression Tool!");
                     displayExitBanner();
-                    saveStatistics();
                     scanner.close();
                     return;
                 default:
@@ -107,10 +108,10 @@ public class CompressTool {
         System.out.println("╔════════════════════════════════════════════════════════════════════╗");
         System.out.println("║                         OPERATION SUMMARY                         ║");
         System.out.println("╠════════════════════════════════════════════════════════════════════╣");
-        System.out.printf("║ 📁 Total Operations:    %-40d ║\n", totalOperations);
-        System.out.printf("║ 💾 Total Bytes Saved:   %-40s ║\n", formatBytes(totalBytesSaved));
-        System.out.printf("║ 🗜️  Files Compressed:   %-40d ║\n", filesCompressed);
-        System.out.printf("║ 📤 Files Decompressed:  %-40d ║\n", filesDecompressed);
+        System.out.printf("║ 📁 Total Operations:    %-40d ║\n", statistics.get(StatisticsStore.Counter.TOTAL_OPERATIONS));
+        System.out.printf("║ 💾 Total Bytes Saved:   %-40s ║\n", formatBytes(statistics.get(StatisticsStore.Counter.TOTAL_BYTES_SAVED)));
+        System.out.printf("║ 🗜️  Files Compressed:   %-40d ║\n", statistics.get(StatisticsStore.Counter.FILES_COMPRESSED));
+        System.out.printf("║ 📤 Files Decompressed:  %-40d ║\n", statistics.get(StatisticsStore.Counter.FILES_DECOMPRESSED));
         System.out.println("╚════════════════════════════════════════════════════════════════════╝");
     }
     
@@ -349,10 +350,7 @@ public class CompressTool {
             displayFileInfo(currentCompressFile, "compression");
 
             // Update statistics
-            totalOperations++;
-            filesCompressed++;
-            totalBytesSaved += bytesSaved;
-            saveStatistics();
+            statistics.recordCompression(bytesSaved);
 
         } catch (IOException e) {
             System.out.println("\n❌ " + getCurrentTime() + " Error during compression: " + e.getMessage());
@@ -407,9 +405,7 @@ public class CompressTool {
             displayFileInfo(currentDecompressFile, "decompression");
 
             // Update statistics
-            totalOperations++;
-            filesDecompressed++;
-            saveStatistics();
+            statistics.recordDecompression();
 
         } catch (IOException e) {
             System.out.println("\n❌ " + getCurrentTime() + " Error during decompression: " + e.getMessage());
@@ -431,15 +427,13 @@ public class CompressTool {
                     currentCompressFile.getName();
             File outputFile = compressionService.getUniqueOutputFile(currentCompressFile.getParentFile(), baseName, ".zip");
             
-            long originalSize = compressionService.calculateTotalSize(currentCompressFile);
-            
             System.out.println("📄 Source: " + currentCompressFile.getName());
             System.out.println("💾 Output: " + outputFile.getName());
             System.out.println("⏰ " + getCurrentTime() + " Starting ZIP compression...");
             
             long startTime = System.currentTimeMillis();
             
-            compressionService.compressZIP(currentCompressFile, outputFile);
+            long originalSize = compressionService.compressZIP(currentCompressFile, outputFile);
             
             long endTime = System.currentTimeMillis();
             long compressedSize = outputFile.length();
@@ -465,10 +459,7 @@ public class CompressTool {
             displayFileInfo(currentCompressFile, "compression");
             
             // Update statistics
-            totalOperations++;
-            filesCompressed++;
-            totalBytesSaved += bytesSaved;
-            saveStatistics();
+            statistics.recordCompression(bytesSaved);
             
         } catch (IOException e) {
             System.out.println("❌ " + getCurrentTime() + " Error during ZIP compression: " + e.getMessage());
@@ -538,9 +529,7 @@ public class CompressTool {
             displayFileInfo(currentDecompressFile, "decompression");
 
             // Update statistics
-            totalOperations++;
-            filesDecompressed++;
-            saveStatistics();
+            statistics.recordDecompression();
 
         } catch (IOException e) {
             System.out.println("\n❌ " + getCurrentTime() + " Error during ZIP decompression: " + e.getMessage());
@@ -550,10 +539,10 @@ public class CompressTool {
     private static void displayStatistics() {
         System.out.println("\n📈 COMPRESSION STATISTICS");
         System.out.println("═".repeat(60));
-        System.out.printf("📁 Total Operations:    %d\n", totalOperations);
-        System.out.printf("💾 Total Bytes Saved:   %s\n", formatBytes(totalBytesSaved));
-        System.out.printf("🗜️  Files Compressed:   %d\n", filesCompressed);
-        System.out.printf("📤 Files Decompressed:  %d\n", filesDecompressed);
+        System.out.printf("📁 Total Operations:    %d\n", statistics.get(StatisticsStore.Counter.TOTAL_OPERATIONS));
+        System.out.printf("💾 Total Bytes Saved:   %s\n", formatBytes(statistics.get(StatisticsStore.Counter.TOTAL_BYTES_SAVED)));
+        System.out.printf("🗜️  Files Compressed:   %d\n", statistics.get(StatisticsStore.Counter.FILES_COMPRESSED));
+        System.out.printf("📤 Files Decompressed:  %d\n", statistics.get(StatisticsStore.Counter.FILES_DECOMPRESSED));
         System.out.printf("⚡ Current Directory:   %s\n", System.getProperty("user.dir"));
         System.out.printf("💻 Available Memory:    %s\n", formatBytes(Runtime.getRuntime().freeMemory()));
         System.out.printf("🔢 Java Version:        %s\n", System.getProperty("java.version"));
@@ -625,31 +614,4 @@ public class CompressTool {
         if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
         return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
     }
-    
-    private static void saveStatistics() {
-        Properties props = new Properties();
-        props.setProperty("totalOperations", String.valueOf(totalOperations));
-        props.setProperty("totalBytesSaved", String.valueOf(totalBytesSaved));
-        props.setProperty("filesCompressed", String.valueOf(filesCompressed));
-        props.setProperty("filesDecompressed", String.valueOf(filesDecompressed));
-        
-        try (FileOutputStream fos = new FileOutputStream("compression_stats.properties")) {
-            props.store(fos, "Compression Tool Statistics");
-        } catch (IOException e) {
-            System.out.println("⚠️  Could not save statistics: " + e.getMessage());
-        }
-    }
-    
-    private static void loadStatistics() {
-        Properties props = new Properties();
-        try (FileInputStream fis = new FileInputStream("compression_stats.properties")) {
-            props.load(fis);
-            totalOperations = Integer.parseInt(props.getProperty("totalOperations", "0"));
-            totalBytesSaved = Long.parseLong(props.getProperty("totalBytesSaved", "0"));
-            filesCompressed = Integer.parseInt(props.getProperty("filesCompressed", "0"));
-            filesDecompressed = Integer.parseInt(props.getProperty("filesDecompressed", "0"));
-        } catch (IOException e) {
-            // No previous statistics found, starting fresh
-        }
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,529 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.compressiontool.CompressionService;
+import com.example.compressiontool.FileTree;
+import com.example.compressiontool.StatisticsStore;
+import com.example.compressiontool.TreeScanner;
+
+// Non-interactive mode of CompressTool, for scripts and cron. Runs the same engine as the
+// server, in-process, without Spring or a database, on many files at once.
+public class CompressToolBatch {
+
+    static final int EXIT_OK = 0;
+    static final int EXIT_FAILED = 1;
+    static final int EXIT_USAGE = 2;
+
+    // Reads and writes of the stdin/stdout filter, large enough to keep pipes and the pool busy
+    private static final int FILTER_BUFFER_SIZE = 1024 * 1024;
+
+    private static final String USAGE = """
+            Usage: CompressTool compress   [options] <file|directory|glob>...
+                   CompressTool decompress [options] <file|directory|glob>...
+                   CompressTool watch      [options] <directory>
+                   producer | CompressTool compress [options] - | consumer
+
+            compress writes <file>.gz or <file>.zip next to each file; decompress turns
+            <file>.gz back into <file> and extracts <file>.zip into the directory <file>.
+            Globs are expanded here, e.g. 'logs/**/*.log', so quote them to keep the shell out.
+            watch runs until stopped, compressing each file that appears in <directory> once
+            it has stopped changing.
+            With - instead of files the command is a filter from stdin to stdout, like gzip -c.
+            Compressing it writes one GZIP member per 1 MB block, several blocks at once with
+            -t above 1, like pigz; gunzip and decompress read the result as one stream.
+
+            Options:
+              -r, --recursive       descend into directories
+              -t, --threads N       files, or blocks with -, processed at once (default: number of CPUs)
+              -l, --level N         deflate level, 0 (store) to 9 (smallest); default -1, zlib's 6
+              -c, --codec NAME      gzip (default) or zip, for compress
+              -o, --output-dir DIR  write under DIR, mirroring the input tree, instead of in place
+              -f, --force           overwrite existing outputs instead of skipping them
+                  --remove-source   delete each input once it has been processed
+              -q, --quiet           print only errors and the summary
+
+            Watch options:
+                  --debounce MS     how long a file must stay unchanged before it is compressed
+                                    (default 2000)
+                  --originals WHAT  keep (default), delete, or move the originals once compressed;
+                                    --remove-source is the same as --originals delete
+                  --move-to DIR     where --originals move puts them, mirroring the watched tree
+
+            Exit status: 0 if every file succeeded, 1 if any failed, 2 on a usage error.
+            """;
+
+    // An input file and its path relative to the argument that named it, for --output-dir
+    private static class Input {
+        final File file;
+        final Path relative;
+
+        Input(File file, Path relative) {
+            this.file = file;
+            this.relative = relative;
+        }
+    }
+
+    private String command;
+    private boolean recursive;
+    private boolean force;
+    private boolean quiet;
+    private boolean removeSource;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int level = -1;
+    private String codec = "gzip";
+    private File outputDir;
+    private long debounceMillis = 2000;
+    private FolderWatcher.Originals originals;
+    private File moveTo;
+    private final List<String> arguments = new ArrayList<>();
+
+    private StatisticsStore statistics;
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+
+    public static int run(String[] args) {
+        CompressToolBatch batch = new CompressToolBatch();
+        try {
+            batch.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println("CompressTool: " + e.getMessage());
+            System.err.println("Run 'CompressTool help' for usage.");
+            return EXIT_USAGE;
+        }
+        if (batch.command.equals("help")) {
+            System.out.print(USAGE);
+            return EXIT_OK;
+        }
+        if (batch.arguments.equals(List.of("-"))) {
+            return batch.filter();
+        }
+        if (batch.command.equals("watch")) {
+            return batch.watch();
+        }
+        return batch.execute();
+    }
+
+    private void parse(String[] args) {
+        command = args[0];
+        if (command.equals("-h") || command.equals("--help")) {
+            command = "help";
+        }
+        if (!command.equals("compress") && !command.equals("decompress") && !command.equals("watch")
+                && !command.equals("help")) {
+            throw new IllegalArgumentException("Unknown command '" + command + "'");
+        }
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String value = null;
+            if (arg.startsWith("--") && arg.contains("=")) {
+                value = arg.substring(arg.indexOf('=') + 1);
+                arg = arg.substring(0, arg.indexOf('='));
+            }
+            switch (arg) {
+                case "-r":
+                case "--recursive":
+                    recursive = true;
+                    break;
+                case "-f":
+                case "--force":
+                    force = true;
+                    break;
+                case "-q":
+                case "--quiet":
+                    quiet = true;
+                    break;
+                case "--remove-source":
+                    removeSource = true;
+                    break;
+                case "-t":
+                case "--threads":
+                    threads = parseInt(arg, value != null ? value : next(args, ++i, arg));
+                    if (threads < 1) throw new IllegalArgumentException("--threads must be at least 1");
+                    break;
+                case "-l":
+                case "--level":
+                    level = parseInt(arg, value != null ? value : next(args, ++i, arg));
+                    if (level < -1 || level > 9) throw new IllegalArgumentException("--level must be -1 to 9");
+                    break;
+                case "-c":
+                case "--codec":
+                    codec = value != null ? value : next(args, ++i, arg);
+                    if (!codec.equals("gzip") && !codec.equals("zip")) {
+                        throw new IllegalArgumentException("--codec must be gzip or zip");
+                    }
+                    break;
+                case "-o":
+                case "--output-dir":
+                    outputDir = new File(value != null ? value : next(args, ++i, arg));
+                    break;
+                case "--debounce":
+                    debounceMillis = parseInt(arg, value != null ? value : next(args, ++i, arg));
+                    if (debounceMillis < 0) throw new IllegalArgumentException("--debounce must not be negative");
+                    break;
+                case "--originals":
+                    String policy = value != null ? value : next(args, ++i, arg);
+                    if (!policy.equals("keep") && !policy.equals("delete") && !policy.equals("move")) {
+                        throw new IllegalArgumentException("--originals must be keep, delete or move");
+                    }
+                    originals = FolderWatcher.Originals.valueOf(policy.toUpperCase());
+                    break;
+                case "--move-to":
+                    moveTo = new File(value != null ? value : next(args, ++i, arg));
+                    break;
+                case "--":
+                    for (i++; i < args.length; i++) arguments.add(args[i]);
+                    break;
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1) {
+                        throw new IllegalArgumentException("Unknown option '" + arg + "'");
+                    }
+                    arguments.add(args[i]);
+            }
+        }
+        if (!command.equals("help") && arguments.isEmpty()) {
+            throw new IllegalArgumentException(command.equals("watch") ? "No directory given" : "No files given");
+        }
+        if (arguments.contains("-")) {
+            if (arguments.size() > 1 || command.equals("watch")) {
+                throw new IllegalArgumentException("- (stdin) cannot be combined with other files or watch");
+            }
+            if (codec.equals("zip")) {
+                throw new IllegalArgumentException("- (stdin) only works with gzip");
+            }
+        }
+        if (command.equals("watch")) {
+            if (arguments.size() > 1) throw new IllegalArgumentException("watch takes one directory");
+            if (originals == null) {
+                originals = removeSource ? FolderWatcher.Originals.DELETE : FolderWatcher.Originals.KEEP;
+            }
+            if ((originals == FolderWatcher.Originals.MOVE) != (moveTo != null)) {
+                throw new IllegalArgumentException("--originals move and --move-to go together");
+            }
+        } else if (originals != null || moveTo != null) {
+            throw new IllegalArgumentException("--originals and --move-to only apply to watch");
+        }
+    }
+
+    private static String next(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[i];
+    }
+
+    private static int parseInt(String option, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(option + " needs a number, not '" + value + "'");
+        }
+    }
+
+    private int execute() {
+        List<Input> inputs = collectInputs();
+        if (inputs.isEmpty() && failed.get() == 0) {
+            System.err.println("CompressTool: nothing to " + command);
+            return skipped.get() > 0 ? EXIT_OK : EXIT_USAGE;
+        }
+
+        CompressionService service = new CompressionService();
+        service.setCompressionLevel(level);
+        statistics = StatisticsStore.openOrInMemory();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, inputs.size())));
+        long start = System.nanoTime();
+        for (Input input : inputs) {
+            pool.execute(() -> process(service, input));
+        }
+        pool.shutdown();
+        try {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+            return EXIT_FAILED;
+        }
+        printSummary(System.nanoTime() - start);
+        return failed.get() > 0 ? EXIT_FAILED : EXIT_OK;
+    }
+
+    // stdin to stdout; stdout carries only the data, messages go to stderr
+    private int filter() {
+        CompressionService service = new CompressionService();
+        service.setCompressionLevel(level);
+        service.setBufferSize(FILTER_BUFFER_SIZE);
+        try (InputStream in = new BufferedInputStream(new FileInputStream(FileDescriptor.in), FILTER_BUFFER_SIZE);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), FILTER_BUFFER_SIZE)) {
+            if (command.equals("compress")) {
+                service.compressGZIP(in, out, "stdin", threads);
+            } else {
+                service.decompressGZIP(in, out, "stdin");
+            }
+            return EXIT_OK;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("CompressTool: stdin: " + e.getMessage());
+            return EXIT_FAILED;
+        }
+    }
+
+    private int watch() {
+        Path directory = Path.of(arguments.get(0));
+        if (!Files.isDirectory(directory)) {
+            System.err.println("CompressTool: " + directory + ": No such directory");
+            return EXIT_USAGE;
+        }
+        CompressionService service = new CompressionService();
+        service.setCompressionLevel(level);
+        try {
+            new FolderWatcher(service, StatisticsStore.openOrInMemory(), directory, recursive, codec, outputDir,
+                    threads, debounceMillis, originals, moveTo, quiet).run();
+        } catch (IOException e) {
+            System.err.println("CompressTool: " + directory + ": " + e.getMessage());
+            return EXIT_FAILED;
+        }
+        return EXIT_OK;
+    }
+
+    // Expands the arguments into files, each once, in argument order. Missing paths and
+    // directories without -r count as failures.
+    private List<Input> collectInputs() {
+        Map<Path, Input> inputs = new LinkedHashMap<>();
+        for (String argument : arguments) {
+            try {
+                if (isGlob(argument)) {
+                    expandGlob(argument, inputs);
+                    continue;
+                }
+                Path path = Path.of(argument);
+                if (!Files.exists(path)) {
+                    error(argument, "No such file or directory");
+                } else if (Files.isDirectory(path)) {
+                    if (!recursive) {
+                        error(argument, "Is a directory (use -r)");
+                        continue;
+                    }
+                    Path name = path.toAbsolutePath().normalize().getFileName();
+                    walk(path, Integer.MAX_VALUE, null, name, inputs);
+                } else {
+                    add(path, path.getFileName(), true, inputs);
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                error(argument, e.getMessage());
+            }
+        }
+        return new ArrayList<>(inputs.values());
+    }
+
+    private static boolean isGlob(String argument) {
+        return argument.contains("*") || argument.contains("?") || argument.contains("[") || argument.contains("{");
+    }
+
+    // Walks the longest leading part of the glob that has no wildcards, matching the rest
+    // against paths relative to it. Without ** or -r the walk is no deeper than the pattern.
+    private void expandGlob(String glob, Map<Path, Input> inputs) throws IOException {
+        String[] segments = glob.replace(File.separatorChar, '/').split("/");
+        int literal = 0;
+        while (literal < segments.length - 1 && !isGlob(segments[literal])) {
+            literal++;
+        }
+        Path base = Path.of(literal == 0 ? "." : String.join("/", List.of(segments).subList(0, literal)) + "/");
+        String pattern = String.join("/", List.of(segments).subList(literal, segments.length));
+        if (!Files.isDirectory(base)) {
+            error(glob, "No such directory " + base);
+            return;
+        }
+        int depth = recursive || pattern.contains("**") ? Integer.MAX_VALUE : segments.length - literal;
+        // As in shells, a leading **/ also matches files directly in the base directory
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        PathMatcher shallow = pattern.startsWith("**/")
+                ? FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(3)) : matcher;
+        int before = inputs.size();
+        walk(base, depth, path -> matcher.matches(path) || shallow.matches(path), null, inputs);
+        if (inputs.size() == before && !quiet) {
+            System.err.println("CompressTool: " + glob + ": no matches");
+        }
+    }
+
+    private void walk(Path root, int depth, PathMatcher matcher, Path prefix, Map<Path, Input> inputs) throws IOException {
+        // Shows the count on a terminal while a large tree is being listed
+        boolean showProgress = !quiet && System.console() != null;
+        TreeScanner scanner = new TreeScanner().maxDepth(depth).listener(new TreeScanner.ScanListener() {
+            @Override
+            public void scanned(long files, long directories, long bytes) {
+                if (showProgress) {
+                    System.err.printf("\rScanning %s: %d files in %d directories, %s", root, files, directories,
+                            formatBytes(bytes));
+                }
+            }
+
+            @Override
+            public void failed(Path path, IOException e) {
+                if (e instanceof FileSystemLoopException) {
+                    skip(path, "symlink loop");
+                } else {
+                    error(path.toString(), e.getMessage());
+                }
+            }
+        });
+        FileTree tree = scanner.scan(root.toFile());
+        if (showProgress) {
+            System.err.println();
+        }
+        for (FileTree.Node file : tree.getFiles()) {
+            Path path = file.getFile().toPath();
+            Path relative = root.relativize(path);
+            if (matcher == null || matcher.matches(relative)) {
+                add(path, prefix != null ? prefix.resolve(relative) : relative, false, inputs);
+            }
+        }
+    }
+
+    // Files found in a directory or by a glob that the command does not apply to are passed over
+    // quietly; named ones are reported as skipped
+    private void add(Path file, Path relative, boolean named, Map<Path, Input> inputs) {
+        String name = file.getFileName().toString().toLowerCase();
+        String reason = null;
+        if (command.equals("compress") && name.endsWith(extension())) {
+            reason = "already has a " + extension() + " suffix";
+        } else if (command.equals("decompress") && !name.endsWith(".gz") && !name.endsWith(".zip")) {
+            reason = "not a .gz or .zip file";
+        }
+        if (reason == null) {
+            inputs.putIfAbsent(file.toAbsolutePath().normalize(), new Input(file.toFile(), relative));
+        } else if (named) {
+            skip(file, reason);
+        }
+    }
+
+    private void process(CompressionService service, Input input) {
+        File source = input.file;
+        File target = targetFor(input);
+        try {
+            if (target.exists()) {
+                if (!force) {
+                    skip(source.toPath(), target + " exists (use -f to overwrite)");
+                    return;
+                }
+                deleteRecursively(target);
+            }
+            Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+
+            long sourceSize = source.length();
+            long targetSize;
+            if (command.equals("compress")) {
+                if (codec.equals("zip")) {
+                    service.compressZIP(source, target);
+                } else {
+                    service.compressGZIP(source, target);
+                }
+                targetSize = target.length();
+                uncompressedBytes.addAndGet(sourceSize);
+                compressedBytes.addAndGet(targetSize);
+                statistics.recordCompression(sourceSize - targetSize);
+            } else {
+                if (source.getName().toLowerCase().endsWith(".zip")) {
+                    targetSize = service.decompressZIP(source, target)[2];
+                } else {
+                    targetSize = service.decompressGZIP(source, target);
+                }
+                compressedBytes.addAndGet(sourceSize);
+                uncompressedBytes.addAndGet(targetSize);
+                statistics.recordDecompression();
+            }
+            bytesRead.addAndGet(sourceSize);
+            if (removeSource) {
+                Files.delete(source.toPath());
+            }
+            succeeded.incrementAndGet();
+            if (!quiet) {
+                System.out.printf("%s -> %s (%s -> %s)%n", source, target, formatBytes(sourceSize), formatBytes(targetSize));
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteRecursively(target);
+            error(source.toString(), e.getMessage());
+        }
+    }
+
+    // foo.txt -> foo.txt.gz, foo.txt.gz -> foo.txt, foo.zip -> foo/
+    private File targetFor(Input input) {
+        String name = input.file.getName();
+        String targetName;
+        if (command.equals("compress")) {
+            targetName = name + extension();
+        } else {
+            targetName = name.substring(0, name.lastIndexOf('.'));
+        }
+        if (outputDir == null) {
+            return new File(input.file.getParentFile(), targetName);
+        }
+        Path relative = input.relative.getParent();
+        return (relative == null ? outputDir.toPath() : outputDir.toPath().resolve(relative)).resolve(targetName).toFile();
+    }
+
+    private String extension() {
+        return codec.equals("zip") ? ".zip" : ".gz";
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        String verb = command.equals("compress") ? "Compressed" : "Decompressed";
+        System.out.printf("%s %d file%s in %.2f s (%d skipped, %d failed)%n",
+                verb, succeeded.get(), succeeded.get() == 1 ? "" : "s", seconds, skipped.get(), failed.get());
+        long uncompressed = uncompressedBytes.get();
+        double ratio = uncompressed > 0 ? 100.0 * compressedBytes.get() / uncompressed : 0;
+        System.out.printf("%.1f files/s, %.1f MB/s read, %s uncompressed, %s compressed (%.1f%%)%n",
+                succeeded.get() / seconds, bytesRead.get() / seconds / (1024 * 1024),
+                formatBytes(uncompressed), formatBytes(compressedBytes.get()), ratio);
+    }
+
+    private void skip(Path file, String reason) {
+        skipped.incrementAndGet();
+        if (!quiet) {
+            System.err.println("CompressTool: " + file + ": skipped, " + reason);
+        }
+    }
+
+    private void error(String file, String message) {
+        failed.incrementAndGet();
+        System.err.println("CompressTool: " + file + ": " + message);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024 * 1024 * 1024) return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+        return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
+    }
+}
@@ -1,3 +1,12 @@
+import com.example.compressiontool.Activity;
+import com.example.compressiontool.CompressionService;
+import com.example.compressiontool.OperationMonitor;
+import com.example.compressiontool.ProgressListener;
+import com.example.compressiontool.StatisticsStore;
+import com.example.compressiontool.TreeScanner;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.geometry.Insets;
@@ -10,11 +19,13 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.scene.text.FontWeight;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 
 import java.io.*;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.Date;
 import java.util.Properties;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -22,93 +33,931 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.*;
 
 import java.net.*;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class CompressToolUI extends Application {
 
     private static final String BACKEND_URL = "http://localhost:8081";
+    // A backend on this machine can read and write our files itself, given their paths
+    private static final boolean SAME_HOST = isLoopback(URI.create(BACKEND_URL).getHost());
+
+    // Files above this size go through the resumable chunked upload API
+    private static final long CHUNKED_UPLOAD_THRESHOLD = 16L * 1024 * 1024;
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int UPLOAD_CONNECTIONS = 4;
+    private static final int CHUNK_ATTEMPTS = 3;
+    // Upload ids of unfinished chunked uploads, keyed by file path, size and mtime
+    private static final String UPLOAD_STATE_FILE = "upload_sessions.properties";
+
+    // Threads that drive transfers; more concurrent transfers than this queue up
+    private static final int TRANSFER_THREADS = 8;
+    // Jobs the queue tab runs at once unless changed there, at most TRANSFER_THREADS
+    private static final int DEFAULT_QUEUE_CONCURRENCY = 4;
+
+    // In Auto mode inputs this large run in-process: through the server they would cross the
+    // network twice, up as the input and back down as the result
+    private static final long LOCAL_ENGINE_THRESHOLD = 64L * 1024 * 1024;
+    // How long a backend health check is trusted before Auto mode checks again
+    private static final long BACKEND_CHECK_INTERVAL_MILLIS = 15_000;
+    // Activity records of local operations the server has not accepted yet, one JSON object per line
+    private static final String PENDING_ACTIVITIES_FILE = "pending_activities.jsonl";
+    private static final int ACTIVITY_BATCH_SIZE = 100;
+    private static final long ACTIVITY_RETRY_SECONDS = 30;
+
+    private enum EngineMode {
+        AUTO("Auto"), LOCAL("Local"), SERVER("Server");
+
+        private final String label;
+
+        EngineMode(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final ExecutorService transferExecutor = Executors.newFixedThreadPool(TRANSFER_THREADS, daemonThreads("transfer"));
+
+    // One client for every call: connections are pooled, and with HTTP/2 concurrent transfers
+    // share a single multiplexed connection instead of a socket each
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .executor(Executors.newFixedThreadPool(TRANSFER_THREADS, daemonThreads("http")))
+            .build();
+
+    // The engine the server runs, for operations done in-process. Outside Spring it has no
+    // repository, so its activity records are queued for the server instead.
+    private final CompressionService localEngine = new CompressionService();
+    private final ScheduledExecutorService activitySender = Executors.newSingleThreadScheduledExecutor(daemonThreads("activity"));
+    private final List<String> pendingActivities = new ArrayList<>();
+
+    private volatile EngineMode engineMode = EngineMode.AUTO;
+    private volatile boolean backendAvailable;
+    private volatile long backendCheckedAt;
+    private volatile List<Path> serverRoots = List.of();
+    private volatile long serverRootsCheckedAt;
+
+    private static boolean isLoopback(String host) {
+        try {
+            return InetAddress.getByName(host).isLoopbackAddress();
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // A running performOperation call; cancel() aborts whatever requests it has in flight
+    private static class Transfer {
+        private final Set<CompletableFuture<?>> exchanges = ConcurrentHashMap.newKeySet();
+        private volatile Future<?> task;
+        private volatile boolean cancelled;
+
+        void track(CompletableFuture<?> exchange) {
+            exchanges.add(exchange);
+            exchange.whenComplete((result, error) -> exchanges.remove(exchange));
+            if (cancelled) exchange.cancel(true);
+        }
+
+        // Aborts requests still open, e.g. the progress stream once the operation is done
+        void close() {
+            exchanges.forEach(exchange -> exchange.cancel(true));
+        }
+
+        void cancel() {
+            cancelled = true;
+            exchanges.forEach(exchange -> exchange.cancel(true));
+            Future<?> running = task;
+            if (running != null) running.cancel(true);
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
 
-    private void performApiOperation(String endpoint, File inputFile, boolean isDirectory, String path, Consumer<File> onSuccess, Consumer<String> onError) {
-        new Thread(() -> {
+    // The progress bar, labels and cancel button one tab shows its transfer on
+    private static class TransferView {
+        final ProgressBar progressBar;
+        final Label progressLabel;
+        final Label rateLabel;
+        final Button cancelButton;
+        volatile Transfer current;
+
+        TransferView(ProgressBar progressBar, Label progressLabel, Label rateLabel, Button cancelButton) {
+            this.progressBar = progressBar;
+            this.progressLabel = progressLabel;
+            this.rateLabel = rateLabel;
+            this.cancelButton = cancelButton;
+            cancelButton.setDisable(true);
+            cancelButton.setOnAction(e -> {
+                Transfer transfer = current;
+                if (transfer != null) transfer.cancel();
+            });
+        }
+    }
+
+    private enum JobStatus { QUEUED, RUNNING, DONE, FAILED }
+
+    // One file or folder in the queue tab, with the row that shows it
+    private class QueueJob {
+        final File file;
+        final String endpoint;
+        final TransferView view = new TransferView(new ProgressBar(0), new Label(""), new Label(""), new Button("Cancel"));
+        final Label statusLabel = new Label("Queued");
+        final Button retryButton = new Button("Retry");
+        final HBox row;
+        JobStatus status = JobStatus.QUEUED;
+        long startNanos;
+
+        QueueJob(File file, String endpoint) {
+            this.file = file;
+            this.endpoint = endpoint;
+            Label nameLabel = new Label(file.getName());
+            nameLabel.setPrefWidth(220);
+            nameLabel.setTooltip(new Tooltip(file.getAbsolutePath()));
+            Label operationLabel = new Label(endpoint.substring(endpoint.lastIndexOf("/api/compression/") + 17));
+            operationLabel.setPrefWidth(110);
+            view.progressBar.setPrefWidth(160);
+            view.progressLabel.setPrefWidth(80);
+            view.rateLabel.setPrefWidth(150);
+            retryButton.setDisable(true);
+            retryButton.setOnAction(e -> retryJob(this));
+            row = new HBox(10, nameLabel, operationLabel, view.progressBar, view.progressLabel, view.rateLabel,
+                    view.cancelButton, retryButton, statusLabel);
+            row.setAlignment(Pos.CENTER_LEFT);
+        }
+    }
+
+    // Response body of an operation: the downloaded file, or the error text
+    private static class Download {
+        final File file;
+        final String error;
+
+        Download(File file, String error) {
+            this.file = file;
+            this.error = error;
+        }
+    }
+
+    // Runs the operation in-process or on the server, whichever localEngineReason picks
+    private Transfer performOperation(String endpoint, File inputFile, boolean isDirectory, String path,
+                                      TransferView view, Consumer<File> onSuccess, Consumer<String> onError) {
+        Transfer transfer = new Transfer();
+        view.current = transfer;
+        view.rateLabel.setText("");
+        view.cancelButton.setDisable(false);
+        File input = isDirectory && path != null ? new File(path) : inputFile;
+        transfer.task = transferExecutor.submit(() -> {
             try {
-                URL url = new URL(BACKEND_URL + endpoint);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setDoOutput(true);
-                conn.setRequestMethod("POST");
-                conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=----WebKitFormBoundary7MA4YWxkTrZu0gW");
-
-                String boundary = "----WebKitFormBoundary7MA4YWxkTrZu0gW";
-                try (OutputStream os = conn.getOutputStream()) {
-                    if (isDirectory && path != null) {
-                        os.write(("--" + boundary + "\r\n").getBytes("UTF-8"));
-                        os.write(("Content-Disposition: form-data; name=\"path\"\r\n\r\n").getBytes("UTF-8"));
-                        os.write((path + "\r\n").getBytes("UTF-8"));
-                        os.write(("--" + boundary + "\r\n").getBytes("UTF-8"));
-                        os.write(("Content-Disposition: form-data; name=\"isDirectory\"\r\n\r\n").getBytes("UTF-8"));
-                        os.write(("true\r\n").getBytes("UTF-8"));
-                    } else if (inputFile != null) {
-                        os.write(("--" + boundary + "\r\n").getBytes("UTF-8"));
-                        os.write(("Content-Disposition: form-data; name=\"file\"; filename=\"" + inputFile.getName() + "\"\r\n").getBytes("UTF-8"));
-                        os.write(("Content-Type: " + Files.probeContentType(inputFile.toPath()) + "\r\n\r\n").getBytes("UTF-8"));
-                        try (InputStream is = new FileInputStream(inputFile)) {
-                            byte[] buffer = new byte[8192];
-                            int bytesRead;
-                            while ((bytesRead = is.read(buffer)) != -1) {
-                                os.write(buffer, 0, bytesRead);
-                            }
-                        }
-                        os.write("\r\n".getBytes("UTF-8"));
+                String reason = localEngineReason(input);
+                if (reason != null) {
+                    appendStatus("💻 Running locally (" + reason + ")");
+                    runLocally(transfer, endpoint, input, view, onSuccess, onError);
+                } else {
+                    runOnServer(transfer, endpoint, inputFile, isDirectory, path, view, onSuccess, onError);
+                }
+            } finally {
+                // Also closes the progress stream
+                transfer.close();
+                Platform.runLater(() -> {
+                    if (view.current == transfer) {
+                        view.cancelButton.setDisable(true);
                     }
-                    os.write(("--" + boundary + "--\r\n").getBytes("UTF-8"));
-                    os.flush();
+                });
+            }
+        });
+        return transfer;
+    }
+
+    // Why an operation on input should run in-process, or null to send it to the server
+    private String localEngineReason(File input) {
+        switch (engineMode) {
+            case LOCAL:
+                return "local engine selected";
+            case SERVER:
+                return null;
+            default:
+                if (input != null && isAtLeast(input, LOCAL_ENGINE_THRESHOLD)) {
+                    return "large input";
                 }
+                return isBackendAvailable() ? null : "backend unavailable";
+        }
+    }
 
-                int responseCode = conn.getResponseCode();
-                if (responseCode == HttpURLConnection.HTTP_OK) {
-                    String contentDisposition = conn.getHeaderField("Content-Disposition");
-                    String filename = "output";
-                    if (contentDisposition != null && contentDisposition.contains("filename=")) {
-                        filename = contentDisposition.split("filename=")[1].replace("\"", "");
-                    }
-                    File parentDir = inputFile != null ? inputFile.getParentFile() : new File(".");
-                    String baseName = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
-                    String extension = filename.contains(".") ? filename.substring(filename.lastIndexOf('.')) : "";
-                    File outputFile = getUniqueOutputFile(parentDir, baseName, extension);
-
-                    try (InputStream is = conn.getInputStream();
-                         FileOutputStream fos = new FileOutputStream(outputFile)) {
-                        byte[] buffer = new byte[8192];
-                        int bytesRead;
-                        while ((bytesRead = is.read(buffer)) != -1) {
-                            fos.write(buffer, 0, bytesRead);
-                        }
+    // Sizes a folder only as far as needed: the scan stops once it has seen limit bytes
+    private boolean isAtLeast(File file, long limit) {
+        if (!file.isDirectory()) {
+            return file.length() >= limit;
+        }
+        TreeScanner scanner = localEngine.newScanner();
+        scanner.listener((files, directories, bytes) -> {
+            if (bytes >= limit) scanner.cancel();
+        });
+        try {
+            scanner.totalSize(file);
+        } catch (IOException | IllegalArgumentException e) {
+            // Stopped at the limit, or too large to list at all
+        }
+        return scanner.isCancelled() || scanner.getBytes() >= limit;
+    }
+
+    private boolean isBackendAvailable() {
+        long now = System.currentTimeMillis();
+        if (now - backendCheckedAt < BACKEND_CHECK_INTERVAL_MILLIS) {
+            return backendAvailable;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + "/actuator/health"))
+                .timeout(Duration.ofSeconds(2))
+                .build();
+        boolean available;
+        try {
+            available = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+        } catch (IOException e) {
+            available = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            available = false;
+        }
+        backendAvailable = available;
+        backendCheckedAt = now;
+        return available;
+    }
+
+    // Runs the operation with the engine the server would use and writes the result next to
+    // the input. A ZIP is extracted in place rather than returned zipped as the server does.
+    private void runLocally(Transfer transfer, String endpoint, File input, TransferView view,
+                            Consumer<File> onSuccess, Consumer<String> onError) {
+        String progressId = UUID.randomUUID().toString();
+        ProgressListener listener = progress -> {
+            if (progressId.equals(progress.getProgressId()) && !progress.isDone()) {
+                showProgress(progress.getFraction(), progress.getBytesPerSecond(), progress.getEtaMillis(),
+                        progress.getCurrentEntry(), view);
+            }
+        };
+        localEngine.addProgressListener(listener);
+        File output = null;
+        try {
+            output = outputFileFor(endpoint, input);
+            OperationMonitor.bindProgressId(progressId);
+            switch (endpoint) {
+                case "/api/compression/compress/gzip":
+                    localEngine.compressGZIP(input, output);
+                    break;
+                case "/api/compression/compress/zip":
+                    localEngine.compressZIP(input, output);
+                    break;
+                case "/api/compression/decompress/gzip":
+                    localEngine.decompressGZIP(input, output);
+                    break;
+                case "/api/compression/decompress/zip":
+                    localEngine.decompressZIP(input, output);
+                    break;
+            }
+            // The engine only notices a cancel when it next touches a channel, so the run may
+            // have finished anyway
+            if (transfer.isCancelled()) {
+                deleteRecursively(output);
+                onError.accept("Cancelled");
+            } else {
+                onSuccess.accept(output);
+            }
+        } catch (Exception e) {
+            if (output != null) {
+                deleteRecursively(output);
+            }
+            onError.accept(transfer.isCancelled() ? "Cancelled" : "Local engine error: " + e.getMessage());
+        } finally {
+            localEngine.removeProgressListener(listener);
+            // Fails the operation's progress if the engine threw before finishing it
+            OperationMonitor.clear();
+        }
+    }
+
+    // Where the result of an operation on input goes when it is written on this machine: next
+    // to the input, as a download would be. A ZIP is extracted to a directory.
+    private File outputFileFor(String endpoint, File input) {
+        File parentDir = input.getAbsoluteFile().getParentFile();
+        String name = input.getName();
+        String baseName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+        switch (endpoint) {
+            case "/api/compression/compress/gzip":
+                return getUniqueOutputFile(parentDir, baseName, ".gz");
+            case "/api/compression/compress/zip":
+                return getUniqueOutputFile(parentDir, baseName, ".zip");
+            case "/api/compression/decompress/gzip":
+                // report.txt.gz -> report.txt, or report_1.txt if that exists
+                String extension = baseName.contains(".") ? baseName.substring(baseName.lastIndexOf('.')) : "";
+                return getUniqueOutputFile(parentDir, baseName.substring(0, baseName.length() - extension.length()), extension);
+            case "/api/compression/decompress/zip":
+                return getUniqueOutputFile(parentDir, baseName + "_extracted", "");
+            default:
+                throw new IllegalArgumentException("No local output for " + endpoint);
+        }
+    }
+
+    // With the backend on this machine and both the input and the output under roots it allows,
+    // the server is handed paths instead of bytes. Returns the output path, or null to upload.
+    private File pathHandoffOutput(String endpoint, File input) {
+        if (!SAME_HOST || input == null) return null;
+        List<Path> roots = serverRoots();
+        if (roots.isEmpty()) return null;
+        try {
+            File output = outputFileFor(endpoint, input);
+            Path source = input.toPath().toRealPath();
+            Path outputDir = output.getAbsoluteFile().getParentFile().toPath().toRealPath();
+            boolean sourceAllowed = false;
+            boolean outputAllowed = false;
+            for (Path root : roots) {
+                sourceAllowed |= source.startsWith(root);
+                outputAllowed |= outputDir.startsWith(root);
+            }
+            return sourceAllowed && outputAllowed ? output : null;
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private List<Path> serverRoots() {
+        long now = System.currentTimeMillis();
+        if (now - serverRootsCheckedAt < BACKEND_CHECK_INTERVAL_MILLIS) {
+            return serverRoots;
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + "/api/compression/paths"))
+                .timeout(Duration.ofSeconds(2))
+                .build();
+        List<Path> roots = new ArrayList<>();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                Matcher m = Pattern.compile("\"((?:[^\"\\\\]|\\\\.)*)\"").matcher(response.body());
+                while (m.find()) {
+                    roots.add(Path.of(m.group(1).replace("\\\"", "\"").replace("\\\\", "\\")));
+                }
+            }
+        } catch (IOException e) {
+            // No path mode; upload as usual
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        serverRoots = roots;
+        serverRootsCheckedAt = now;
+        return roots;
+    }
+
+    private void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private void runOnServer(Transfer transfer, String endpoint, File inputFile, boolean isDirectory, String path,
+                             TransferView view, Consumer<File> onSuccess, Consumer<String> onError) {
+        String progressId = UUID.randomUUID().toString();
+        String uploadKey = null;
+        try {
+            watchProgress(transfer, progressId, view);
+
+            File input = isDirectory && path != null ? new File(path) : inputFile;
+            File handoffOutput = pathHandoffOutput(endpoint, input);
+
+            String uploadId = null;
+            if (handoffOutput == null && inputFile != null && !isDirectory && inputFile.length() > CHUNKED_UPLOAD_THRESHOLD) {
+                uploadKey = inputFile.getAbsolutePath() + "|" + inputFile.length() + "|" + inputFile.lastModified();
+                uploadId = uploadInChunks(transfer, inputFile, uploadKey, view);
+            }
+
+            // Parts are streamed: the file is read from disk as the request is sent
+            String boundary = "----CompressTool" + UUID.randomUUID().toString().replace("-", "");
+            List<HttpRequest.BodyPublisher> parts = new ArrayList<>();
+            parts.add(formField(boundary, "progressId", progressId));
+            if (handoffOutput != null) {
+                parts.add(formField(boundary, "path", input.getAbsolutePath()));
+                parts.add(formField(boundary, "outputPath", handoffOutput.getAbsolutePath()));
+            } else if (isDirectory && path != null) {
+                parts.add(formField(boundary, "path", path));
+                parts.add(formField(boundary, "isDirectory", "true"));
+            } else if (uploadId != null) {
+                parts.add(formField(boundary, "uploadId", uploadId));
+            } else if (inputFile != null) {
+                String contentType = Files.probeContentType(inputFile.toPath());
+                parts.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "\r\n"
+                        + "Content-Disposition: form-data; name=\"file\"; filename=\"" + inputFile.getName() + "\"\r\n"
+                        + "Content-Type: " + (contentType != null ? contentType : "application/octet-stream") + "\r\n\r\n"));
+                parts.add(new CountingPublisher(HttpRequest.BodyPublishers.ofFile(inputFile.toPath()),
+                        inputFile.length(), view));
+                parts.add(HttpRequest.BodyPublishers.ofString("\r\n"));
+            }
+            parts.add(HttpRequest.BodyPublishers.ofString("--" + boundary + "--\r\n"));
+
+            HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + endpoint))
+                    .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                    .POST(HttpRequest.BodyPublishers.concat(parts.toArray(new HttpRequest.BodyPublisher[0])))
+                    .build();
+            File parentDir = inputFile != null ? inputFile.getParentFile() : new File(".");
+            HttpResponse<Download> response = await(send(transfer, request,
+                    handoffOutput != null ? writtenTo(handoffOutput) : downloadTo(parentDir)));
+            if (uploadKey != null) {
+                // The server has taken the upload, whatever the outcome
+                saveUploadState(uploadKey, null);
+            }
+
+            response.headers().firstValue("Server-Timing")
+                    .ifPresent(serverTiming -> appendStatus("⏱️ Server timing: " + formatServerTiming(serverTiming)));
+            if (response.statusCode() == 200) {
+                onSuccess.accept(response.body().file);
+            } else {
+                onError.accept("API Error: " + response.statusCode() + " - " + response.body().error);
+            }
+        } catch (Exception e) {
+            if (!transfer.isCancelled()) {
+                // Check again before the next operation, which may then run locally
+                backendCheckedAt = 0;
+            }
+            onError.accept(transfer.isCancelled() ? "Cancelled" : "Network Error: " + e.getMessage());
+        }
+    }
+
+    private HttpRequest.BodyPublisher formField(String boundary, String name, String value) {
+        return HttpRequest.BodyPublishers.ofString("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value + "\r\n");
+    }
+
+    // Streams a 200 response straight to a file named after Content-Disposition
+    private HttpResponse.BodyHandler<Download> downloadTo(File parentDir) {
+        return info -> {
+            if (info.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.mapping(
+                        HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8), error -> new Download(null, error));
+            }
+            String filename = "output";
+            String contentDisposition = info.headers().firstValue("Content-Disposition").orElse(null);
+            if (contentDisposition != null && contentDisposition.contains("filename=")) {
+                filename = contentDisposition.split("filename=")[1].replace("\"", "");
+            }
+            String baseName = filename.contains(".") ? filename.substring(0, filename.lastIndexOf('.')) : filename;
+            String extension = filename.contains(".") ? filename.substring(filename.lastIndexOf('.')) : "";
+            File outputFile = getUniqueOutputFile(parentDir, baseName, extension);
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofFile(outputFile.toPath()), file -> new Download(file.toFile(), null));
+        };
+    }
+
+    // Path mode: the server has written the result itself and only describes it
+    private HttpResponse.BodyHandler<Download> writtenTo(File output) {
+        return info -> HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofString(StandardCharsets.UTF_8),
+                body -> info.statusCode() == 200 ? new Download(output, null) : new Download(null, body));
+    }
+
+    // Reports upload progress as the client pulls the body from the file, i.e. as it is sent
+    private class CountingPublisher implements HttpRequest.BodyPublisher {
+        private final HttpRequest.BodyPublisher delegate;
+        private final long total;
+        private final TransferView view;
+
+        CountingPublisher(HttpRequest.BodyPublisher delegate, long total, TransferView view) {
+            this.delegate = delegate;
+            this.total = total;
+            this.view = view;
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            long start = System.nanoTime();
+            delegate.subscribe(new Flow.Subscriber<ByteBuffer>() {
+                private long sent;
+                private long lastUpdate = start;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(subscription);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    sent += item.remaining();
+                    subscriber.onNext(item);
+                    long now = System.nanoTime();
+                    if (now - lastUpdate >= 100_000_000L || sent == total) {
+                        lastUpdate = now;
+                        showUploadProgress(view, sent, total, sent * 1e9 / Math.max(1, now - start));
                     }
+                }
 
-                    onSuccess.accept(outputFile);
-                } else {
-                    String error = readStream(conn.getErrorStream());
-                    onError.accept("API Error: " + responseCode + " - " + error);
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    subscriber.onComplete();
+                }
+            });
+        }
+    }
+
+    private void showUploadProgress(TransferView view, long sent, long total, double rate) {
+        double fraction = total > 0 ? (double) sent / total : -1;
+        Platform.runLater(() -> {
+            view.progressBar.setProgress(fraction);
+            view.progressLabel.setText(String.format("Uploading %.0f%%", fraction * 100));
+            view.rateLabel.setText(formatRate(rate));
+        });
+    }
+
+    private <T> CompletableFuture<HttpResponse<T>> send(Transfer transfer, HttpRequest request,
+                                                        HttpResponse.BodyHandler<T> handler) {
+        CompletableFuture<HttpResponse<T>> exchange = httpClient.sendAsync(request, handler);
+        transfer.track(exchange);
+        return exchange;
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (CancellationException e) {
+            throw new IOException("Cancelled", e);
+        }
+    }
+
+    // Uploads inputFile as parallel chunks and returns the id of the completed upload. An upload
+    // interrupted earlier is resumed: only chunks the server has not acknowledged are sent.
+    private String uploadInChunks(Transfer transfer, File inputFile, String uploadKey, TransferView view)
+            throws IOException, InterruptedException {
+        long size = inputFile.length();
+        String uploadId = loadUploadState(uploadKey);
+        String status = uploadId != null ? request(transfer, "GET", "/api/compression/uploads/" + uploadId) : null;
+        if (status == null) {
+            String fileName = URLEncoder.encode(inputFile.getName(), StandardCharsets.UTF_8);
+            status = request(transfer, "POST", "/api/compression/uploads?fileName=" + fileName + "&size=" + size + "&chunkSize=" + CHUNK_SIZE);
+            if (status == null) {
+                throw new IOException("Could not start chunked upload");
+            }
+            uploadId = jsonString(status, "uploadId");
+            saveUploadState(uploadKey, uploadId);
+        } else {
+            appendStatus("↩️ Resuming upload of " + inputFile.getName());
+        }
+        if (status.contains("\"complete\":true")) {
+            return uploadId;
+        }
+
+        int chunkSize = (int) jsonNumber(status, "chunkSize", CHUNK_SIZE);
+        int chunkCount = (int) jsonNumber(status, "chunkCount", 1);
+        Set<Integer> received = new HashSet<>();
+        Matcher m = Pattern.compile("\"received\":\\[([0-9,]*)\\]").matcher(status);
+        if (m.find() && !m.group(1).isEmpty()) {
+            for (String index : m.group(1).split(",")) received.add(Integer.parseInt(index));
+        }
+
+        AtomicLong acknowledged = new AtomicLong();
+        for (int index : received) {
+            acknowledged.addAndGet(Math.min(chunkSize, size - (long) index * chunkSize));
+        }
+        long resumedBytes = acknowledged.get();
+        long start = System.nanoTime();
+        // At most UPLOAD_CONNECTIONS chunks are read into memory and in flight at once
+        Semaphore inFlight = new Semaphore(UPLOAD_CONNECTIONS);
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            for (int i = 0; i < chunkCount; i++) {
+                if (received.contains(i)) continue;
+                inFlight.acquire();
+                if (chunks.stream().anyMatch(CompletableFuture::isCompletedExceptionally)) {
+                    break;
                 }
-            } catch (Exception e) {
-                onError.accept("Network Error: " + e.getMessage());
+                byte[] data = readChunk(channel, i, chunkSize, size);
+                CompletableFuture<Void> chunk = uploadChunk(transfer, uploadId, i, data, 1)
+                        .thenRun(() -> {
+                            long done = acknowledged.addAndGet(data.length);
+                            showUploadProgress(view, done, size, (done - resumedBytes) * 1e9 / Math.max(1, System.nanoTime() - start));
+                        });
+                chunk.whenComplete((result, error) -> inFlight.release());
+                chunks.add(chunk);
+            }
+            await(CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])));
+        } catch (IOException e) {
+            throw new IOException("Upload interrupted, run the operation again to resume: " + e.getMessage(), e);
+        }
+
+        if (request(transfer, "POST", "/api/compression/uploads/" + uploadId + "/complete") == null) {
+            throw new IOException("Could not complete chunked upload");
+        }
+        return uploadId;
+    }
+
+    private byte[] readChunk(FileChannel channel, int index, int chunkSize, long size) throws IOException {
+        long position = (long) index * chunkSize;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(chunkSize, size - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException(channel + " changed during upload");
             }
-        }).start();
+        }
+        return buffer.array();
     }
 
-    private String readStream(InputStream is) throws IOException {
-        if (is == null) return "";
+    // Retries with a growing delay, without holding a thread while it waits
+    private CompletableFuture<Void> uploadChunk(Transfer transfer, String uploadId, int index, byte[] data, int attempt) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + "/api/compression/uploads/" + uploadId + "/chunks/" + index))
+                .header("Content-Type", "application/octet-stream")
+                .header("X-Chunk-Checksum", String.format("%08x", crc.getValue()))
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(data))
+                .build();
+        return send(transfer, request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+                    String failure = error != null ? error.getMessage() : response.statusCode() + " - " + response.body();
+                    if (attempt >= CHUNK_ATTEMPTS || transfer.isCancelled()) {
+                        return CompletableFuture.<Void>failedFuture(new IOException("chunk " + index + ": " + failure));
+                    }
+                    Executor delayed = CompletableFuture.delayedExecutor(500L * attempt, TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> null, delayed)
+                            .thenCompose(ignored -> uploadChunk(transfer, uploadId, index, data, attempt + 1));
+                })
+                .thenCompose(result -> result);
+    }
+
+    // Returns the response body, or null unless the server answered 200
+    private String request(Transfer transfer, String method, String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + path))
+                .method(method, HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = await(send(transfer, request, HttpResponse.BodyHandlers.ofString()));
+        return response.statusCode() == 200 ? response.body() : null;
+    }
+
+    // Subscribes to the server's progress events for progressId and mirrors them on the view.
+    // Waits briefly for the subscription, so the operation's first events are not missed; the
+    // operation runs without progress if the stream is unavailable.
+    private void watchProgress(Transfer transfer, String progressId, TransferView view) throws InterruptedException {
+        CompletableFuture<Void> subscribed = new CompletableFuture<>();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + "/api/compression/progress/" + progressId))
+                .header("Accept", "text/event-stream")
+                .build();
+        send(transfer, request, info -> {
+            subscribed.complete(null);
+            return HttpResponse.BodySubscribers.fromLineSubscriber(new Flow.Subscriber<String>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(String line) {
+                    if (line.startsWith("data:")) {
+                        showProgress(line.substring(5), view);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    // Closed once the operation finished
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+        });
+        try {
+            subscribed.get(2, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            // Progress is optional
+        }
+    }
+
+    private void showProgress(String json, TransferView view) {
+        showProgress(jsonNumber(json, "fraction", -1), jsonNumber(json, "bytesPerSecond", 0),
+                (long) jsonNumber(json, "etaMillis", -1), jsonString(json, "currentEntry"), view);
+    }
+
+    private void showProgress(double fraction, double rate, long eta, String entry, TransferView view) {
+        Platform.runLater(() -> {
+            view.progressBar.setProgress(fraction);
+            view.progressLabel.setText(fraction >= 0 ? String.format("%.0f%%", fraction * 100) : "Processing...");
+            StringBuilder text = new StringBuilder(formatRate(rate));
+            if (eta > 0) text.append(" · ETA ").append(eta < 1000 ? "<1s" : (eta + 999) / 1000 + "s");
+            if (entry != null) text.append(" · ").append(entry);
+            view.rateLabel.setText(text.toString());
+        });
+    }
+
+    private String formatRate(double bytesPerSecond) {
+        return String.format("%.1f MB/s", bytesPerSecond / (1024.0 * 1024.0));
+    }
+
+    // Just enough JSON for the flat progress events, without pulling a parser into the UI
+    private double jsonNumber(String json, String field, double defaultValue) {
+        Matcher m = Pattern.compile("\"" + field + "\":(-?[0-9.eE+-]+)").matcher(json);
+        return m.find() ? Double.parseDouble(m.group(1)) : defaultValue;
+    }
+
+    private String jsonString(String json, String field) {
+        Matcher m = Pattern.compile("\"" + field + "\":\"((?:[^\"\\\\]|\\\\.)*)\"").matcher(json);
+        return m.find() ? m.group(1).replace("\\\"", "\"").replace("\\\\", "\\") : null;
+    }
+
+    // "upload;dur=12.4, compress;dur=310.0" -> "upload 12.4 ms | compress 310.0 ms"
+    private String formatServerTiming(String header) {
         StringBuilder sb = new StringBuilder();
-        byte[] buffer = new byte[8192];
-        int bytesRead;
-        while ((bytesRead = is.read(buffer)) != -1) {
-            sb.append(new String(buffer, 0, bytesRead));
+        for (String metric : header.split(",")) {
+            String[] parts = metric.trim().split(";");
+            String duration = "";
+            for (int i = 1; i < parts.length; i++) {
+                if (parts[i].trim().startsWith("dur=")) {
+                    duration = " " + parts[i].trim().substring(4) + " ms";
+                }
+            }
+            if (sb.length() > 0) sb.append(" | ");
+            sb.append(parts[0]).append(duration);
+        }
+        return sb.toString();
+    }
+
+    // Called by the local engine as each operation finishes
+    private void queueActivity(Activity activity) {
+        String json = "{\"operationType\":\"" + activity.getOperationType().name() + "\""
+                + ",\"fileName\":\"" + jsonEscape(activity.getFileName()) + "\""
+                + ",\"originalSize\":" + activity.getOriginalSize()
+                + ",\"resultSize\":" + activity.getResultSize()
+                + ",\"timestamp\":\"" + activity.getTimestamp() + "\"}";
+        synchronized (pendingActivities) {
+            pendingActivities.add(json);
+            try {
+                Files.writeString(Path.of(PENDING_ACTIVITIES_FILE), json + "\n", StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                appendStatus("⚠️ Could not save activity record: " + e.getMessage());
+            }
+        }
+        activitySender.execute(this::sendActivities);
+    }
+
+    // Sends queued activity records in batches. Runs on the single activitySender thread, so
+    // nothing else removes from the queue meanwhile; records stay queued until the server has them.
+    private void sendActivities() {
+        List<String> batch;
+        synchronized (pendingActivities) {
+            if (pendingActivities.isEmpty()) return;
+            batch = new ArrayList<>(pendingActivities.subList(0, Math.min(ACTIVITY_BATCH_SIZE, pendingActivities.size())));
+        }
+        HttpRequest request = HttpRequest.newBuilder(URI.create(BACKEND_URL + "/api/compression/activities"))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(30))
+                .POST(HttpRequest.BodyPublishers.ofString("[" + String.join(",", batch) + "]"))
+                .build();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 400) {
+                // Would be rejected forever; drop it rather than block the records behind it
+                appendStatus("⚠️ Server rejected " + batch.size() + " activity records: " + response.body());
+            } else if (response.statusCode() != 200) {
+                return;
+            }
+        } catch (IOException e) {
+            // Server unreachable; the periodic retry sends them later
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        boolean more;
+        synchronized (pendingActivities) {
+            pendingActivities.subList(0, batch.size()).clear();
+            savePendingActivities();
+            more = !pendingActivities.isEmpty();
+        }
+        if (more) {
+            activitySender.execute(this::sendActivities);
+        }
+    }
+
+    private void loadPendingActivities() {
+        Path file = Path.of(PENDING_ACTIVITIES_FILE);
+        if (!Files.exists(file)) return;
+        try {
+            synchronized (pendingActivities) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank()) pendingActivities.add(line);
+                }
+            }
+        } catch (IOException e) {
+            appendStatus("⚠️ Could not load queued activity records: " + e.getMessage());
+        }
+    }
+
+    private void savePendingActivities() {
+        try {
+            Files.write(Path.of(PENDING_ACTIVITIES_FILE), pendingActivities, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            appendStatus("⚠️ Could not save activity records: " + e.getMessage());
+        }
+    }
+
+    private String jsonEscape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
         }
         return sb.toString();
     }
 
+    private synchronized String loadUploadState(String key) {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(UPLOAD_STATE_FILE)) {
+            props.load(fis);
+        } catch (IOException e) {
+            return null;
+        }
+        return props.getProperty(key);
+    }
+
+    private synchronized void saveUploadState(String key, String uploadId) {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(UPLOAD_STATE_FILE)) {
+            props.load(fis);
+        } catch (IOException e) {
+            // No unfinished uploads yet
+        }
+        if (uploadId == null) {
+            props.remove(key);
+        } else {
+            props.setProperty(key, uploadId);
+        }
+        try (FileOutputStream fos = new FileOutputStream(UPLOAD_STATE_FILE)) {
+            props.store(fos, "Unfinished chunked uploads");
+        } catch (IOException e) {
+            appendStatus("⚠️ Could not save upload state: " + e.getMessage());
+        }
+    }
+
     private File compressFile;
+    // Background size scan of the selected folder; a newer selection cancels it
+    private volatile TreeScanner compressSizeScan;
     private File decompressFile;
     private TabPane tabPane;
 
@@ -120,12 +969,28 @@ public class CompressToolUI extends Application {
     private ProgressBar decompressProgress = new ProgressBar(0);
     private Label compressProgressLabel = new Label("0%");
     private Label decompressProgressLabel = new Label("0%");
+    private Label compressRateLabel = new Label("");
+    private Label decompressRateLabel = new Label("");
+    private Button compressCancelButton = new Button("Cancel");
+    private Button decompressCancelButton = new Button("Cancel");
+    private TransferView compressView = new TransferView(compressProgress, compressProgressLabel, compressRateLabel, compressCancelButton);
+    private TransferView decompressView = new TransferView(decompressProgress, decompressProgressLabel, decompressRateLabel, decompressCancelButton);
+
+    // Queue tab. Jobs are only touched on the FX thread.
+    private final List<QueueJob> queueJobs = new ArrayList<>();
+    private ListView<QueueJob> queueList = new ListView<>();
+    private ChoiceBox<String> queueOperation = new ChoiceBox<>();
+    private Spinner<Integer> queueConcurrency = new Spinner<>(1, TRANSFER_THREADS, DEFAULT_QUEUE_CONCURRENCY);
+    private Label queueSummaryLabel = new Label("Queue is empty");
+    private int runningJobs;
+    // Input bytes finished since the queue last went from idle to busy, for the aggregate rate
+    private long busyBytes;
+    private long busyStartNanos;
+    private long busyEndNanos;
 
     // Statistics
-    private AtomicInteger totalOperations = new AtomicInteger(0);
-    private AtomicLong totalBytesSaved = new AtomicLong(0);
-    private AtomicInteger filesCompressed = new AtomicInteger(0);
-    private AtomicInteger filesDecompressed = new AtomicInteger(0);
+    // Shared with the CLI and any other running instance, see StatisticsStore
+    private final StatisticsStore statistics = StatisticsStore.openOrInMemory();
 
     // Enhanced file info labels for compress tab
     private Label compressFileNameLabel = new Label("File Name: -");
@@ -171,9 +1036,10 @@ public class CompressToolUI extends Application {
 
         Tab compressTab = createCompressTab();
         Tab decompressTab = createDecompressTab();
+        Tab queueTab = createQueueTab();
         Tab statsTab = createStatisticsTab();
 
-        tabPane.getTabs().addAll(compressTab, decompressTab, statsTab);
+        tabPane.getTabs().addAll(compressTab, decompressTab, queueTab, statsTab);
 
         VBox root = new VBox(10, createHeader(), tabPane, createStatusPane());
         root.setPadding(new Insets(15));
@@ -185,8 +1051,10 @@ public class CompressToolUI extends Application {
         primaryStage.setMinHeight(600);
         primaryStage.show();
 
-        // Load statistics from file
-        loadStatistics();
+        // Local operations record their activities through the queue
+        localEngine.setActivitySink(this::queueActivity);
+        loadPendingActivities();
+        activitySender.scheduleWithFixedDelay(this::sendActivities, 0, ACTIVITY_RETRY_SECONDS, TimeUnit.SECONDS);
     }
 
     private VBox createHeader() {
@@ -198,7 +1066,17 @@ public class CompressToolUI extends Application {
         subtitleLabel.setFont(Font.font("System", 14));
         subtitleLabel.setTextFill(Color.web("#7f8c8d"));
 
-        VBox header = new VBox(5, titleLabel, subtitleLabel);
+        ChoiceBox<EngineMode> engineChoice = new ChoiceBox<>();
+        engineChoice.getItems().addAll(EngineMode.values());
+        engineChoice.setValue(engineMode);
+        engineChoice.setOnAction(e -> engineMode = engineChoice.getValue());
+        engineChoice.setTooltip(new Tooltip("Auto runs large files and offline operations in-process"));
+        Label engineLabel = new Label("Engine:");
+        engineLabel.setTextFill(Color.web("#7f8c8d"));
+        HBox engineBox = new HBox(8, engineLabel, engineChoice);
+        engineBox.setAlignment(Pos.CENTER);
+
+        VBox header = new VBox(5, titleLabel, subtitleLabel, engineBox);
         header.setAlignment(Pos.CENTER);
         header.setPadding(new Insets(0, 0, 10, 0));
         return header;
@@ -228,6 +1106,224 @@ public class CompressToolUI extends Application {
         return tab;
     }
 
+    private Tab createQueueTab() {
+        Tab tab = new Tab("📋 Queue");
+        tab.setClosable(false);
+        tab.setContent(createQueuePane());
+        return tab;
+    }
+
+    private VBox createQueuePane() {
+        VBox mainVBox = new VBox(15);
+        mainVBox.setPadding(new Insets(25));
+        mainVBox.setStyle("-fx-background-color: white; -fx-border-radius: 10; -fx-background-radius: 10;");
+
+        Label titleLabel = new Label("Job Queue");
+        titleLabel.setFont(Font.font("System", FontWeight.BOLD, 22));
+        titleLabel.setTextFill(Color.web("#2c3e50"));
+
+        Label hintLabel = new Label("Drop any number of files and folders here. Jobs run side by side, so later "
+                + "uploads overlap with the compression of earlier ones.");
+        hintLabel.setWrapText(true);
+        hintLabel.setTextFill(Color.web("#7f8c8d"));
+
+        queueOperation.getItems().addAll("Compress (GZIP)", "Compress (ZIP)", "Decompress");
+        queueOperation.setValue("Compress (GZIP)");
+        queueOperation.setTooltip(new Tooltip("Applied to files as they are added; folders are always zipped"));
+        queueConcurrency.setPrefWidth(80);
+        queueConcurrency.valueProperty().addListener((obs, oldValue, newValue) -> dispatchJobs());
+
+        HBox settingsBox = new HBox(10, new Label("Operation:"), queueOperation, new Label("Concurrent jobs:"), queueConcurrency);
+        settingsBox.setAlignment(Pos.CENTER_LEFT);
+
+        Button addFilesBtn = createStyledButton("📁 Add Files", "#3498db");
+        Button addFolderBtn = createStyledButton("📂 Add Folder", "#3498db");
+        Button retryFailedBtn = createStyledButton("🔁 Retry Failed", "#f39c12");
+        Button clearFinishedBtn = createStyledButton("🗑️ Clear Finished", "#e74c3c");
+        HBox buttonBox = new HBox(15, addFilesBtn, addFolderBtn, retryFailedBtn, clearFinishedBtn);
+
+        queueSummaryLabel.setFont(Font.font("System", FontWeight.BOLD, 14));
+
+        queueList.setCellFactory(list -> new ListCell<>() {
+            @Override
+            protected void updateItem(QueueJob job, boolean empty) {
+                super.updateItem(job, empty);
+                setGraphic(empty || job == null ? null : job.row);
+            }
+        });
+        queueList.setPlaceholder(new Label("Drop files and folders here"));
+        queueList.setPrefHeight(400);
+        VBox.setVgrow(queueList, Priority.ALWAYS);
+
+        mainVBox.getChildren().addAll(titleLabel, hintLabel, settingsBox, buttonBox, queueSummaryLabel, queueList);
+
+        addFilesBtn.setOnAction(e -> {
+            FileChooser fileChooser = new FileChooser();
+            fileChooser.setTitle("Add Files to Queue");
+            fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+            List<File> files = fileChooser.showOpenMultipleDialog(null);
+            if (files != null) addJobs(files);
+        });
+        addFolderBtn.setOnAction(e -> {
+            DirectoryChooser directoryChooser = new DirectoryChooser();
+            directoryChooser.setTitle("Add Folder to Queue");
+            directoryChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+            File folder = directoryChooser.showDialog(null);
+            if (folder != null) addJobs(List.of(folder));
+        });
+        retryFailedBtn.setOnAction(e -> new ArrayList<>(queueJobs).stream()
+                .filter(job -> job.status == JobStatus.FAILED)
+                .forEach(this::retryJob));
+        clearFinishedBtn.setOnAction(e -> {
+            queueJobs.removeIf(job -> job.status == JobStatus.DONE);
+            queueList.getItems().setAll(queueJobs);
+            refreshQueueSummary();
+        });
+
+        mainVBox.setOnDragOver(event -> {
+            if (event.getDragboard().hasFiles()) {
+                event.acceptTransferModes(TransferMode.COPY);
+            }
+            event.consume();
+        });
+        mainVBox.setOnDragDropped(event -> {
+            Dragboard db = event.getDragboard();
+            if (db.hasFiles()) {
+                addJobs(db.getFiles());
+            }
+            event.setDropCompleted(db.hasFiles());
+            event.consume();
+        });
+
+        // The aggregate rate falls while a long job runs, so it is refreshed on a clock too
+        Timeline summaryClock = new Timeline(new KeyFrame(javafx.util.Duration.seconds(1), e -> refreshQueueSummary()));
+        summaryClock.setCycleCount(Animation.INDEFINITE);
+        summaryClock.play();
+
+        return mainVBox;
+    }
+
+    private void addJobs(List<File> files) {
+        String operation = queueOperation.getValue();
+        int skipped = 0;
+        for (File file : files) {
+            String endpoint;
+            String name = file.getName().toLowerCase();
+            if (operation.equals("Decompress")) {
+                endpoint = file.isFile() && name.endsWith(".gz") ? "/api/compression/decompress/gzip"
+                        : file.isFile() && name.endsWith(".zip") ? "/api/compression/decompress/zip" : null;
+            } else if (file.isDirectory() || operation.equals("Compress (ZIP)")) {
+                endpoint = "/api/compression/compress/zip";
+            } else {
+                endpoint = file.isFile() && file.length() > 0 ? "/api/compression/compress/gzip" : null;
+            }
+            if (endpoint == null) {
+                skipped++;
+                continue;
+            }
+            QueueJob job = new QueueJob(file, endpoint);
+            queueJobs.add(job);
+            queueList.getItems().add(job);
+        }
+        appendStatus("📋 Queued " + (files.size() - skipped) + " jobs"
+                + (skipped > 0 ? ", skipped " + skipped + " that " + operation.toLowerCase() + " does not apply to" : ""));
+        dispatchJobs();
+    }
+
+    // Starts queued jobs, in the order they were added, until the concurrency limit is reached
+    private void dispatchJobs() {
+        for (QueueJob job : queueJobs) {
+            if (runningJobs >= queueConcurrency.getValue()) break;
+            if (job.status == JobStatus.QUEUED) {
+                startJob(job);
+            }
+        }
+        refreshQueueSummary();
+    }
+
+    private void startJob(QueueJob job) {
+        if (runningJobs == 0) {
+            busyBytes = 0;
+            busyStartNanos = System.nanoTime();
+        }
+        runningJobs++;
+        job.status = JobStatus.RUNNING;
+        job.startNanos = System.nanoTime();
+        job.retryButton.setDisable(true);
+        job.statusLabel.setText("Running");
+        job.view.progressBar.setProgress(-1);
+        job.view.progressLabel.setText("Processing...");
+
+        boolean isDirectory = job.file.isDirectory();
+        performOperation(job.endpoint, isDirectory ? null : job.file, isDirectory,
+                isDirectory ? job.file.getAbsolutePath() : null, job.view,
+                output -> {
+                    long inputBytes = calculateTotalSize(job.file);
+                    long outputBytes = calculateTotalSize(output);
+                    Platform.runLater(() -> finishJob(job, output, inputBytes, outputBytes, null));
+                },
+                error -> Platform.runLater(() -> finishJob(job, null, 0, 0, error)));
+    }
+
+    private void finishJob(QueueJob job, File output, long inputBytes, long outputBytes, String error) {
+        runningJobs--;
+        if (output != null) {
+            double seconds = Math.max(1, System.nanoTime() - job.startNanos) / 1e9;
+            job.status = JobStatus.DONE;
+            job.view.progressBar.setProgress(1);
+            job.view.progressLabel.setText("100%");
+            job.view.rateLabel.setText(formatRate(inputBytes / seconds) + " avg");
+            job.statusLabel.setText("✅ " + output.getName());
+            busyBytes += inputBytes;
+
+            if (job.endpoint.contains("/compress/")) {
+                statistics.recordCompression(inputBytes - outputBytes);
+            } else {
+                statistics.recordDecompression();
+            }
+            refreshStatistics();
+        } else {
+            job.status = JobStatus.FAILED;
+            job.view.progressBar.setProgress(0);
+            job.view.progressLabel.setText("");
+            job.statusLabel.setText("❌ " + error);
+            job.retryButton.setDisable(false);
+            appendStatus("❌ " + job.file.getName() + ": " + error);
+        }
+        dispatchJobs();
+        if (runningJobs == 0) {
+            busyEndNanos = System.nanoTime();
+        }
+    }
+
+    private void retryJob(QueueJob job) {
+        if (job.status != JobStatus.FAILED) return;
+        job.status = JobStatus.QUEUED;
+        job.retryButton.setDisable(true);
+        job.statusLabel.setText("Queued");
+        job.view.rateLabel.setText("");
+        dispatchJobs();
+    }
+
+    private void refreshQueueSummary() {
+        if (queueJobs.isEmpty()) {
+            queueSummaryLabel.setText("Queue is empty");
+            return;
+        }
+        int queued = 0;
+        int done = 0;
+        int failed = 0;
+        for (QueueJob job : queueJobs) {
+            if (job.status == JobStatus.QUEUED) queued++;
+            else if (job.status == JobStatus.DONE) done++;
+            else if (job.status == JobStatus.FAILED) failed++;
+        }
+        long elapsed = (runningJobs > 0 ? System.nanoTime() : busyEndNanos) - busyStartNanos;
+        String rate = busyBytes > 0 && elapsed > 0 ? " · " + formatRate(busyBytes * 1e9 / elapsed) + " overall" : "";
+        queueSummaryLabel.setText(String.format("Running %d · Queued %d · Done %d · Failed %d%s",
+                runningJobs, queued, done, failed, rate));
+    }
+
     private Tab createStatisticsTab() {
         Tab tab = new Tab("📊 Statistics");
         tab.setClosable(false);
@@ -259,19 +1355,19 @@ public class CompressToolUI extends Application {
 
         // Create dynamic stat cards
         VBox totalOpsCard = createStatCard("📁 Total Operations",
-                String.valueOf(totalOperations.get()),
+                String.valueOf(statistics.get(StatisticsStore.Counter.TOTAL_OPERATIONS)),
                 "All compression and decompression operations");
 
         VBox spaceSavedCard = createStatCard("💾 Total Space Saved",
-                formatFileSize(totalBytesSaved.get()),
+                formatFileSize(statistics.get(StatisticsStore.Counter.TOTAL_BYTES_SAVED)),
                 "Bytes saved through compression");
 
         VBox filesCompressedCard = createStatCard("🗜️ Files Compressed",
-                String.valueOf(filesCompressed.get()),
+                String.valueOf(statistics.get(StatisticsStore.Counter.FILES_COMPRESSED)),
                 "Successful compression operations");
 
         VBox filesDecompressedCard = createStatCard("📤 Files Decompressed",
-                String.valueOf(filesDecompressed.get()),
+                String.valueOf(statistics.get(StatisticsStore.Counter.FILES_DECOMPRESSED)),
                 "Successful decompression operations");
 
         VBox currentDirCard = createStatCard("⚡ Current Directory",
@@ -351,16 +1447,16 @@ public class CompressToolUI extends Application {
 
                     switch (titleLabel.getText()) {
                         case "📁 Total Operations":
-                            valueLabel.setText(String.valueOf(totalOperations.get()));
+                            valueLabel.setText(String.valueOf(statistics.get(StatisticsStore.Counter.TOTAL_OPERATIONS)));
                             break;
                         case "💾 Total Space Saved":
-                            valueLabel.setText(formatFileSize(totalBytesSaved.get()));
+                            valueLabel.setText(formatFileSize(statistics.get(StatisticsStore.Counter.TOTAL_BYTES_SAVED)));
                             break;
                         case "🗜️ Files Compressed":
-                            valueLabel.setText(String.valueOf(filesCompressed.get()));
+                            valueLabel.setText(String.valueOf(statistics.get(StatisticsStore.Counter.FILES_COMPRESSED)));
                             break;
                         case "📤 Files Decompressed":
-                            valueLabel.setText(String.valueOf(filesDecompressed.get()));
+                            valueLabel.setText(String.valueOf(statistics.get(StatisticsStore.Counter.FILES_DECOMPRESSED)));
                             break;
                         case "⚡ Current Directory":
                             valueLabel.setText(System.getProperty("user.dir"));
@@ -376,12 +1472,8 @@ public class CompressToolUI extends Application {
     }
 
     private void resetStatistics() {
-        totalOperations.set(0);
-        totalBytesSaved.set(0);
-        filesCompressed.set(0);
-        filesDecompressed.set(0);
+        statistics.reset();
         appendStatus("🔄 Statistics reset");
-        saveStatistics();
         refreshStatistics();
     }
 
@@ -453,7 +1545,7 @@ public class CompressToolUI extends Application {
         HBox progressBarBox = new HBox(10);
         progressBarBox.setAlignment(Pos.CENTER_LEFT);
         compressProgress.setPrefWidth(400);
-        progressBarBox.getChildren().addAll(compressProgress, compressProgressLabel);
+        progressBarBox.getChildren().addAll(compressProgress, compressProgressLabel, compressCancelButton, compressRateLabel);
 
         progressBox.getChildren().addAll(progressLabel, progressBarBox);
 
@@ -546,7 +1638,7 @@ public class CompressToolUI extends Application {
         HBox progressBarBox = new HBox(10);
         progressBarBox.setAlignment(Pos.CENTER_LEFT);
         decompressProgress.setPrefWidth(400);
-        progressBarBox.getChildren().addAll(decompressProgress, decompressProgressLabel);
+        progressBarBox.getChildren().addAll(decompressProgress, decompressProgressLabel, decompressCancelButton, decompressRateLabel);
 
         progressBox.getChildren().addAll(progressLabel, progressBarBox);
 
@@ -784,7 +1876,8 @@ public class CompressToolUI extends Application {
         compressProgress.setProgress(-1); // indeterminate
         compressProgressLabel.setText("Processing...");
 
-        performApiOperation("/api/compression/compress/gzip", compressFile, false, null, outputFile -> {
+        performOperation("/api/compression/compress/gzip", compressFile, false, null,
+                compressView, outputFile -> {
             long originalSize = compressFile.length();
             long compressedSize = outputFile.length();
             long bytesSaved = originalSize - compressedSize;
@@ -792,10 +1885,7 @@ public class CompressToolUI extends Application {
             Platform.runLater(() -> {
                 updateOutputInfo("compress", outputFile, originalSize, compressedSize);
                 appendStatus("✅ File compressed successfully: " + outputFile.getName());
-                totalOperations.incrementAndGet();
-                filesCompressed.incrementAndGet();
-                totalBytesSaved.addAndGet(bytesSaved);
-                saveStatistics();
+                statistics.recordCompression(bytesSaved);
                 refreshStatistics();
                 compressProgress.setProgress(1);
                 compressProgressLabel.setText("100%");
@@ -829,7 +1919,8 @@ public class CompressToolUI extends Application {
         compressProgressLabel.setText("Processing...");
 
         if (compressFile.isDirectory()) {
-            performApiOperation("/api/compression/compress/zip", null, true, compressFile.getAbsolutePath(), outputFile -> {
+            performOperation("/api/compression/compress/zip", null, true, compressFile.getAbsolutePath(),
+                    compressView, outputFile -> {
                 long originalSize = calculateTotalSize(compressFile);
                 long compressedSize = outputFile.length();
                 long bytesSaved = originalSize - compressedSize;
@@ -837,10 +1928,7 @@ public class CompressToolUI extends Application {
                 Platform.runLater(() -> {
                     updateOutputInfo("compress", outputFile, originalSize, compressedSize);
                     appendStatus("✅ ZIP archive created successfully: " + outputFile.getName());
-                    totalOperations.incrementAndGet();
-                    filesCompressed.incrementAndGet();
-                    totalBytesSaved.addAndGet(bytesSaved);
-                    saveStatistics();
+                    statistics.recordCompression(bytesSaved);
                     refreshStatistics();
                     compressProgress.setProgress(1);
                     compressProgressLabel.setText("100%");
@@ -860,7 +1948,8 @@ public class CompressToolUI extends Application {
                 });
             });
         } else {
-            performApiOperation("/api/compression/compress/zip", compressFile, false, null, outputFile -> {
+            performOperation("/api/compression/compress/zip", compressFile, false, null,
+                    compressView, outputFile -> {
                 long originalSize = compressFile.length();
                 long compressedSize = outputFile.length();
                 long bytesSaved = originalSize - compressedSize;
@@ -868,10 +1957,7 @@ public class CompressToolUI extends Application {
                 Platform.runLater(() -> {
                     updateOutputInfo("compress", outputFile, originalSize, compressedSize);
                     appendStatus("✅ ZIP archive created successfully: " + outputFile.getName());
-                    totalOperations.incrementAndGet();
-                    filesCompressed.incrementAndGet();
-                    totalBytesSaved.addAndGet(bytesSaved);
-                    saveStatistics();
+                    statistics.recordCompression(bytesSaved);
                     refreshStatistics();
                     compressProgress.setProgress(1);
                     compressProgressLabel.setText("100%");
@@ -918,16 +2004,15 @@ public class CompressToolUI extends Application {
         decompressProgress.setProgress(-1); // indeterminate
         decompressProgressLabel.setText("Processing...");
 
-        performApiOperation("/api/compression/decompress/gzip", decompressFile, false, null, outputFile -> {
+        performOperation("/api/compression/decompress/gzip", decompressFile, false, null,
+                decompressView, outputFile -> {
             long compressedSize = decompressFile.length();
             long decompressedSize = outputFile.length();
 
             Platform.runLater(() -> {
                 updateOutputInfo("decompress", outputFile, compressedSize, decompressedSize);
                 appendStatus("✅ File decompressed successfully: " + outputFile.getName());
-                totalOperations.incrementAndGet();
-                filesDecompressed.incrementAndGet();
-                saveStatistics();
+                statistics.recordDecompression();
                 refreshStatistics();
                 decompressProgress.setProgress(1);
                 decompressProgressLabel.setText("100%");
@@ -964,23 +2049,23 @@ public class CompressToolUI extends Application {
         decompressProgress.setProgress(-1); // indeterminate
         decompressProgressLabel.setText("Processing...");
 
-        performApiOperation("/api/compression/decompress/zip", decompressFile, false, null, outputFile -> {
+        performOperation("/api/compression/decompress/zip", decompressFile, false, null,
+                decompressView, outputFile -> {
             long compressedSize = decompressFile.length();
-            long decompressedSize = outputFile.length(); // Note: this is the size of the zipped extracted, not the extracted size
+            // The server returns the extracted files zipped; the local engine extracts them in place
+            long decompressedSize = outputFile.isDirectory() ? calculateTotalSize(outputFile) : outputFile.length();
 
             Platform.runLater(() -> {
                 updateOutputInfo("decompress", outputFile, compressedSize, decompressedSize);
                 appendStatus("✅ ZIP archive extracted successfully: " + outputFile.getName());
-                totalOperations.incrementAndGet();
-                filesDecompressed.incrementAndGet();
-                saveStatistics();
+                statistics.recordDecompression();
                 refreshStatistics();
                 decompressProgress.setProgress(1);
                 decompressProgressLabel.setText("100%");
                 showAlert(Alert.AlertType.INFORMATION, "Success",
                         "ZIP archive extracted successfully!\n\n" +
                                 "Archive: " + decompressFile.getName() + " (" + formatFileSize(compressedSize) + ")\n" +
-                                "Extracted to: " + outputFile.getName() + " (zipped)\n" +
+                                "Extracted to: " + outputFile.getName() + (outputFile.isDirectory() ? "" : " (zipped)") + "\n" +
                                 "Location: " + outputFile.getParent());
             });
         }, error -> {
@@ -1090,13 +2175,52 @@ public class CompressToolUI extends Application {
 
     private void setCompressFile(File file) {
         compressFile = file;
+        TreeScanner previous = compressSizeScan;
+        if (previous != null) {
+            previous.cancel();
+        }
+        compressSizeScan = null;
+        if (file.isDirectory()) {
+            scanFolderSize(file);
+        }
         Platform.runLater(() -> {
             compressFileNameLabel.setText("File Name: " + file.getName());
-            compressFileSizeLabel.setText("File Size: " + formatFileSize(file.length()));
+            compressFileSizeLabel.setText("File Size: " + (file.isDirectory() ? "scanning..." : formatFileSize(file.length())));
             compressFileTypeLabel.setText("File Type: " + (file.isDirectory() ? "Directory" : getFileExtension(file)));
             compressLastModifiedLabel.setText("Last Modified: " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(file.lastModified())));
             compressFilePathLabel.setText("File Path: " + file.getAbsolutePath());
-            appendStatus("📄 File selected for compression: " + file.getName() + " (" + formatFileSize(file.length()) + ")");
+            if (!file.isDirectory()) {
+                appendStatus("📄 File selected for compression: " + file.getName() + " (" + formatFileSize(file.length()) + ")");
+            }
+        });
+    }
+
+    // The size label counts up while the scan runs, so huge trees and slow shares show progress
+    // instead of freezing the window
+    private void scanFolderSize(File folder) {
+        TreeScanner scanner = localEngine.newScanner();
+        compressSizeScan = scanner;
+        scanner.listener((files, directories, bytes) -> Platform.runLater(() -> {
+            if (compressSizeScan == scanner) {
+                compressFileSizeLabel.setText("File Size: " + formatFileSize(bytes) + " in " + files + " files (scanning...)");
+            }
+        }));
+        transferExecutor.execute(() -> {
+            String result;
+            try {
+                long bytes = scanner.totalSize(folder);
+                result = formatFileSize(bytes) + " in " + scanner.getFiles() + " files";
+            } catch (InterruptedIOException e) {
+                return;
+            } catch (IOException | IllegalArgumentException e) {
+                result = "unknown (" + e.getMessage() + ")";
+            }
+            String size = result;
+            Platform.runLater(() -> {
+                if (compressSizeScan != scanner) return;
+                compressFileSizeLabel.setText("File Size: " + size);
+                appendStatus("📄 Folder selected for compression: " + folder.getName() + " (" + size + ")");
+            });
         });
     }
 
@@ -1201,18 +2325,7 @@ public class CompressToolUI extends Application {
 
 
     private long calculateTotalSize(File file) {
-        long size = 0;
-        if (file.isFile()) {
-            return file.length();
-        } else if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    size += calculateTotalSize(f);
-                }
-            }
-        }
-        return size;
+        return localEngine.calculateTotalSize(file);
     }
 
     private String formatFileSize(long bytes) {
@@ -1222,33 +2335,6 @@ public class CompressToolUI extends Application {
         return String.format("%.1f GB", bytes / (1024.0 * 1024.0 * 1024.0));
     }
 
-    private void saveStatistics() {
-        Properties props = new Properties();
-        props.setProperty("totalOperations", String.valueOf(totalOperations.get()));
-        props.setProperty("totalBytesSaved", String.valueOf(totalBytesSaved.get()));
-        props.setProperty("filesCompressed", String.valueOf(filesCompressed.get()));
-        props.setProperty("filesDecompressed", String.valueOf(filesDecompressed.get()));
-
-        try (FileOutputStream fos = new FileOutputStream("compression_stats.properties")) {
-            props.store(fos, "Compression Tool Statistics");
-        } catch (IOException e) {
-            appendStatus("❌ Failed to save statistics: " + e.getMessage());
-        }
-    }
-
-    private void loadStatistics() {
-        Properties props = new Properties();
-        try (FileInputStream fis = new FileInputStream("compression_stats.properties")) {
-            props.load(fis);
-            totalOperations.set(Integer.parseInt(props.getProperty("totalOperations", "0")));
-            totalBytesSaved.set(Long.parseLong(props.getProperty("totalBytesSaved", "0")));
-            filesCompressed.set(Integer.parseInt(props.getProperty("filesCompressed", "0")));
-            filesDecompressed.set(Integer.parseInt(props.getProperty("filesDecompressed", "0")));
-        } catch (IOException e) {
-            // No previous statistics found, starting fresh
-        }
-    }
-
     private void updateOutputInfo(String type, File outputFile, long originalSize, long outputSize) {
         Platform.runLater(() -> {
             if (type.equals("compress")) {
@@ -0,0 +1,337 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.example.compressiontool.CompressionService;
+import com.example.compressiontool.StatisticsStore;
+
+// The watch command of CompressToolBatch: compresses files as they appear in a directory.
+//
+// Change events only mark a file as pending; a file is compressed once it has had no events
+// for the debounce interval and its size and modification time held still across that
+// interval, so a file that is still being written is left alone. Pending files are handed to
+// a fixed pool through a bounded number of slots, so a burst waits in the pending map rather
+// than in an unbounded queue. The directory is scanned once at startup, for files that
+// arrived while nothing was watching, and again only if the event queue overflows.
+public class FolderWatcher {
+
+    enum Originals { KEEP, DELETE, MOVE }
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final long REPORT_INTERVAL_SECONDS = 60;
+
+    // A changed file waiting to settle
+    private static class Pending {
+        volatile long lastEventNanos;
+        long size = -1;
+        long modified = -1;
+
+        Pending(long lastEventNanos) {
+            this.lastEventNanos = lastEventNanos;
+        }
+    }
+
+    private final CompressionService service;
+    private final StatisticsStore statistics;
+    private final Path root;
+    private final boolean recursive;
+    private final String extension;
+    private final boolean zip;
+    private final File outputDir;
+    private final Originals originals;
+    private final File moveTo;
+    private final long debounceNanos;
+    private final boolean quiet;
+
+    private final Map<Path, Pending> pending = new ConcurrentHashMap<>();
+    // Files handed to a worker and not finished yet, so late events for them are not queued again
+    private final Map<Path, Boolean> inProgress = new ConcurrentHashMap<>();
+    private final ExecutorService workers;
+    private final Semaphore slots;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+
+    private final AtomicInteger compressed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile int reportedCompressed;
+
+    FolderWatcher(CompressionService service, StatisticsStore statistics, Path root, boolean recursive, String codec, File outputDir,
+                  int threads, long debounceMillis, Originals originals, File moveTo, boolean quiet) throws IOException {
+        this.service = service;
+        this.statistics = statistics;
+        this.root = root.toAbsolutePath().normalize();
+        this.recursive = recursive;
+        this.zip = codec.equals("zip");
+        this.extension = zip ? ".zip" : ".gz";
+        this.outputDir = outputDir;
+        this.originals = originals;
+        this.moveTo = moveTo;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        this.quiet = quiet;
+        this.workers = Executors.newFixedThreadPool(threads);
+        // Enough to keep every worker busy while the next files are being handed over
+        this.slots = new Semaphore(threads * 2);
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    // Watches until the process is stopped
+    void run() throws IOException {
+        register(root);
+        long tick = Math.max(50, TimeUnit.NANOSECONDS.toMillis(debounceNanos) / 4);
+        scheduler.scheduleWithFixedDelay(this::dispatch, tick, tick, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::report, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+
+        log("Watching " + root + (recursive ? " and its subdirectories" : "") + ", originals: "
+                + originals.name().toLowerCase() + (moveTo != null ? " to " + moveTo : ""));
+        scan(root);
+
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Path dir = keys.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        log("Event queue overflowed, rescanning " + root);
+                        scan(root);
+                        continue;
+                    }
+                    if (dir == null) continue;
+                    Path path = dir.resolve((Path) event.context());
+                    if (recursive && event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                        // Files may have landed in it before it was registered
+                        register(path);
+                        scan(path);
+                    } else {
+                        touch(path);
+                    }
+                }
+                if (!key.reset()) {
+                    keys.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private void register(Path dir) throws IOException {
+        if (isExcluded(dir)) return;
+        WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        keys.put(key, dir);
+        if (recursive) {
+            try (var children = Files.list(dir)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    if (Files.isDirectory(child)) register(child);
+                }
+            }
+        }
+    }
+
+    private void scan(Path dir) {
+        try {
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class),
+                    recursive ? Integer.MAX_VALUE : 1, new SimpleFileVisitor<>() {
+                        @Override
+                        public FileVisitResult preVisitDirectory(Path subdir, BasicFileAttributes attrs) {
+                            return isExcluded(subdir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                            if (attrs.isRegularFile()) touch(file);
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(Path file, IOException e) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        } catch (IOException e) {
+            log("Could not scan " + dir + ": " + e.getMessage());
+        }
+    }
+
+    private void touch(Path path) {
+        if (!isCandidate(path)) return;
+        long now = System.nanoTime();
+        Pending entry = pending.putIfAbsent(path, new Pending(now));
+        if (entry != null) {
+            entry.lastEventNanos = now;
+        }
+    }
+
+    // Our own outputs, hidden and partial files, and anything under the output or move-to
+    // directory (which may lie inside the watched tree) are not inputs
+    private boolean isCandidate(Path path) {
+        String name = path.getFileName().toString();
+        String lower = name.toLowerCase();
+        return !name.startsWith(".") && !lower.endsWith(extension) && !lower.endsWith(".tmp")
+                && !lower.endsWith(".part") && !isExcluded(path.getParent()) && !inProgress.containsKey(path);
+    }
+
+    private boolean isExcluded(Path dir) {
+        if (dir == null) return false;
+        Path normalized = dir.toAbsolutePath().normalize();
+        return (outputDir != null && !outputDir.toPath().toAbsolutePath().normalize().equals(root)
+                        && normalized.startsWith(outputDir.toPath().toAbsolutePath().normalize()))
+                || (moveTo != null && normalized.startsWith(moveTo.toPath().toAbsolutePath().normalize()));
+    }
+
+    // Runs on the scheduler: hands settled files to the workers while there are free slots
+    private void dispatch() {
+        long now = System.nanoTime();
+        for (Map.Entry<Path, Pending> entry : pending.entrySet()) {
+            Path path = entry.getKey();
+            Pending state = entry.getValue();
+            if (now - state.lastEventNanos < debounceNanos) continue;
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    pending.remove(path, state);
+                    continue;
+                }
+                long modified = attrs.lastModifiedTime().toMillis();
+                if (attrs.size() != state.size || modified != state.modified) {
+                    // Still changing without events, e.g. on a network share: wait one more interval
+                    state.size = attrs.size();
+                    state.modified = modified;
+                    state.lastEventNanos = now;
+                    continue;
+                }
+            } catch (IOException e) {
+                // Gone again, e.g. a temporary file renamed away
+                pending.remove(path, state);
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            pending.remove(path, state);
+            inProgress.put(path, Boolean.TRUE);
+            workers.execute(() -> {
+                try {
+                    compress(path);
+                } finally {
+                    inProgress.remove(path);
+                    slots.release();
+                    // Refill the slot now rather than on the next tick, so bursts drain at worker speed
+                    if (!pending.isEmpty() && !scheduler.isShutdown()) {
+                        scheduler.execute(this::dispatch);
+                    }
+                }
+            });
+        }
+    }
+
+    private void compress(Path path) {
+        File source = path.toFile();
+        File target = targetFor(path);
+        try {
+            if (target.exists()) {
+                log("Skipped " + path + ": " + target + " exists");
+                return;
+            }
+            Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+            long sourceSize = source.length();
+            if (zip) {
+                service.compressZIP(source, target);
+            } else {
+                service.compressGZIP(source, target);
+            }
+            bytesRead.addAndGet(sourceSize);
+            bytesWritten.addAndGet(target.length());
+            statistics.recordCompression(sourceSize - target.length());
+
+            switch (originals) {
+                case DELETE:
+                    Files.delete(path);
+                    break;
+                case MOVE:
+                    Path destination = moveTo.toPath().resolve(root.relativize(path));
+                    Files.createDirectories(destination.getParent());
+                    Files.move(path, destination, StandardCopyOption.REPLACE_EXISTING);
+                    break;
+                default:
+                    break;
+            }
+            compressed.incrementAndGet();
+            if (!quiet) {
+                log(path + " -> " + target + " (" + sourceSize + " -> " + target.length() + " bytes)");
+            }
+        } catch (IOException | RuntimeException e) {
+            target.delete();
+            failed.incrementAndGet();
+            log("Failed " + path + ": " + e.getMessage());
+        }
+    }
+
+    private File targetFor(Path path) {
+        String name = path.getFileName().toString() + extension;
+        if (outputDir == null) {
+            return path.resolveSibling(name).toFile();
+        }
+        Path relative = root.relativize(path).getParent();
+        return (relative == null ? outputDir.toPath() : outputDir.toPath().resolve(relative)).resolve(name).toFile();
+    }
+
+    private void report() {
+        int total = compressed.get();
+        if (total == reportedCompressed && pending.isEmpty()) return;
+        log(String.format("%d files in the last %d s, %d total, %d failed, %d pending, %d in progress, %.1f MB read",
+                total - reportedCompressed, REPORT_INTERVAL_SECONDS, total, failed.get(), pending.size(),
+                inProgress.size(), bytesRead.get() / (1024.0 * 1024.0)));
+        reportedCompressed = total;
+    }
+
+    private void shutdown() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing anyway
+        }
+        scheduler.shutdownNow();
+        workers.shutdown();
+        try {
+            // Let running files finish so no half-written output is left behind
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log(String.format("Stopped: %d compressed, %d failed, %d still pending; %.1f MB -> %.1f MB",
+                compressed.get(), failed.get(), pending.size(),
+                bytesRead.get() / (1024.0 * 1024.0), bytesWritten.get() / (1024.0 * 1024.0)));
+    }
+
+    private static void log(String message) {
+        System.out.println("[" + LocalTime.now().format(TIME_FORMATTER) + "] " + message);
+    }
+}
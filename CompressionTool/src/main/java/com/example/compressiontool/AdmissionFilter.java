@@ -0,0 +1,399 @@
+package com.example.compressiontool;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// Admission control for the API, so one client streaming a huge upload cannot starve everyone
+// else. Each client (by remote address, or by a configured header behind a proxy) has two token
+// buckets: one on requests per second and one on request body bytes per second. The byte bucket
+// is charged the whole declared body up front and may go into debt, so a 50 GB upload is let in
+// and the client then waits out the debt before its next upload.
+//
+// Requests with a body also need room in a global in-flight byte budget. When there is none they
+// queue per client, and the queues are served round-robin, so a client with a deep backlog takes
+// turns with one that has a single request. No client may hold more than half the budget, which
+// leaves the rest for others however much one client sends; a request larger than that is charged
+// the half. Requests without a body (progress, stats, downloads) skip the queue entirely.
+//
+// A queued request holds its Tomcat thread while it waits, so the queue as a whole is capped
+// well below the thread pool, by default at a quarter of server.tomcat.threads.max. That leaves
+// threads for the requests that are running and for the ones that skip the queue.
+//
+// A request that is over a rate, finds its client's queue or the global queue full, or waits
+// longer than the queue timeout gets a 429 with Retry-After and a one-line reason.
+@Component
+public class AdmissionFilter extends OncePerRequestFilter {
+
+    private static final long IDLE_CLIENT_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    @Autowired
+    private CompressionMetrics metrics;
+
+    private boolean enabled = true;
+    private String clientHeader = "";
+    private double requestRate;
+    private double requestBurst;
+    private double byteRate;
+    private double byteBurst;
+    private long maxInFlightBytes;
+    private long queueTimeoutMillis;
+    private int maxQueuedPerClient;
+    private int maxQueued;
+    private int requestThreads;
+
+    private final Map<String, Client> clients = new ConcurrentHashMap<>();
+    // Clients with queued requests, in the order they get their next turn; guarded by this
+    private final Deque<Client> rotation = new ArrayDeque<>();
+    private long inFlightBytes;
+    private int queued;
+    private volatile long lastSweep = System.nanoTime();
+
+    @Value("${compression.admission.enabled:true}")
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // Empty identifies clients by remote address
+    @Value("${compression.admission.client-header:}")
+    public void setClientHeader(String clientHeader) {
+        this.clientHeader = clientHeader.trim();
+    }
+
+    // Requests per second per client, and how many may come at once; 0 means no limit
+    @Value("${compression.admission.requests-per-second:50}")
+    public void setRequestRate(double requestRate) {
+        this.requestRate = nonNegative(requestRate, "Request rate");
+    }
+
+    @Value("${compression.admission.request-burst:100}")
+    public void setRequestBurst(double requestBurst) {
+        this.requestBurst = nonNegative(requestBurst, "Request burst");
+    }
+
+    // Upload bytes per second per client, and how much may come at once; 0 means no limit
+    @Value("${compression.admission.bytes-per-second:0}")
+    public void setByteRate(double byteRate) {
+        this.byteRate = nonNegative(byteRate, "Byte rate");
+    }
+
+    @Value("${compression.admission.byte-burst:1073741824}")
+    public void setByteBurst(double byteBurst) {
+        this.byteBurst = nonNegative(byteBurst, "Byte burst");
+    }
+
+    // Request body bytes being processed at once across all clients; 0 means no limit
+    @Value("${compression.admission.max-in-flight-bytes:4294967296}")
+    public void setMaxInFlightBytes(long maxInFlightBytes) {
+        this.maxInFlightBytes = maxInFlightBytes > 0 ? maxInFlightBytes : Long.MAX_VALUE;
+    }
+
+    @Value("${compression.admission.queue-timeout-ms:30000}")
+    public void setQueueTimeoutMillis(long queueTimeoutMillis) {
+        this.queueTimeoutMillis = (long) nonNegative(queueTimeoutMillis, "Queue timeout");
+    }
+
+    @Value("${compression.admission.max-queued-per-client:16}")
+    public void setMaxQueuedPerClient(int maxQueuedPerClient) {
+        this.maxQueuedPerClient = (int) nonNegative(maxQueuedPerClient, "Queue length");
+    }
+
+    // Requests waiting across all clients; 0 means a quarter of the request threads
+    @Value("${compression.admission.max-queued:0}")
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = (int) nonNegative(maxQueued, "Queue length");
+    }
+
+    @Value("${server.tomcat.threads.max:200}")
+    public void setRequestThreads(int requestThreads) {
+        this.requestThreads = requestThreads;
+    }
+
+    @PostConstruct
+    public void registerGauges() {
+        if (maxQueued == 0) {
+            maxQueued = Math.max(1, requestThreads / 4);
+        }
+        metrics.gauge("compression.admission.inflight.bytes", "Request body bytes admitted and not yet finished",
+                this::getInFlightBytes);
+        metrics.gauge("compression.admission.queued", "Requests waiting for the in-flight byte budget",
+                this::getQueued);
+    }
+
+    public synchronized long getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    public synchronized int getQueued() {
+        return queued;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        sweep(start);
+        String key = clientKey(request);
+        // Atomic with the sweep's removal, so a client is never dropped between lookup and use
+        Client client = clients.compute(key, (k, existing) -> {
+            Client c = existing != null ? existing : new Client(k, start);
+            c.lastSeen = start;
+            return c;
+        });
+
+        long wait = client.requests.take(1, start);
+        if (wait > 0) {
+            reject(response, "rate", start, wait,
+                    "Too many requests from " + key + ": the limit is " + format(requestRate) + " per second");
+            return;
+        }
+
+        long length = bodyLength(request);
+        if (length == 0) {
+            metrics.recordAdmission("admitted", System.nanoTime() - start);
+            chain.doFilter(request, response);
+            return;
+        }
+
+        wait = client.bytes.take(length, start);
+        if (wait > 0) {
+            reject(response, "bytes", start, wait,
+                    "Upload rate exceeded for " + key + ": the limit is " + format(byteRate) + " bytes per second");
+            return;
+        }
+
+        Ticket ticket = new Ticket(client, Math.min(length, maxInFlightBytes / 2));
+        String refused;
+        try {
+            refused = acquire(ticket, start + TimeUnit.MILLISECONDS.toNanos(queueTimeoutMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            refused = "Server is shutting down";
+        }
+        if (refused != null) {
+            // The body was never read, so it should not count against the client's rate
+            client.bytes.refund(length);
+            reject(response, "busy", start, TimeUnit.MILLISECONDS.toNanos(Math.max(1000, queueTimeoutMillis / 2)),
+                    refused);
+            return;
+        }
+        metrics.recordAdmission("admitted", System.nanoTime() - start);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            release(ticket);
+        }
+    }
+
+    private String clientKey(HttpServletRequest request) {
+        if (!clientHeader.isEmpty()) {
+            String value = request.getHeader(clientHeader);
+            if (value != null && !value.isBlank()) {
+                // X-Forwarded-For style lists: the first entry is the original client
+                int comma = value.indexOf(',');
+                return (comma >= 0 ? value.substring(0, comma) : value).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    // The declared body size. HTTP/2 and chunked uploads may not declare one; those are charged
+    // as much as a client may hold, the worst case.
+    private long bodyLength(HttpServletRequest request) {
+        long length = request.getContentLengthLong();
+        if (length >= 0) return length;
+        String method = request.getMethod();
+        if (!"POST".equals(method) && !"PUT".equals(method) && !"PATCH".equals(method)) return 0;
+        return maxInFlightBytes == Long.MAX_VALUE ? 0 : maxInFlightBytes / 2;
+    }
+
+    // Returns null once the ticket is granted, otherwise why it was not
+    private synchronized String acquire(Ticket ticket, long deadline) throws InterruptedException {
+        Client client = ticket.client;
+        if (client.waiting.size() >= maxQueuedPerClient) {
+            return "Too many queued requests from " + client.key + ": at most " + maxQueuedPerClient;
+        }
+        client.waiting.add(ticket);
+        queued++;
+        if (client.waiting.size() == 1) {
+            rotation.add(client);
+        }
+        dispatch();
+        // Only a ticket that has to wait takes a place in the global queue
+        if (!ticket.granted && queued > maxQueued) {
+            withdraw(ticket);
+            return "Server busy: " + maxQueued + " requests already queued";
+        }
+        while (!ticket.granted) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                withdraw(ticket);
+                return "Server busy: no capacity for this upload within " + format(queueTimeoutMillis / 1000.0) + " s";
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return null;
+    }
+
+    private void withdraw(Ticket ticket) {
+        Client client = ticket.client;
+        client.waiting.remove(ticket);
+        queued--;
+        if (client.waiting.isEmpty()) {
+            rotation.remove(client);
+        }
+        // Our ticket may have been what held the others up
+        dispatch();
+    }
+
+    private synchronized void release(Ticket ticket) {
+        inFlightBytes -= ticket.charge;
+        ticket.client.inFlightBytes -= ticket.charge;
+        dispatch();
+    }
+
+    // Grants queued tickets, one per client per turn, while they fit. A client at its share is
+    // passed over; when the next ticket does not fit the budget nobody else goes ahead of it,
+    // otherwise a stream of small uploads would starve a large one forever.
+    private void dispatch() {
+        boolean granted = false;
+        int passed = 0;
+        while (!rotation.isEmpty() && passed < rotation.size()) {
+            Client client = rotation.peek();
+            Ticket head = client.waiting.peek();
+            if (client.inFlightBytes > 0 && client.inFlightBytes + head.charge > maxInFlightBytes / 2) {
+                rotation.add(rotation.poll());
+                passed++;
+                continue;
+            }
+            if (inFlightBytes + head.charge > maxInFlightBytes) {
+                break;
+            }
+            rotation.poll();
+            client.waiting.poll();
+            queued--;
+            if (!client.waiting.isEmpty()) {
+                rotation.add(client);
+            }
+            inFlightBytes += head.charge;
+            client.inFlightBytes += head.charge;
+            head.granted = true;
+            granted = true;
+            passed = 0;
+        }
+        if (granted) {
+            notifyAll();
+        }
+    }
+
+    private void reject(HttpServletResponse response, String outcome, long start, long retryNanos, String message)
+            throws IOException {
+        metrics.recordAdmission(outcome, System.nanoTime() - start);
+        response.setStatus(429);
+        response.setHeader("Retry-After", String.valueOf(Math.max(1, (retryNanos + 999_999_999) / 1_000_000_000)));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(message);
+    }
+
+    // Forgets clients that have been idle long enough for their buckets to be full again
+    private void sweep(long now) {
+        long last = lastSweep;
+        if (now - last < TimeUnit.MINUTES.toNanos(1)) return;
+        lastSweep = now;
+        synchronized (this) {
+            // computeIfPresent, like the compute in doFilterInternal, runs atomically for its key
+            for (String key : clients.keySet()) {
+                clients.computeIfPresent(key, (k, client) -> now - client.lastSeen > IDLE_CLIENT_NANOS
+                        && client.inFlightBytes == 0 && client.waiting.isEmpty() ? null : client);
+            }
+        }
+    }
+
+    private static double nonNegative(double value, String name) {
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must not be negative");
+        }
+        return value;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private class Client {
+        final String key;
+        final TokenBucket requests = new TokenBucket(requestRate, requestBurst);
+        final TokenBucket bytes = new TokenBucket(byteRate, byteBurst);
+        // Guarded by the filter, like rotation
+        final Deque<Ticket> waiting = new ArrayDeque<>();
+        long inFlightBytes;
+        volatile long lastSeen;
+
+        Client(String key, long now) {
+            this.key = key;
+            this.lastSeen = now;
+        }
+    }
+
+    private static class Ticket {
+        final Client client;
+        final long charge;
+        boolean granted;
+
+        Ticket(Client client, long charge) {
+            this.client = client;
+            this.charge = charge;
+        }
+    }
+
+    // Starts full. take() succeeds while at least one whole token is left, even if the amount
+    // leaves the bucket in debt, and otherwise says how long until there will be one.
+    static class TokenBucket {
+        private final double rate;
+        private final double capacity;
+        private double tokens;
+        private long updated;
+
+        TokenBucket(double rate, double capacity) {
+            this.rate = rate;
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+            this.updated = System.nanoTime();
+        }
+
+        // 0 if taken, otherwise nanoseconds to wait
+        synchronized long take(double amount, long now) {
+            if (rate == 0) return 0;
+            tokens = Math.min(capacity, tokens + (now - updated) * rate / 1e9);
+            updated = now;
+            if (tokens < 1) {
+                return (long) Math.ceil((1 - tokens) / rate * 1e9);
+            }
+            tokens -= amount;
+            return 0;
+        }
+
+        synchronized void refund(double amount) {
+            if (rate == 0) return;
+            tokens = Math.min(capacity, tokens + amount);
+        }
+    }
+}
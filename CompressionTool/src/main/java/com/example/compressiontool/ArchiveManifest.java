@@ -0,0 +1,125 @@
+package com.example.compressiontool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Path, size, modification time, CRC-32 and SHA-256 of every file that went into an archive.
+// Stored next to the archive as <archive>.manifest, one tab separated line per file. The CRC is
+// the one in the archive's central directory, so an entry that no longer matches its manifest
+// line is never reused.
+public class ArchiveManifest {
+
+    private static final String HEADER = "# CompressionTool manifest v2";
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final long crc;
+        private final String sha256;
+
+        public Entry(String path, long size, long lastModified, long crc, String sha256) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+            this.sha256 = sha256;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public long getCrc() { return crc; }
+        public String getSha256() { return sha256; }
+    }
+
+    public static File manifestFileFor(File archive) {
+        return new File(archive.getPath() + ".manifest");
+    }
+
+    // A missing, unreadable or older manifest just means nothing can be reused
+    public static ArchiveManifest load(File manifestFile) {
+        ArchiveManifest manifest = new ArchiveManifest();
+        if (!manifestFile.isFile()) {
+            return manifest;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                return manifest;
+            }
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 5) continue;
+                manifest.put(new Entry(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3], 16), fields[4]));
+            }
+        } catch (IOException | NumberFormatException e) {
+            return new ArchiveManifest();
+        }
+        return manifest;
+    }
+
+    public void save(File manifestFile) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(manifestFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.newLine();
+            for (Entry entry : entries.values()) {
+                writer.write(entry.getPath() + "\t" + entry.getSize() + "\t" + entry.getLastModified() + "\t"
+                        + Long.toHexString(entry.getCrc()) + "\t" + entry.getSha256());
+                writer.newLine();
+            }
+            writer.flush();
+            PhaseTimings.sync(fos.getFD());
+        }
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(Entry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, bytesRead);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
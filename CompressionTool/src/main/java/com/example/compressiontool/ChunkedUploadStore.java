@@ -0,0 +1,422 @@
+package com.example.compressiontool;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// Resumable uploads for inputs too large for a single multipart request. A client opens an
+// upload, PUTs its chunks in any order and over as many connections as it likes, each with a
+// CRC32C, then completes it and passes the uploadId to an operation instead of a file.
+// Chunks are written in place at their offset, so completing an upload copies nothing.
+//
+// <directory>/<uploadId>/upload.properties  file name, size and chunk size
+// <directory>/<uploadId>/chunks             acknowledged chunk numbers, appended after fsync
+// <directory>/<uploadId>/data               the file itself, renamed to its name on completion
+//
+// An upload nobody has written to, completed or used within the TTL is deleted, whether it is
+// unfinished or complete and waiting to be used.
+//
+// Each upload holds what the job it will feed needs, its declared size times ESTIMATE_FACTOR, in
+// the WorkArea from the moment it is opened until it is taken, deleted or expires. An upload too
+// large for the quota is refused before any of it is sent, not after.
+@Component
+public class ChunkedUploadStore {
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    public static class Upload {
+        private final String uploadId;
+        private final File directory;
+        private final String fileName;
+        private final long size;
+        private final int chunkSize;
+        private final BitSet received = new BitSet();
+        private boolean complete;
+        // Taken or deleted; whoever sets this is the only one to touch the files afterwards
+        private boolean claimed;
+        // The upload's job estimate in the work area; null without one
+        private WorkArea.Reservation reservation;
+
+        Upload(String uploadId, File directory, String fileName, long size, int chunkSize) {
+            this.uploadId = uploadId;
+            this.directory = directory;
+            this.fileName = fileName;
+            this.size = size;
+            this.chunkSize = chunkSize;
+        }
+
+        public String getUploadId() { return uploadId; }
+        public String getFileName() { return fileName; }
+        public long getSize() { return size; }
+        public int getChunkSize() { return chunkSize; }
+        public WorkArea.Reservation getReservation() { return reservation; }
+
+        public int getChunkCount() {
+            return (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        }
+
+        public synchronized List<Integer> getReceived() {
+            List<Integer> chunks = new ArrayList<>(received.cardinality());
+            received.stream().forEach(chunks::add);
+            return chunks;
+        }
+
+        public synchronized boolean isComplete() {
+            return complete;
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, size - (long) index * chunkSize);
+        }
+
+        File dataFile() {
+            return new File(directory, "data");
+        }
+
+        File completedFile() {
+            return new File(directory, fileName);
+        }
+    }
+
+    private WorkArea workArea;
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "compression-uploads");
+    private long maxSize = Long.MAX_VALUE;
+    private long ttlMillis = TimeUnit.DAYS.toMillis(1);
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private ScheduledExecutorService sweeper;
+
+    @Autowired(required = false)
+    public void setWorkArea(WorkArea workArea) {
+        this.workArea = workArea;
+    }
+
+    @Value("${compression.uploads.dir:${java.io.tmpdir}/compression-uploads}")
+    public void setDirectory(String directory) {
+        this.directory = new File(directory);
+    }
+
+    // Same limit as a single multipart upload
+    @Value("${compression.upload.max-size:4GB}")
+    public void setMaxSize(DataSize maxSize) {
+        this.maxSize = maxSize.toBytes() > 0 ? maxSize.toBytes() : Long.MAX_VALUE;
+    }
+
+    @Value("${compression.uploads.ttl-minutes:1440}")
+    public void setTtlMinutes(long ttlMinutes) {
+        if (ttlMinutes < 1) {
+            throw new IllegalArgumentException("Upload TTL must be at least a minute");
+        }
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "upload-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Also runs right away, for uploads abandoned before a restart
+        sweeper.scheduleWithFixedDelay(this::sweep, 0, 5, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    public Upload create(String fileName, long size, int chunkSize) throws IOException {
+        String name = fileName == null ? "" : new File(fileName).getName();
+        if (name.isEmpty() || name.equals("data") || name.startsWith("upload.") || name.equals("chunks")) {
+            throw new IllegalArgumentException("Invalid file name");
+        }
+        if (size < 0) {
+            throw new IllegalArgumentException("Size must not be negative");
+        }
+        if (size > maxSize) {
+            throw new IllegalArgumentException("Upload is larger than the limit of " + maxSize + " bytes");
+        }
+        if (chunkSize < 64 * 1024 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be 64 KB to " + MAX_CHUNK_SIZE / (1024 * 1024) + " MB");
+        }
+
+        String uploadId = UUID.randomUUID().toString();
+        File uploadDir = new File(directory, uploadId);
+        Upload upload = new Upload(uploadId, uploadDir, name, size, chunkSize);
+        // Refused with an InsufficientSpaceException before anything is written
+        upload.reservation = workArea != null ? workArea.reserve(size * WorkArea.ESTIMATE_FACTOR) : null;
+        try {
+            Files.createDirectories(uploadDir.toPath());
+            Properties props = new Properties();
+            props.setProperty("fileName", name);
+            props.setProperty("size", String.valueOf(size));
+            props.setProperty("chunkSize", String.valueOf(chunkSize));
+            try (FileOutputStream out = new FileOutputStream(new File(uploadDir, "upload.properties"))) {
+                props.store(out, null);
+            }
+            // Sized up front so chunks can land at any offset; sparse until they do
+            try (RandomAccessFile raf = new RandomAccessFile(upload.dataFile(), "rw")) {
+                raf.setLength(size);
+            }
+        } catch (IOException e) {
+            release(upload);
+            deleteFiles(uploadDir);
+            throw e;
+        }
+        uploads.put(uploadId, upload);
+        return upload;
+    }
+
+    // Returns null for an unknown id. Uploads survive restarts: they are reloaded from disk.
+    public Upload get(String uploadId) throws IOException {
+        try {
+            UUID.fromString(uploadId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        Upload upload = uploads.get(uploadId);
+        if (upload == null) {
+            upload = load(uploadId);
+            if (upload != null) {
+                Upload existing = uploads.putIfAbsent(uploadId, upload);
+                if (existing != null) {
+                    upload = existing;
+                } else if (workArea != null) {
+                    // Already on disk, so it is counted whether or not there is room
+                    upload.reservation = workArea.hold(upload.getSize() * WorkArea.ESTIMATE_FACTOR);
+                }
+            }
+        }
+        return upload;
+    }
+
+    // Writes one chunk at its offset. The checksum is the CRC32C of the chunk in hex; a chunk
+    // that does not match is not acknowledged and can simply be sent again.
+    public void writeChunk(Upload upload, int index, InputStream body, String checksum) throws IOException {
+        if (index < 0 || index >= upload.getChunkCount()) {
+            throw new IllegalArgumentException("Chunk " + index + " is out of range");
+        }
+        synchronized (upload) {
+            if (upload.claimed) {
+                throw new IllegalArgumentException("Upload no longer exists");
+            }
+            if (upload.complete) {
+                throw new IllegalArgumentException("Upload is already complete");
+            }
+        }
+        long expected = Math.max(0, upload.chunkLength(index));
+        CRC32C crc = new CRC32C();
+        long position = (long) index * upload.getChunkSize();
+        long written = 0;
+        try (FileChannel channel = FileChannel.open(upload.dataFile().toPath(), StandardOpenOption.WRITE)) {
+            byte[] buffer = new byte[64 * 1024];
+            int count;
+            while ((count = body.read(buffer)) != -1) {
+                if (written + count > expected) {
+                    throw new IllegalArgumentException("Chunk " + index + " is longer than " + expected + " bytes");
+                }
+                crc.update(buffer, 0, count);
+                ByteBuffer data = ByteBuffer.wrap(buffer, 0, count);
+                while (data.hasRemaining()) {
+                    written += channel.write(data, position + written);
+                }
+            }
+            if (written != expected) {
+                throw new IllegalArgumentException("Chunk " + index + " has " + written + " bytes, expected " + expected);
+            }
+            if (checksum == null || !checksum.equalsIgnoreCase(HexFormat.of().toHexDigits((int) crc.getValue()))) {
+                throw new IllegalArgumentException("Checksum mismatch for chunk " + index);
+            }
+            // Only acknowledge what is on disk, so a resumed upload never skips a lost chunk
+            PhaseTimings.force(channel);
+        }
+        acknowledge(upload, index);
+    }
+
+    // Renames the data to its file name and returns it, ready to be used as an operation input
+    public File complete(Upload upload) throws IOException {
+        synchronized (upload) {
+            if (upload.claimed) {
+                throw new IllegalArgumentException("Upload no longer exists");
+            }
+            if (upload.complete) {
+                return upload.completedFile();
+            }
+            if (upload.received.cardinality() != upload.getChunkCount()) {
+                throw new IllegalArgumentException("Upload is missing "
+                        + (upload.getChunkCount() - upload.received.cardinality()) + " chunks");
+            }
+            Files.move(upload.dataFile().toPath(), upload.completedFile().toPath());
+            upload.complete = true;
+            return upload.completedFile();
+        }
+    }
+
+    // Moves the file of a completed upload into directory, to be used as an operation input,
+    // and forgets the upload. With the upload directory on the same file system as the temp
+    // directory this is a rename. Of two requests using the same upload, one gets the file and
+    // the other an IllegalArgumentException.
+    public File take(String uploadId, File directory) throws IOException {
+        Upload upload = get(uploadId);
+        if (upload == null || !upload.isComplete() || !claim(upload)) {
+            throw new IllegalArgumentException("No completed upload " + uploadId);
+        }
+        File target = new File(directory, upload.getFileName());
+        Files.move(upload.completedFile().toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        deleteFiles(upload.directory);
+        return target;
+    }
+
+    public boolean delete(String uploadId) throws IOException {
+        Upload upload = get(uploadId);
+        if (upload == null || !claim(upload)) return false;
+        deleteFiles(upload.directory);
+        return true;
+    }
+
+    public Map<String, Object> status(Upload upload) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("uploadId", upload.getUploadId());
+        status.put("fileName", upload.getFileName());
+        status.put("size", upload.getSize());
+        status.put("chunkSize", upload.getChunkSize());
+        status.put("chunkCount", upload.getChunkCount());
+        status.put("received", upload.getReceived());
+        status.put("complete", upload.isComplete());
+        return status;
+    }
+
+    // Deletes uploads idle for longer than the TTL, going by the newest file time in their
+    // directory; that includes uploads from before a restart that were never loaded
+    void sweep() {
+        File[] uploadDirs = directory.listFiles(File::isDirectory);
+        if (uploadDirs == null) return;
+        long cutoff = System.currentTimeMillis() - ttlMillis;
+        for (File uploadDir : uploadDirs) {
+            try {
+                if (lastModified(uploadDir) >= cutoff) continue;
+                Upload upload = get(uploadDir.getName());
+                if (upload == null) {
+                    // Not an upload, or one whose take or delete did not finish
+                    deleteFiles(uploadDir);
+                } else if (claim(upload)) {
+                    deleteFiles(uploadDir);
+                }
+            } catch (IOException e) {
+                // Tried again on the next sweep
+            }
+        }
+    }
+
+    // Takes the upload out of the store; false if a take or delete already did. Its properties
+    // go first, so get() cannot load it back from disk while its files are moved or deleted.
+    private boolean claim(Upload upload) throws IOException {
+        synchronized (upload) {
+            if (upload.claimed) return false;
+            upload.claimed = true;
+            release(upload);
+            Files.deleteIfExists(new File(upload.directory, "upload.properties").toPath());
+            uploads.remove(upload.getUploadId(), upload);
+            return true;
+        }
+    }
+
+    // A taken upload's bytes are charged to the job it moved into from then on
+    private static void release(Upload upload) {
+        if (upload.reservation != null) {
+            upload.reservation.close();
+        }
+    }
+
+    private static long lastModified(File dir) {
+        long lastModified = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                lastModified = Math.max(lastModified, file.lastModified());
+            }
+        }
+        return lastModified;
+    }
+
+    private static void deleteFiles(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(dir.toPath());
+    }
+
+    private void acknowledge(Upload upload, int index) throws IOException {
+        synchronized (upload) {
+            if (upload.claimed) {
+                throw new IllegalArgumentException("Upload no longer exists");
+            }
+            if (upload.received.get(index)) return;
+            try (DataOutputStream out = new DataOutputStream(
+                    new FileOutputStream(new File(upload.directory, "chunks"), true))) {
+                out.writeInt(index);
+            }
+            upload.received.set(index);
+        }
+    }
+
+    private Upload load(String uploadId) throws IOException {
+        File uploadDir = new File(directory, uploadId);
+        File propsFile = new File(uploadDir, "upload.properties");
+        if (!propsFile.isFile()) return null;
+
+        Properties props = new Properties();
+        try (FileInputStream in = new FileInputStream(propsFile)) {
+            props.load(in);
+        }
+        Upload upload = new Upload(uploadId, uploadDir, props.getProperty("fileName"),
+                Long.parseLong(props.getProperty("size")), Integer.parseInt(props.getProperty("chunkSize")));
+        File chunks = new File(uploadDir, "chunks");
+        if (chunks.isFile()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(chunks))) {
+                while (true) {
+                    upload.received.set(in.readInt());
+                }
+            } catch (EOFException e) {
+                // End of the log; a torn last entry just means that chunk is sent again
+            }
+        }
+        upload.complete = upload.completedFile().isFile() && !upload.dataFile().exists();
+        return upload;
+    }
+}
@@ -1,95 +1,165 @@
 package com.example.compressiontool;
 
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.MalformedURLException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
 
 @RestController
 @RequestMapping("/api/compression")
 public class CompressionController {
 
+    private static final int STREAM_BUFFER_SIZE = 1024 * 1024;
+
     @Autowired
     private CompressionService compressionService;
 
     @Autowired
-    private ActivityRepository activityRepository;
+    private CompressionMetrics compressionMetrics;
+
+    @Autowired
+    private JfrEventStream jfrEventStream;
+
+    @Autowired
+    private ProgressStream progressStream;
+
+    @Autowired
+    private ChunkedUploadStore chunkedUploads;
+
+    @Autowired
+    private LocalPaths localPaths;
+
+    @Autowired
+    private WorkArea workArea;
+
+    @Value("${compression.dedup.store:dedup-store}")
+    private String dedupStorePath;
+
+    @Value("${compression.upload.max-size:4GB}")
+    private DataSize maxUploadSize;
 
     @PostMapping("/compress/gzip")
-    public ResponseEntity<?> compressGzip(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> compressGzip(@RequestParam(value = "file", required = false) MultipartFile file,
+                                          @RequestParam(value = "uploadId", required = false) String uploadId,
+                                          @RequestParam(value = "path", required = false) String path,
+                                          @RequestParam(value = "outputPath", required = false) String outputPath,
+                                          @RequestParam(value = "dictionary", required = false) String dictionary,
+                                          @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
         try {
-            if (file.isEmpty()) {
+            File sourceFile;
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+                if (!sourceFile.isFile()) {
+                    return ResponseEntity.badRequest().body("GZIP compression needs a file, not a directory");
+                }
+            } else if (uploadId == null && (file == null || file.isEmpty())) {
                 return ResponseEntity.badRequest().body("File is empty");
+            } else {
+                // Save uploaded file to the work area
+                job = newJob(file, uploadId);
+                sourceFile = receiveInput(job, file, uploadId, OperationType.COMPRESS_GZIP);
             }
 
-            // Save uploaded file to temp location
-            Path tempDir = Files.createTempDirectory("upload");
-            File sourceFile = new File(tempDir.toFile(), file.getOriginalFilename());
-            file.transferTo(sourceFile);
-
             // Generate output file
             String baseName = sourceFile.getName().contains(".") ?
                     sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf('.')) :
                     sourceFile.getName();
-            File outputFile = compressionService.getUniqueOutputFile(sourceFile.getParentFile(), baseName, ".gz");
+            File outputFile = outputPath != null ? localPaths.output(outputPath)
+                    : compressionService.getUniqueOutputFile(sourceFile.getParentFile(), baseName, ".gz");
 
             // Compress
-            compressionService.compressGZIP(sourceFile, outputFile);
+            OperationMonitor.bindProgressId(progressId);
+            compressionService.compressGZIP(sourceFile, outputFile, dictionary);
 
-            // Log activity
             long originalSize = sourceFile.length();
             long compressedSize = outputFile.length();
-            activityRepository.save(new Activity(OperationType.COMPRESS_GZIP, file.getOriginalFilename(), originalSize, compressedSize));
+
+            // Clean up temp files
+            if (path == null) {
+                sourceFile.delete();
+            }
+            if (outputPath != null) {
+                return written(outputFile, originalSize, compressedSize, new HttpHeaders());
+            }
 
             // Prepare response with file download
-            Path path = Paths.get(outputFile.getAbsolutePath());
-            Resource resource = new UrlResource(path.toUri());
+            Resource resource = download(OperationType.COMPRESS_GZIP, outputFile, job);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
             headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
 
-            // Clean up temp files
-            sourceFile.delete();
-            // Note: Output file will be deleted after download or by client
-
             return ResponseEntity.ok()
                     .headers(headers)
                     .body(resource);
 
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during compression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
         }
     }
 
+    // path may name a file or a directory; isDirectory is still accepted but no longer needed
     @PostMapping("/compress/zip")
     public ResponseEntity<?> compressZip(@RequestParam(value = "file", required = false) MultipartFile file,
                                          @RequestParam(value = "path", required = false) String path,
-                                         @RequestParam(value = "isDirectory", defaultValue = "false") boolean isDirectory) {
+                                         @RequestParam(value = "isDirectory", defaultValue = "false") boolean isDirectory,
+                                         @RequestParam(value = "outputPath", required = false) String outputPath,
+                                         @RequestParam(value = "incremental", defaultValue = "false") boolean incremental,
+                                         @RequestParam(value = "uploadId", required = false) String uploadId,
+                                         @RequestParam(value = "dictionary", required = false) String dictionary,
+                                         @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
         try {
+            // An incremental run updates the archive next to its source so the next run can reuse
+            // it; an upload has no such place, and an outputPath must not exist yet
+            if (incremental && path == null) {
+                return ResponseEntity.badRequest().body("Incremental ZIP archives need a path, not an upload");
+            }
+            if (incremental && outputPath != null) {
+                return ResponseEntity.badRequest().body("Incremental ZIP archives are written next to their source; outputPath cannot be used");
+            }
+            if (incremental && dictionary != null) {
+                return ResponseEntity.badRequest().body("Incremental ZIP archives cannot use a dictionary");
+            }
+
             File sourceFile;
-            Path tempDir = null;
-            if (path != null && isDirectory) {
-                sourceFile = new File(path);
-                if (!sourceFile.exists()) {
-                    return ResponseEntity.badRequest().body("Directory path not found");
-                }
-            } else if (file != null && !file.isEmpty()) {
-                tempDir = Files.createTempDirectory("upload");
-                sourceFile = new File(tempDir.toFile(), file.getOriginalFilename());
-                file.transferTo(sourceFile);
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+            } else if (uploadId != null || (file != null && !file.isEmpty())) {
+                job = newJob(file, uploadId);
+                sourceFile = receiveInput(job, file, uploadId, OperationType.COMPRESS_ZIP);
             } else {
                 return ResponseEntity.badRequest().body("Provide either a file or a directory path");
             }
@@ -98,150 +168,912 @@ public class CompressionController {
             String baseName = sourceFile.getName().contains(".") ?
                     sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf('.')) :
                     sourceFile.getName();
-            File outputFile = compressionService.getUniqueOutputFile(sourceFile.getParentFile(), baseName, ".zip");
+            HttpHeaders headers = new HttpHeaders();
+            File outputFile;
+            long originalSize;
+            OperationMonitor.bindProgressId(progressId);
+            if (incremental) {
+                // Incremental runs always write to the same archive so the previous run can be reused
+                outputFile = new File(sourceFile.getParentFile(), baseName + ".zip");
+                long[] stats = compressionService.compressZIPIncremental(sourceFile, outputFile);
+                headers.add("X-Files-Reused", String.valueOf(stats[0]));
+                headers.add("X-Files-Compressed", String.valueOf(stats[1]));
+                originalSize = stats[3];
+            } else {
+                outputFile = outputPath != null ? localPaths.output(outputPath)
+                        : compressionService.getUniqueOutputFile(sourceFile.getParentFile(), baseName, ".zip");
 
-            // Compress
-            compressionService.compressZIP(sourceFile, outputFile);
+                // Compress
+                originalSize = compressionService.compressZIP(sourceFile, outputFile, dictionary);
+            }
 
-            // Log activity
-            long originalSize = compressionService.calculateTotalSize(sourceFile);
             long compressedSize = outputFile.length();
-            activityRepository.save(new Activity(OperationType.COMPRESS_ZIP, sourceFile.getName(), originalSize, compressedSize));
+
+            // Clean up temp files
+            if (job != null) {
+                sourceFile.delete();
+            }
+            if (outputPath != null) {
+                return written(outputFile, originalSize, compressedSize, headers);
+            }
 
             // Prepare response with file download
-            Path pathOut = Paths.get(outputFile.getAbsolutePath());
-            Resource resource = new UrlResource(pathOut.toUri());
+            Resource resource = download(OperationType.COMPRESS_ZIP, outputFile, job);
 
-            HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
             headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
 
-            // Clean up temp files
-            if (tempDir != null) {
-                sourceFile.delete();
-            }
-            // Note: Output file will be deleted after download or by client
-
             return ResponseEntity.ok()
                     .headers(headers)
                     .body(resource);
 
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during ZIP compression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
         }
     }
 
     @PostMapping("/decompress/gzip")
-    public ResponseEntity<?> decompressGzip(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> decompressGzip(@RequestParam(value = "file", required = false) MultipartFile file,
+                                            @RequestParam(value = "uploadId", required = false) String uploadId,
+                                            @RequestParam(value = "path", required = false) String path,
+                                            @RequestParam(value = "outputPath", required = false) String outputPath,
+                                            @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
         try {
-            if (file.isEmpty()) {
+            File tempSource;
+            if (path != null) {
+                tempSource = localPaths.input(path);
+            } else if (uploadId == null && (file == null || file.isEmpty())) {
                 return ResponseEntity.badRequest().body("File is empty");
+            } else {
+                job = newJob(file, uploadId);
+                tempSource = receiveInput(job, file, uploadId, OperationType.DECOMPRESS_GZIP);
             }
 
             // Validate GZIP
-            File tempSource = File.createTempFile("temp_gzip", ".gz");
-            file.transferTo(tempSource);
-            if (!compressionService.isValidGzipFile(tempSource)) {
-                tempSource.delete();
+            if (!tempSource.isFile() || !compressionService.isValidGzipFile(tempSource)) {
+                if (path == null) {
+                    tempSource.delete();
+                }
                 return ResponseEntity.badRequest().body("Invalid GZIP file");
             }
 
             // Generate output file
             String baseName = tempSource.getName().replace(".gz", "");
-            File outputFile = compressionService.getUniqueOutputFile(tempSource.getParentFile(), baseName, "_decompressed");
+            File outputFile = outputPath != null ? localPaths.output(outputPath)
+                    : compressionService.getUniqueOutputFile(tempSource.getParentFile(), baseName, "_decompressed");
 
             // Decompress
+            OperationMonitor.bindProgressId(progressId);
             compressionService.decompressGZIP(tempSource, outputFile);
 
-            // Log activity
             long compressedSize = tempSource.length();
             long originalSize = outputFile.length();
-            activityRepository.save(new Activity(OperationType.DECOMPRESS_GZIP, file.getOriginalFilename(), originalSize, compressedSize));
+
+            // Clean up
+            if (path == null) {
+                tempSource.delete();
+            }
+            if (outputPath != null) {
+                return written(outputFile, compressedSize, originalSize, new HttpHeaders());
+            }
 
             // Prepare response with file download
-            Path path = Paths.get(outputFile.getAbsolutePath());
-            Resource resource = new UrlResource(path.toUri());
+            Resource resource = download(OperationType.DECOMPRESS_GZIP, outputFile, job);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
             headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
 
-            // Clean up
-            tempSource.delete();
-
             return ResponseEntity.ok()
                     .headers(headers)
                     .body(resource);
 
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during decompression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
         }
     }
 
+    // With an outputPath the archive is extracted straight into that directory; otherwise the
+    // extracted files are zipped up again to be downloaded
     @PostMapping("/decompress/zip")
-    public ResponseEntity<?> decompressZip(@RequestParam("file") MultipartFile file) {
+    public ResponseEntity<?> decompressZip(@RequestParam(value = "file", required = false) MultipartFile file,
+                                           @RequestParam(value = "uploadId", required = false) String uploadId,
+                                           @RequestParam(value = "path", required = false) String path,
+                                           @RequestParam(value = "outputPath", required = false) String outputPath,
+                                           @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
         try {
-            if (file.isEmpty()) {
+            File sourceFile;
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+                if (!sourceFile.isFile()) {
+                    return ResponseEntity.badRequest().body("ZIP extraction needs a file, not a directory");
+                }
+            } else if (uploadId == null && (file == null || file.isEmpty())) {
                 return ResponseEntity.badRequest().body("File is empty");
+            } else {
+                // Save uploaded file to the work area
+                job = newJob(file, uploadId);
+                sourceFile = receiveInput(job, file, uploadId, OperationType.DECOMPRESS_ZIP);
+            }
+            if (job == null && outputPath == null) {
+                job = workArea.create(sourceFile.length());
             }
-
-            // Save uploaded file to temp location
-            Path tempDir = Files.createTempDirectory("upload");
-            File sourceFile = new File(tempDir.toFile(), file.getOriginalFilename());
-            file.transferTo(sourceFile);
 
             // Generate output directory
             String baseName = sourceFile.getName().replace(".zip", "");
-            File outputDir = new File(tempDir.toFile(), baseName + "_extracted");
+            File outputDir = outputPath != null ? localPaths.output(outputPath)
+                    : new File(job.getDirectory(), baseName + "_extracted");
 
             // Decompress
+            OperationMonitor.bindProgressId(progressId);
             long[] stats = compressionService.decompressZIP(sourceFile, outputDir);
 
-            // Log activity
             long compressedSize = sourceFile.length();
-            long originalSize = compressionService.calculateTotalSize(outputDir);
-            activityRepository.save(new Activity(OperationType.DECOMPRESS_ZIP, file.getOriginalFilename(), originalSize, compressedSize));
+            long originalSize = stats[2];
+
+            if (path == null) {
+                sourceFile.delete();
+            }
+            if (outputPath != null) {
+                return written(outputDir, compressedSize, originalSize, new HttpHeaders());
+            }
 
             // For simplicity, zip the extracted contents and return as a single file
             // Or return info; here we'll create a zip of extracted files
-            File finalOutput = new File(tempDir.toFile(), baseName + "_extracted.zip");
+            File finalOutput = new File(job.getDirectory(), baseName + "_extracted.zip");
             compressionService.compressZIP(outputDir, finalOutput);
 
+            // Clean up
+            deleteDirectory(outputDir);
+
             // Prepare response
-            Path path = Paths.get(finalOutput.getAbsolutePath());
-            Resource resource = new UrlResource(path.toUri());
+            Resource resource = download(OperationType.DECOMPRESS_ZIP, finalOutput, job);
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + finalOutput.getName());
             headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
 
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(resource);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during ZIP decompression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
+        }
+    }
+
+    @PostMapping("/compress/solid")
+    public ResponseEntity<?> compressSolid(@RequestParam(value = "file", required = false) MultipartFile file,
+                                           @RequestParam(value = "path", required = false) String path,
+                                           @RequestParam(value = "isDirectory", defaultValue = "false") boolean isDirectory,
+                                           @RequestParam(value = "outputPath", required = false) String outputPath,
+                                           @RequestParam(value = "uploadId", required = false) String uploadId,
+                                           @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
+        try {
+            File sourceFile;
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+            } else if (uploadId != null || (file != null && !file.isEmpty())) {
+                job = newJob(file, uploadId);
+                sourceFile = receiveInput(job, file, uploadId, OperationType.COMPRESS_SOLID);
+            } else {
+                return ResponseEntity.badRequest().body("Provide either a file or a directory path");
+            }
+
+            // Generate output file
+            String baseName = sourceFile.getName().contains(".") ?
+                    sourceFile.getName().substring(0, sourceFile.getName().lastIndexOf('.')) :
+                    sourceFile.getName();
+            File outputFile = outputPath != null ? localPaths.output(outputPath)
+                    : compressionService.getUniqueOutputFile(sourceFile.getParentFile(), baseName, SolidArchive.EXTENSION);
+
+            // Compress
+            OperationMonitor.bindProgressId(progressId);
+            long[] stats = compressionService.compressSolid(sourceFile, outputFile);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("X-Files", String.valueOf(stats[0]));
+            headers.add("X-Solid-Blocks", String.valueOf(stats[1]));
+
+            // Clean up temp files
+            if (job != null) {
+                sourceFile.delete();
+            }
+            if (outputPath != null) {
+                return written(outputFile, stats[2], outputFile.length(), headers);
+            }
+
+            // Prepare response with file download
+            Resource resource = download(OperationType.COMPRESS_SOLID, outputFile, job);
+
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(resource);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during solid compression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
+        }
+    }
+
+    // Without an entry name the whole archive is extracted and returned as a ZIP, like /decompress/zip;
+    // with one, only the blocks holding that file are inflated and the file is returned as is.
+    // An outputPath receives the extracted directory, or the entry's file.
+    @PostMapping("/decompress/solid")
+    public ResponseEntity<?> decompressSolid(@RequestParam(value = "file", required = false) MultipartFile file,
+                                             @RequestParam(value = "uploadId", required = false) String uploadId,
+                                             @RequestParam(value = "path", required = false) String path,
+                                             @RequestParam(value = "outputPath", required = false) String outputPath,
+                                             @RequestParam(value = "entry", required = false) String entry,
+                                             @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
+        try {
+            File sourceFile;
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+                if (!sourceFile.isFile()) {
+                    return ResponseEntity.badRequest().body("Solid extraction needs a file, not a directory");
+                }
+            } else if (uploadId == null && (file == null || file.isEmpty())) {
+                return ResponseEntity.badRequest().body("File is empty");
+            } else {
+                // Save uploaded file to the work area
+                job = newJob(file, uploadId);
+                sourceFile = receiveInput(job, file, uploadId, OperationType.DECOMPRESS_SOLID);
+            }
+            long archiveSize = sourceFile.length();
+            if (job == null && outputPath == null) {
+                job = workArea.create(archiveSize);
+            }
+
+            String baseName = sourceFile.getName().replace(SolidArchive.EXTENSION, "");
+            File finalOutput;
+            long extractedSize = 0;
+            if (entry != null) {
+                finalOutput = outputPath != null ? localPaths.output(outputPath)
+                        : new File(job.getDirectory(), new File(entry).getName());
+                try (FileOutputStream fos = new FileOutputStream(finalOutput)) {
+                    extractedSize = SolidArchive.extract(sourceFile, entry, fos);
+                }
+            } else if (outputPath != null) {
+                finalOutput = localPaths.output(outputPath);
+                OperationMonitor.bindProgressId(progressId);
+                extractedSize = compressionService.decompressSolid(sourceFile, finalOutput)[2];
+            } else {
+                File outputDir = new File(job.getDirectory(), baseName + "_extracted");
+                OperationMonitor.bindProgressId(progressId);
+                compressionService.decompressSolid(sourceFile, outputDir);
+
+                finalOutput = new File(job.getDirectory(), baseName + "_extracted.zip");
+                compressionService.compressZIP(outputDir, finalOutput);
+                deleteDirectory(outputDir);
+            }
+
             // Clean up
-            sourceFile.delete();
-            deleteDirectory(outputDir);
+            if (path == null) {
+                sourceFile.delete();
+            }
+            if (outputPath != null) {
+                return written(finalOutput, archiveSize, extractedSize, new HttpHeaders());
+            }
+
+            // Prepare response
+            Resource resource = download(OperationType.DECOMPRESS_SOLID, finalOutput, job);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + finalOutput.getName());
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
 
             return ResponseEntity.ok()
                     .headers(headers)
                     .body(resource);
 
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (IOException e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during ZIP decompression: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during solid decompression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
         }
     }
 
-    @GetMapping("/info")
-    public ResponseEntity<String> getInfo(@RequestParam("path") String filePath) {
+    // Streaming uploads: the file part of the multipart body is compressed as it arrives instead
+    // of being saved first, so compression overlaps the upload and the input never touches the
+    // disk. progressId and threads come from the query string or from form fields ahead of the
+    // file. The upload phase is part of the compress phase here, as they overlap.
+    @PostMapping(value = "/stream/compress/gzip", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> streamCompressGzip(HttpServletRequest request) {
+        WorkArea.Job job = null;
         try {
-            File file = new File(filePath);
-            if (!file.exists()) {
+            job = newStreamJob(request);
+            MultipartReader reader = openUpload(request, job);
+            Map<String, String> parameters = queryParameters(request);
+            MultipartReader.Part part = reader.nextFile(parameters);
+            if (part == null) {
+                return ResponseEntity.badRequest().body("No file in upload");
+            }
+            String name = uploadName(part);
+            int threads = intParameter(parameters, "threads", 1);
+
+            String baseName = name.contains(".") ? name.substring(0, name.lastIndexOf('.')) : name;
+            File outputFile = compressionService.getUniqueOutputFile(job.getDirectory(), baseName, ".gz");
+
+            OperationMonitor.bindProgressId(parameters.get("progressId"));
+            try (FileOutputStream fos = new FileOutputStream(outputFile);
+                 BufferedOutputStream bos = new BufferedOutputStream(fos, STREAM_BUFFER_SIZE)) {
+                compressionService.compressGZIP(part.getBody(), bos, name, threads);
+                PhaseTimings.sync(fos.getFD());
+            }
+            reader.finish();
+
+            Resource resource = download(OperationType.COMPRESS_GZIP, outputFile, job);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(resource);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (MultipartReader.SizeLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during compression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
+        }
+    }
+
+    @PostMapping(value = "/stream/decompress/gzip", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<?> streamDecompressGzip(HttpServletRequest request) {
+        WorkArea.Job job = null;
+        try {
+            job = newStreamJob(request);
+            MultipartReader reader = openUpload(request, job);
+            Map<String, String> parameters = queryParameters(request);
+            MultipartReader.Part part = reader.nextFile(parameters);
+            if (part == null) {
+                return ResponseEntity.badRequest().body("No file in upload");
+            }
+            String name = uploadName(part);
+
+            String baseName = name.replace(".gz", "");
+            File outputFile = compressionService.getUniqueOutputFile(job.getDirectory(), baseName, "_decompressed");
+
+            OperationMonitor.bindProgressId(parameters.get("progressId"));
+            try (FileOutputStream fos = new FileOutputStream(outputFile);
+                 BufferedOutputStream bos = new BufferedOutputStream(fos, STREAM_BUFFER_SIZE)) {
+                compressionService.decompressGZIP(part.getBody(), bos, name);
+                PhaseTimings.sync(fos.getFD());
+            }
+            reader.finish();
+
+            Resource resource = download(OperationType.DECOMPRESS_GZIP, outputFile, job);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + outputFile.getName());
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(resource);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (MultipartReader.SizeLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+        } catch (ZipException e) {
+            return ResponseEntity.badRequest().body("Invalid GZIP file");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during decompression: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
+        }
+    }
+
+    @GetMapping("/solid/list")
+    public ResponseEntity<?> listSolid(@RequestParam("path") String path) {
+        try {
+            File archive = localPaths.input(path);
+            if (!archive.isFile()) {
                 return ResponseEntity.badRequest().body("File not found");
             }
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (SolidArchive.Entry entry : SolidArchive.list(archive)) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("name", entry.getName());
+                item.put("directory", entry.isDirectory());
+                item.put("size", entry.getSize());
+                item.put("lastModified", entry.getLastModified());
+                entries.add(item);
+            }
+            return ResponseEntity.ok(entries);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading solid archive: " + e.getMessage());
+        }
+    }
+
+    // With an archivePath the archive on this host is updated in place and nothing is returned
+    // but the counts; an uploaded archive is updated and sent back
+    @PostMapping("/update/zip")
+    public ResponseEntity<?> updateZip(@RequestParam(value = "archive", required = false) MultipartFile archive,
+                                       @RequestParam(value = "archivePath", required = false) String archivePath,
+                                       @RequestParam(value = "file", required = false) MultipartFile file,
+                                       @RequestParam(value = "path", required = false) String path,
+                                       @RequestParam(value = "isDirectory", defaultValue = "false") boolean isDirectory,
+                                       @RequestParam(value = "progressId", required = false) String progressId) {
+        WorkArea.Job job = null;
+        try {
+            if (archivePath == null || path == null) {
+                job = workArea.create((archive != null ? archive.getSize() : 0) + (file != null ? file.getSize() : 0));
+            }
+            File archiveFile;
+            if (archivePath != null) {
+                archiveFile = localPaths.input(archivePath);
+                if (!archiveFile.isFile()) {
+                    return ResponseEntity.badRequest().body("Archive path is not a file");
+                }
+            } else if (archive == null || archive.isEmpty()) {
+                return ResponseEntity.badRequest().body("Archive is empty");
+            } else {
+                // Save uploaded archive to temp location
+                archiveFile = new File(job.getDirectory(), archive.getOriginalFilename());
+                receive(archive, archiveFile, OperationType.UPDATE_ZIP);
+            }
+
+            File sourceFile;
+            if (path != null) {
+                sourceFile = localPaths.input(path);
+            } else if (file != null && !file.isEmpty()) {
+                File sourceDir = new File(job.getDirectory(), "source");
+                sourceDir.mkdirs();
+                sourceFile = new File(sourceDir, file.getOriginalFilename());
+                receive(file, sourceFile, OperationType.UPDATE_ZIP);
+            } else {
+                return ResponseEntity.badRequest().body("Provide either a file or a directory path");
+            }
+
+            // Update in place: only the new entries are compressed
+            OperationMonitor.bindProgressId(progressId);
+            long[] stats = compressionService.updateZIP(archiveFile, sourceFile);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.add("X-Entries-Copied", String.valueOf(stats[0]));
+            headers.add("X-Entries-Added", String.valueOf(stats[1]));
+            headers.add("X-Entries-Replaced", String.valueOf(stats[2]));
+
+            if (archivePath != null) {
+                return written(archiveFile, stats[3], archiveFile.length(), headers);
+            }
+
+            // Clean up temp files
+            if (path == null) {
+                deleteDirectory(sourceFile.getParentFile());
+            }
+
+            // Prepare response with file download
+            Resource resource = download(OperationType.UPDATE_ZIP, archiveFile, job);
+
+            headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + archiveFile.getName());
+            headers.add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM.toString());
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(resource);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during ZIP update: " + e.getMessage());
+        } finally {
+            if (job != null) {
+                job.close();
+            }
+        }
+    }
+
+    @PostMapping("/dedup/backup")
+    public ResponseEntity<?> dedupBackup(@RequestParam("path") String path,
+                                         @RequestParam("snapshot") String snapshot) {
+        try {
+            File sourceFile = localPaths.input(path);
+            long[] stats = compressionService.backupDedup(sourceFile, new File(dedupStorePath), snapshot);
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("snapshot", snapshot);
+            result.put("files", stats[0]);
+            result.put("totalBytes", stats[1]);
+            result.put("chunksWritten", stats[2]);
+            result.put("bytesWritten", stats[3]);
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during backup: " + e.getMessage());
+        }
+    }
+
+    // path is a new directory to restore into, like any other output path
+    @PostMapping("/dedup/restore")
+    public ResponseEntity<?> dedupRestore(@RequestParam("snapshot") String snapshot,
+                                          @RequestParam("path") String path) {
+        try {
+            long[] stats = compressionService.restoreDedup(new File(dedupStorePath), snapshot, localPaths.output(path));
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("snapshot", snapshot);
+            result.put("files", stats[0]);
+            result.put("bytesRestored", stats[1]);
+            return ResponseEntity.ok(result);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during restore: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/dedup/gc")
+    public ResponseEntity<?> dedupGc() {
+        try {
+            long[] stats = compressionService.gcDedup(new File(dedupStorePath));
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("chunksDeleted", stats[0]);
+            result.put("bytesFreed", stats[1]);
+            return ResponseEntity.ok(result);
+
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during garbage collection: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/dedup/snapshots")
+    public ResponseEntity<List<String>> dedupSnapshots() {
+        return ResponseEntity.ok(new DedupStore(new File(dedupStorePath)).listSnapshots());
+    }
+
+    @PostMapping("/dictionaries/train")
+    public ResponseEntity<?> trainDictionary(@RequestParam("id") String id,
+                                             @RequestParam(value = "path", required = false) String path,
+                                             @RequestParam(value = "samples", required = false) MultipartFile[] samples) {
+        try {
+            byte[] dictionary;
+            if (path != null) {
+                File corpus = localPaths.input(path);
+                dictionary = compressionService.trainDictionary(id, corpus);
+            } else if (samples != null && samples.length > 0) {
+                long size = 0;
+                for (MultipartFile sample : samples) {
+                    size += sample.getSize();
+                }
+                try (WorkArea.Job job = workArea.create(size)) {
+                    for (int i = 0; i < samples.length; i++) {
+                        samples[i].transferTo(new File(job.getDirectory(), "sample-" + i));
+                    }
+                    dictionary = compressionService.trainDictionary(id, job.getDirectory());
+                }
+            } else {
+                return ResponseEntity.badRequest().body("Provide either sample files or a sample directory path");
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("id", id);
+            result.put("size", dictionary.length);
+            return ResponseEntity.ok(result);
+
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error during dictionary training: " + e.getMessage());
+        }
+    }
+
+    // Chunked uploads: open one, PUT its chunks (in parallel, in any order) with an
+    // X-Chunk-Checksum header holding the chunk's CRC32C in hex, complete it, then pass the
+    // uploadId to an operation instead of a file. GET shows which chunks to resume from.
+    @PostMapping("/uploads")
+    public ResponseEntity<?> createUpload(@RequestParam("fileName") String fileName,
+                                          @RequestParam("size") long size,
+                                          @RequestParam(value = "chunkSize", defaultValue = "" + ChunkedUploadStore.DEFAULT_CHUNK_SIZE) int chunkSize) {
+        try {
+            ChunkedUploadStore.Upload upload = chunkedUploads.create(fileName, size, chunkSize);
+            return ResponseEntity.ok(chunkedUploads.status(upload));
+        } catch (WorkArea.InsufficientSpaceException e) {
+            return ResponseEntity.status(HttpStatus.INSUFFICIENT_STORAGE).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error creating upload: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> uploadStatus(@PathVariable("uploadId") String uploadId) {
+        try {
+            ChunkedUploadStore.Upload upload = chunkedUploads.get(uploadId);
+            if (upload == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload not found");
+            }
+            return ResponseEntity.ok(chunkedUploads.status(upload));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error reading upload: " + e.getMessage());
+        }
+    }
+
+    @PutMapping(value = "/uploads/{uploadId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<?> uploadChunk(@PathVariable("uploadId") String uploadId,
+                                         @PathVariable("index") int index,
+                                         @RequestHeader(value = "X-Chunk-Checksum", required = false) String checksum,
+                                         InputStream body) {
+        try {
+            ChunkedUploadStore.Upload upload = chunkedUploads.get(uploadId);
+            if (upload == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload not found");
+            }
+            long start = System.nanoTime();
+            chunkedUploads.writeChunk(upload, index, body, checksum);
+            PhaseTimings.record(CompressionMetrics.UPLOAD, System.nanoTime() - start);
+            return ResponseEntity.ok(Map.of("index", index, "received", upload.getReceived().size()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error writing chunk: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<?> completeUpload(@PathVariable("uploadId") String uploadId) {
+        try {
+            ChunkedUploadStore.Upload upload = chunkedUploads.get(uploadId);
+            if (upload == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload not found");
+            }
+            chunkedUploads.complete(upload);
+            return ResponseEntity.ok(chunkedUploads.status(upload));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error completing upload: " + e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<?> deleteUpload(@PathVariable("uploadId") String uploadId) {
+        try {
+            if (!chunkedUploads.delete(uploadId)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Upload not found");
+            }
+            return ResponseEntity.ok().build();
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error deleting upload: " + e.getMessage());
+        }
+    }
+
+    // Activity records of operations a client ran itself, e.g. with the UI's local engine.
+    // Clients queue them and send them in batches, so a record may arrive well after the fact.
+    @PostMapping("/activities")
+    public ResponseEntity<?> recordActivities(@RequestBody List<Activity> activities) {
+        for (Activity activity : activities) {
+            if (activity.getOperationType() == null || activity.getFileName() == null || activity.getFileName().isBlank()) {
+                return ResponseEntity.badRequest().body("Activity needs an operationType and a fileName");
+            }
+            if (activity.getOriginalSize() < 0 || activity.getResultSize() < 0) {
+                return ResponseEntity.badRequest().body("Activity sizes must not be negative");
+            }
+        }
+        for (Activity activity : activities) {
+            activity.setId(null);
+            if (activity.getTimestamp() == null) {
+                activity.setTimestamp(LocalDateTime.now());
+            }
+            compressionService.saveActivity(activity);
+        }
+        return ResponseEntity.ok(Map.of("saved", activities.size()));
+    }
+
+    // Roots under which path mode accepts path and outputPath; empty when it is off
+    @GetMapping("/paths")
+    public ResponseEntity<List<String>> pathRoots() {
+        return ResponseEntity.ok(localPaths.getRoots());
+    }
+
+    @GetMapping("/dictionaries")
+    public ResponseEntity<List<String>> listDictionaries() {
+        return ResponseEntity.ok(compressionService.getDictionaryRegistry().list());
+    }
+
+    @GetMapping("/operations")
+    public ResponseEntity<List<OperationMonitor.Operation>> operations() {
+        return ResponseEntity.ok(OperationMonitor.inFlight());
+    }
+
+    // Live feed of "started" and "completed" operation events, driven by JFR event streaming
+    @GetMapping(value = "/operations/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter operationStream() throws IOException {
+        return jfrEventStream.subscribe();
+    }
+
+    // Byte-level progress of the operation started with the same progressId parameter
+    @GetMapping(value = "/progress/{progressId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter progress(@PathVariable("progressId") String progressId) throws IOException {
+        return progressStream.subscribe(progressId);
+    }
+
+    @GetMapping("/info")
+    public ResponseEntity<String> getInfo(@RequestParam("path") String filePath) {
+        try {
+            File file = localPaths.input(filePath);
             String info = compressionService.getFileInfo(file);
             return ResponseEntity.ok(info);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error: " + e.getMessage());
         }
     }
 
+    // The body of a streaming upload, for the job from newStreamJob
+    private MultipartReader openUpload(HttpServletRequest request, WorkArea.Job job) throws IOException {
+        InputStream body = request.getContentLengthLong() >= 0 ? request.getInputStream()
+                : job.charge(request.getInputStream());
+        return new MultipartReader(body, MultipartReader.boundary(request.getContentType()), maxUploadSize.toBytes());
+    }
+
+    // From the query string only: getParameter would have the container parse the whole body
+    private static Map<String, String> queryParameters(HttpServletRequest request) {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        String query = request.getQueryString();
+        if (query == null) return parameters;
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) return defaultValue;
+        try {
+            int number = Integer.parseInt(value.trim());
+            if (number < 1) {
+                throw new IllegalArgumentException(name + " must be at least 1");
+            }
+            return number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a number");
+        }
+    }
+
+    // The file name without any directories the client sent along
+    private static String uploadName(MultipartReader.Part part) {
+        String name = new File(part.getFileName().replace('\\', '/')).getName();
+        return name.isEmpty() || name.equals("..") ? "upload" : name;
+    }
+
+    // A work area job sized for the multipart file or chunked upload the request brings in
+    private WorkArea.Job newJob(MultipartFile file, String uploadId) throws IOException {
+        ChunkedUploadStore.Upload upload = uploadId != null ? chunkedUploads.get(uploadId) : null;
+        if (upload != null) {
+            // The upload already holds its size; that moves to the job once it is taken
+            return workArea.create(upload.getSize(), upload.getReservation());
+        }
+        return workArea.create(file != null ? file.getSize() : 0);
+    }
+
+    // A work area job for a streaming upload. A declared length over the limit is refused before
+    // any of the body is read. Without one (chunked transfer encoding) the size is not known until
+    // the body has been read, so the job starts empty and openUpload charges it as the body arrives.
+    private WorkArea.Job newStreamJob(HttpServletRequest request) throws IOException {
+        long length = request.getContentLengthLong();
+        long maxBytes = maxUploadSize.toBytes();
+        if (length > maxBytes) {
+            throw new MultipartReader.SizeLimitExceededException(maxBytes);
+        }
+        return workArea.create(Math.max(0, length));
+    }
+
+    // A multipart file is saved to the job's directory; a chunked upload is moved there. The ZIP
+    // endpoints take their input this way, not streamed: decompressZIP first reads the central
+    // directory at the end of the archive to find entries deflated against a dictionary, and
+    // compressZIP builds its entries from a scan of files on disk, as in path mode.
+    private File receiveInput(WorkArea.Job job, MultipartFile file, String uploadId, OperationType operation)
+            throws IOException {
+        if (uploadId != null) {
+            return chunkedUploads.take(uploadId, job.getDirectory());
+        }
+        File sourceFile = new File(job.getDirectory(), file.getOriginalFilename());
+        receive(file, sourceFile, operation);
+        return sourceFile;
+    }
+
+    private void receive(MultipartFile file, File target, OperationType operation) throws IOException {
+        long start = System.nanoTime();
+        file.transferTo(target);
+        long elapsed = System.nanoTime() - start;
+        PhaseTimings.record(CompressionMetrics.UPLOAD, elapsed);
+        compressionMetrics.recordPhase(operation, CompressionMetrics.UPLOAD, elapsed);
+    }
+
+    // A result in a work area job is deleted once it has been sent; path mode inputs without an
+    // outputPath write next to the input, and that result stays
+    private Resource download(OperationType operation, File result, WorkArea.Job job) {
+        return compressionMetrics.download(operation, result, job != null ? job.keepForDownload() : null);
+    }
+
+    // Path mode result: the output stays where it was written and only its location is returned
+    private ResponseEntity<?> written(File output, long originalSize, long resultSize, HttpHeaders headers) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("output", output.getAbsolutePath());
+        result.put("originalSize", originalSize);
+        result.put("resultSize", resultSize);
+        return ResponseEntity.ok().headers(headers).body(result);
+    }
+
     private void deleteDirectory(File dir) {
         if (dir.isDirectory()) {
             File[] files = dir.listFiles();
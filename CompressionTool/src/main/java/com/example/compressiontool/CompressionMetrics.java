@@ -0,0 +1,173 @@
+package com.example.compressiontool;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+// Micrometer meters for the compression hot paths, scraped from /actuator/prometheus.
+// Every meter is tagged with the OperationType; phase timers are additionally tagged with
+// the phase (upload, scan, compress, fsync, persist, download).
+@Component
+public class CompressionMetrics {
+
+    public static final String UPLOAD = "upload";
+    public static final String SCAN = "scan";
+    public static final String COMPRESS = "compress";
+    public static final String FSYNC = "fsync";
+    public static final String PERSIST = "persist";
+    public static final String DOWNLOAD = "download";
+
+    private final MeterRegistry registry;
+    // Meters by name and tag values. A builder's register() looks the meter up in the registry
+    // and allocates its id and tags on every call, too much for paths run per block or request.
+    private final Map<String, Meter> meters = new ConcurrentHashMap<>();
+
+    public CompressionMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Records nothing; used when the service runs without Spring (CLI, benchmarks)
+    public static CompressionMetrics noop() {
+        return new CompressionMetrics(new CompositeMeterRegistry());
+    }
+
+    public void recordPhase(OperationType operation, String phase, long nanos) {
+        Timer timer = meter("compression.phase/" + operation.name() + "/" + phase, key ->
+                Timer.builder("compression.phase")
+                        .description("Time spent in each phase of a compression operation")
+                        .tag("operation", operation.name())
+                        .tag("phase", phase)
+                        .publishPercentileHistogram()
+                        .register(registry));
+        timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // bytesIn is what the operation read and bytesOut what it produced, so the ratio is the
+    // compression ratio for COMPRESS_* operations and the expansion factor for DECOMPRESS_* ones
+    public void recordOperation(OperationType operation, long bytesIn, long bytesOut, long nanos) {
+        counter("compression.bytes.in", operation).increment(bytesIn);
+        counter("compression.bytes.out", operation).increment(bytesOut);
+        if (bytesIn > 0) {
+            DistributionSummary ratio = meter("compression.ratio/" + operation.name(), key ->
+                    DistributionSummary.builder("compression.ratio")
+                            .description("Output size divided by input size")
+                            .tag("operation", operation.name())
+                            .publishPercentiles(0.5, 0.95)
+                            .register(registry));
+            ratio.record((double) bytesOut / bytesIn);
+        }
+        if (nanos > 0) {
+            DistributionSummary throughput = meter("compression.throughput/" + operation.name(), key ->
+                    DistributionSummary.builder("compression.throughput")
+                            .description("Input bytes processed per second")
+                            .baseUnit("bytes")
+                            .tag("operation", operation.name())
+                            .publishPercentileHistogram()
+                            .register(registry));
+            throughput.record(bytesIn * 1e9 / nanos);
+        }
+    }
+
+    // Adds pool size, active, queued and completed-task gauges for the executor
+    public ExecutorService monitor(ExecutorService executor, String name) {
+        return ExecutorServiceMetrics.monitor(registry, executor, name);
+    }
+
+    // Time a request spent in AdmissionFilter before it ran or was turned away; the outcome is
+    // "admitted" or the reason for the 429
+    public void recordAdmission(String outcome, long waitNanos) {
+        Timer timer = meter("compression.admission.wait/" + outcome, key ->
+                Timer.builder("compression.admission.wait")
+                        .description("Time requests waited for admission")
+                        .tag("outcome", outcome)
+                        .register(registry));
+        timer.record(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void increment(String name, String description) {
+        Counter counter = meter(name, key -> Counter.builder(name).description(description).register(registry));
+        counter.increment();
+    }
+
+    public void gauge(String name, String description, Supplier<Number> value) {
+        Gauge.builder(name, value).description(description).register(registry);
+    }
+
+    // A file resource whose stream records the download phase and bytes sent when it is closed,
+    // i.e. once Spring has finished writing the response body
+    public Resource download(OperationType operation, File file) {
+        return download(operation, file, null);
+    }
+
+    // As above; afterClose, if given, runs once the stream is closed, e.g. to delete the file
+    public Resource download(OperationType operation, File file, Runnable afterClose) {
+        return new FileSystemResource(file) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                long start = System.nanoTime();
+                return new FilterInputStream(super.getInputStream()) {
+                    private long bytes;
+                    private boolean closed;
+
+                    @Override
+                    public int read() throws IOException {
+                        int value = super.read();
+                        if (value != -1) bytes++;
+                        return value;
+                    }
+
+                    @Override
+                    public int read(byte[] buffer, int offset, int length) throws IOException {
+                        int count = super.read(buffer, offset, length);
+                        if (count > 0) bytes += count;
+                        return count;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        if (!closed) {
+                            closed = true;
+                            recordPhase(operation, DOWNLOAD, System.nanoTime() - start);
+                            counter("compression.bytes.downloaded", operation).increment(bytes);
+                            if (afterClose != null) {
+                                afterClose.run();
+                            }
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private Counter counter(String name, OperationType operation) {
+        return meter(name + "/" + operation.name(), key -> Counter.builder(name)
+                .baseUnit("bytes")
+                .tag("operation", operation.name())
+                .register(registry));
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Meter> T meter(String key, Function<String, T> register) {
+        return (T) meters.computeIfAbsent(key, register);
+    }
+}
@@ -1,17 +1,36 @@
 package com.example.compressiontool;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import com.example.compressiontool.Activity;
 import com.example.compressiontool.OperationType;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.time.LocalDateTime;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.zip.*;
 
 @Service
@@ -22,90 +41,310 @@ public class CompressionService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    private CompressionMetrics metrics = CompressionMetrics.noop();
+
+    // Receives the activity records when there is no repository, e.g. the UI's local engine
+    private Consumer<Activity> activitySink;
+
+    // Shared by the block-parallel codecs; created on first use
+    private static final int COMPRESSION_THREADS = Runtime.getRuntime().availableProcessors();
+    private ExecutorService compressionPool;
+
+    @Autowired(required = false)
+    public void setMetrics(CompressionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private synchronized ExecutorService getCompressionPool() {
+        if (compressionPool == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService pool = Executors.newFixedThreadPool(COMPRESSION_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "compression-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            compressionPool = metrics.monitor(pool, "compression");
+        }
+        return compressionPool;
+    }
+
+    private DictionaryRegistry dictionaryRegistry = new DictionaryRegistry(new File("dictionaries"));
+
+    private int bufferSize = 8192;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private int scanParallelism = TreeScanner.DEFAULT_PARALLELISM;
+    private long scanMaxFiles;
+
+    @Value("${compression.buffer-size:8192}")
+    public void setBufferSize(int bufferSize) {
+        if (bufferSize < 512) {
+            throw new IllegalArgumentException("Buffer size must be at least 512 bytes");
+        }
+        this.bufferSize = bufferSize;
+    }
+
+    @Value("${compression.level:-1}")
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be -1 to 9");
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    // 0 keeps the default, see TreeScanner
+    @Value("${compression.scan.parallelism:0}")
+    public void setScanParallelism(int scanParallelism) {
+        if (scanParallelism < 0) {
+            throw new IllegalArgumentException("Scan parallelism must not be negative");
+        }
+        this.scanParallelism = scanParallelism > 0 ? scanParallelism : TreeScanner.DEFAULT_PARALLELISM;
+    }
+
+    // Directory inputs with more files than this are refused; 0 means no limit
+    @Value("${compression.scan.max-files:0}")
+    public void setScanMaxFiles(long scanMaxFiles) {
+        this.scanMaxFiles = scanMaxFiles;
+    }
+
+    // A scanner with this service's settings, for callers that need to size or list a tree
+    // themselves; each scan needs its own
+    public TreeScanner newScanner() {
+        return new TreeScanner().parallelism(scanParallelism).maxFiles(scanMaxFiles);
+    }
+
+    @Value("${compression.dictionaries.dir:dictionaries}")
+    public void setDictionaryDirectory(String directory) {
+        this.dictionaryRegistry = new DictionaryRegistry(new File(directory));
+    }
+
+    public DictionaryRegistry getDictionaryRegistry() {
+        return dictionaryRegistry;
+    }
+
+    public void setActivitySink(Consumer<Activity> activitySink) {
+        this.activitySink = activitySink;
+    }
+
+    // Listeners see every operation, see OperationMonitor.bindProgressId to tell them apart
+    public void addProgressListener(ProgressListener listener) {
+        OperationMonitor.addProgressListener(listener);
+    }
+
+    public void removeProgressListener(ProgressListener listener) {
+        OperationMonitor.removeProgressListener(listener);
+    }
+
     public void compressGZIP(File sourceFile, File destFile) throws IOException {
-        long originalSize = sourceFile.length();
-        try (FileInputStream fis = new FileInputStream(sourceFile);
-             FileOutputStream fos = new FileOutputStream(destFile);
-             GZIPOutputStream gzos = new GZIPOutputStream(fos)) {
+        compressGZIP(sourceFile, destFile, null);
+    }
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = fis.read(buffer)) != -1) {
-                gzos.write(buffer, 0, bytesRead);
+    // With a dictionary id the data is deflated against that preset dictionary and the id is
+    // written into the GZIP header for decompressGZIP to find
+    public void compressGZIP(File sourceFile, File destFile, String dictionaryId) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.COMPRESS_GZIP, sourceFile.getName());
+        long originalSize = sourceFile.length();
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(originalSize);
+        if (dictionaryId != null) {
+            byte[] dictionary = dictionaryRegistry.get(dictionaryId);
+            try (InputStream fis = progress.countRead(new FileInputStream(sourceFile));
+                 FileOutputStream fos = new FileOutputStream(destFile);
+                 BufferedOutputStream bos = new BufferedOutputStream(progress.countWritten(fos))) {
+
+                DictionaryGzipCodec.compress(fis, bos, dictionaryId, dictionary, compressionLevel);
+                bos.flush();
+                PhaseTimings.sync(fos.getFD());
+            }
+        } else {
+            try (InputStream fis = progress.countRead(new FileInputStream(sourceFile));
+                 FileOutputStream fos = new FileOutputStream(destFile);
+                 GZIPOutputStream gzos = new GZIPOutputStream(progress.countWritten(fos), bufferSize) {
+                     { def.setLevel(compressionLevel); }
+                 }) {
+
+                byte[] buffer = new byte[bufferSize];
+                int bytesRead;
+                while ((bytesRead = fis.read(buffer)) != -1) {
+                    gzos.write(buffer, 0, bytesRead);
+                }
+                gzos.finish();
+                fos.flush();
+                PhaseTimings.sync(fos.getFD());
             }
-            gzos.finish();
-            fos.flush();
-            fos.getFD().sync();
         }
 
         long compressedSize = destFile.length();
 
-        Activity activity = new Activity();
-        activity.setOperationType(OperationType.COMPRESS_GZIP);
-        activity.setFileName(sourceFile.getName());
-        activity.setOriginalSize(originalSize);
-        activity.setResultSize(compressedSize);
-        activity.setTimestamp(LocalDateTime.now());
-        activityRepository.save(activity);
+        recordActivity(OperationType.COMPRESS_GZIP, sourceFile.getName(), originalSize, compressedSize, startTime);
     }
 
     public long decompressGZIP(File sourceFile, File destFile) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DECOMPRESS_GZIP, sourceFile.getName());
         Files.createDirectories(destFile.getParentFile().toPath());
 
         long originalSize = sourceFile.length();
         long decompressedSize = 0;
-        try (GZIPInputStream gzis = new GZIPInputStream(new FileInputStream(sourceFile));
-             FileOutputStream fos = new FileOutputStream(destFile)) {
-
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = gzis.read(buffer)) != -1) {
-                fos.write(buffer, 0, bytesRead);
-                decompressedSize += bytesRead;
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(originalSize);
+        if (DictionaryGzipCodec.readDictionaryId(sourceFile) != null) {
+            try (InputStream in = new BufferedInputStream(progress.countRead(new FileInputStream(sourceFile)));
+                 FileOutputStream fos = new FileOutputStream(destFile);
+                 BufferedOutputStream bos = new BufferedOutputStream(progress.countWritten(fos))) {
+
+                decompressedSize = DictionaryGzipCodec.decompress(in, bos, dictionaryRegistry);
+                bos.flush();
+                PhaseTimings.sync(fos.getFD());
+            }
+        } else {
+            try (GZIPInputStream gzis = new GZIPInputStream(progress.countRead(new FileInputStream(sourceFile)), bufferSize);
+                 FileOutputStream fos = new FileOutputStream(destFile)) {
+
+                byte[] buffer = new byte[bufferSize];
+                int bytesRead;
+                while ((bytesRead = gzis.read(buffer)) != -1) {
+                    fos.write(buffer, 0, bytesRead);
+                    progress.addWritten(bytesRead);
+                    decompressedSize += bytesRead;
+                }
+                fos.flush();
+                PhaseTimings.sync(fos.getFD());
             }
-            fos.flush();
-            fos.getFD().sync();
         }
 
         if (!destFile.exists() || destFile.length() == 0) {
             throw new IOException("Output file was not created or is empty");
         }
 
-        Activity activity = new Activity();
-        activity.setOperationType(OperationType.DECOMPRESS_GZIP);
-        activity.setFileName(sourceFile.getName());
-        activity.setOriginalSize(originalSize);
-        activity.setResultSize(decompressedSize);
-        activity.setTimestamp(LocalDateTime.now());
-        activityRepository.save(activity);
+        recordActivity(OperationType.DECOMPRESS_GZIP, sourceFile.getName(), originalSize, decompressedSize, startTime);
 
         return decompressedSize;
     }
 
-    public void compressZIP(File source, File destFile) throws IOException {
-        long originalSize = calculateTotalSize(source);
-        try (FileOutputStream fos = new FileOutputStream(destFile);
-             ZipOutputStream zos = new ZipOutputStream(fos)) {
+    // Stream variants for pipes, e.g. the CLI's stdin/stdout filter. The caller owns both
+    // streams and closes them. With more than one thread the input is compressed in blocks on
+    // the shared pool into a series of GZIP members, see ParallelGzip. Returns {bytes read, bytes written}.
+    // threads is capped at the pool's size: more would not run any sooner, and ParallelGzip holds
+    // two blocks in memory per thread.
+    public long[] compressGZIP(InputStream in, OutputStream out, String name, int threads) throws IOException {
+        threads = Math.min(threads, COMPRESSION_THREADS);
+        long startTime = OperationMonitor.start(OperationType.COMPRESS_GZIP, name);
+        ProgressTracker progress = OperationMonitor.progress();
+        long[] sizes;
+        if (threads > 1) {
+            sizes = ParallelGzip.compress(progress.countRead(in), progress.countWritten(out), compressionLevel,
+                    getCompressionPool(), threads, ParallelGzip.DEFAULT_BLOCK_SIZE);
+        } else {
+            // Closing the GZIP stream releases its deflater but must leave out open
+            OutputStream target = new FilterOutputStream(progress.countWritten(out)) {
+                @Override
+                public void write(byte[] buffer, int offset, int length) throws IOException {
+                    out.write(buffer, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            InputStream source = progress.countRead(in);
+            long bytesRead = 0;
+            try (GZIPOutputStream gzos = new GZIPOutputStream(target, bufferSize) {
+                     { def.setLevel(compressionLevel); }
+                 }) {
+
+                byte[] buffer = new byte[bufferSize];
+                int count;
+                while ((count = source.read(buffer)) != -1) {
+                    gzos.write(buffer, 0, count);
+                    bytesRead += count;
+                }
+                gzos.finish();
+            }
+            sizes = new long[]{bytesRead, progress.snapshot().getBytesWritten()};
+        }
+        out.flush();
+
+        recordActivity(OperationType.COMPRESS_GZIP, name, sizes[0], sizes[1], startTime);
+
+        return sizes;
+    }
+
+    // Reads GZIP members until the end of in, so the output of the parallel compressGZIP and of
+    // pigz decompresses as a whole. Returns {bytes read, bytes written}.
+    public long[] decompressGZIP(InputStream in, OutputStream out, String name) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DECOMPRESS_GZIP, name);
+        ProgressTracker progress = OperationMonitor.progress();
+        BufferedInputStream source = new BufferedInputStream(progress.countRead(in), bufferSize);
+        OutputStream target = progress.countWritten(out);
+        long decompressedSize = 0;
+        if (DictionaryGzipCodec.readDictionaryId(source) != null) {
+            decompressedSize = DictionaryGzipCodec.decompress(source, target, dictionaryRegistry);
+        } else {
+            GZIPInputStream gzis = new GZIPInputStream(source, bufferSize);
+            byte[] buffer = new byte[bufferSize];
+            int count;
+            while ((count = gzis.read(buffer)) != -1) {
+                target.write(buffer, 0, count);
+                decompressedSize += count;
+            }
+        }
+        out.flush();
+        long compressedSize = progress.snapshot().getBytesRead();
+
+        recordActivity(OperationType.DECOMPRESS_GZIP, name, compressedSize, decompressedSize, startTime);
+
+        return new long[]{compressedSize, decompressedSize};
+    }
+
+    public long compressZIP(File source, File destFile) throws IOException {
+        return compressZIP(source, destFile, null);
+    }
 
-            if (source.isDirectory()) {
-                zipDirectory(source, source.getName(), zos);
-            } else {
-                addFileToZip(source, source.getName(), zos);
+    // With a dictionary id every entry is deflated against that preset dictionary, which is
+    // where small files gain the most. The id is kept in each entry's extra field.
+    // Returns the uncompressed size.
+    public long compressZIP(File source, File destFile, String dictionaryId) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.COMPRESS_ZIP, source.getName());
+        if (!source.exists()) {
+            throw new FileNotFoundException(source + " (No such file or directory)");
+        }
+        FileTree tree = newScanner().scan(source);
+        long originalSize = tree.getTotalSize();
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(originalSize);
+        if (dictionaryId != null) {
+            byte[] dictionary = dictionaryRegistry.get(dictionaryId);
+            try (RawZipWriter writer = new RawZipWriter(FileChannel.open(destFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                for (FileTree.Node file : tree.getFiles()) {
+                    progress.setEntry(file.getName());
+                    try (InputStream fis = progress.countRead(new FileInputStream(file.getFile()))) {
+                        writer.addEntry(file.getName(), fis, file.getLastModified(),
+                                compressionLevel, dictionaryId, dictionary);
+                    }
+                }
+                writer.finish();
+            }
+        } else {
+            try (FileOutputStream fos = new FileOutputStream(destFile);
+                 ZipOutputStream zos = new ZipOutputStream(progress.countWritten(fos))) {
+
+                zos.setLevel(compressionLevel);
+                for (FileTree.Node file : tree.getFiles()) {
+                    addFileToZip(file, zos);
+                }
             }
         }
 
         long compressedSize = destFile.length();
 
-        Activity activity = new Activity();
-        activity.setOperationType(OperationType.COMPRESS_ZIP);
-        activity.setFileName(source.getName());
-        activity.setOriginalSize(originalSize);
-        activity.setResultSize(compressedSize);
-        activity.setTimestamp(LocalDateTime.now());
-        activityRepository.save(activity);
+        recordActivity(OperationType.COMPRESS_ZIP, source.getName(), originalSize, compressedSize, startTime);
+
+        return originalSize;
     }
 
     public long[] decompressZIP(File sourceFile, File destDir) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DECOMPRESS_ZIP, sourceFile.getName());
         if (!destDir.exists()) {
             destDir.mkdirs();
         }
@@ -114,15 +353,26 @@ public class CompressionService {
         int fileCount = 0;
         int dirCount = 0;
         long totalExtractedSize = 0;
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(originalSize);
 
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(sourceFile))) {
+        if (usesDictionary(sourceFile)) {
+            long[] stats = extractWithDictionaries(sourceFile, destDir);
+
+            recordActivity(OperationType.DECOMPRESS_ZIP, sourceFile.getName(), originalSize, stats[2], startTime);
+
+            return stats;
+        }
+
+        try (ZipInputStream zis = new ZipInputStream(progress.countRead(new FileInputStream(sourceFile)))) {
             ZipEntry entry;
             while ((entry = zis.getNextEntry()) != null) {
+                progress.setEntry(entry.getName());
                 String filePath = destDir.getAbsolutePath() + File.separator + entry.getName();
                 File outputFile = new File(filePath);
 
-                // Security check for zip slip
-                if (!outputFile.getCanonicalPath().startsWith(destDir.getCanonicalPath())) {
+                // Security check for zip slip; Path.startsWith compares whole names
+                if (!outputFile.getCanonicalFile().toPath().startsWith(destDir.getCanonicalFile().toPath())) {
                     throw new IOException("Potential zip slip attack detected: " + entry.getName());
                 }
 
@@ -132,15 +382,16 @@ public class CompressionService {
                 } else {
                     outputFile.getParentFile().mkdirs();
                     try (FileOutputStream fos = new FileOutputStream(outputFile)) {
-                        byte[] buffer = new byte[8192];
+                        byte[] buffer = new byte[bufferSize];
                         int bytesRead;
                         long fileSize = 0;
                         while ((bytesRead = zis.read(buffer)) != -1) {
                             fos.write(buffer, 0, bytesRead);
+                            progress.addWritten(bytesRead);
                             fileSize += bytesRead;
                         }
                         fos.flush();
-                        fos.getFD().sync();
+                        PhaseTimings.sync(fos.getFD());
                         totalExtractedSize += fileSize;
                     }
                     fileCount++;
@@ -149,36 +400,364 @@ public class CompressionService {
             }
         }
 
-        Activity activity = new Activity();
-        activity.setOperationType(OperationType.DECOMPRESS_ZIP);
-        activity.setFileName(sourceFile.getName());
-        activity.setOriginalSize(originalSize);
-        activity.setResultSize(totalExtractedSize);
-        activity.setTimestamp(LocalDateTime.now());
-        activityRepository.save(activity);
+        recordActivity(OperationType.DECOMPRESS_ZIP, sourceFile.getName(), originalSize, totalExtractedSize, startTime);
+
+        return new long[]{fileCount, dirCount, totalExtractedSize};
+    }
+
+    public byte[] trainDictionary(String dictionaryId, File corpus) throws IOException {
+        List<File> samples = new ArrayList<>();
+        for (FileTree.Node file : newScanner().scan(corpus).getFiles()) {
+            samples.add(file.getFile());
+        }
+        return dictionaryRegistry.train(dictionaryId, samples, DictionaryRegistry.MAX_DICTIONARY_SIZE);
+    }
+
+    private boolean usesDictionary(File zipFile) {
+        try (FileChannel channel = FileChannel.open(zipFile.toPath(), StandardOpenOption.READ)) {
+            for (RawZipEntry entry : RawZipReader.readEntries(channel)) {
+                if (entry.getDictionaryId() != null) {
+                    return true;
+                }
+            }
+            return false;
+        } catch (IOException e) {
+            // Let ZipInputStream deal with anything the central directory reader cannot parse
+            return false;
+        }
+    }
+
+    // ZipInputStream cannot be given a preset dictionary, so these archives are read entry by
+    // entry from the central directory and inflated directly
+    private long[] extractWithDictionaries(File sourceFile, File destDir) throws IOException {
+        int fileCount = 0;
+        int dirCount = 0;
+        long totalExtractedSize = 0;
+        Path destPath = destDir.getCanonicalFile().toPath();
+        ProgressTracker progress = OperationMonitor.progress();
+
+        try (FileChannel channel = FileChannel.open(sourceFile.toPath(), StandardOpenOption.READ)) {
+            for (RawZipEntry entry : RawZipReader.readEntries(channel)) {
+                File outputFile = new File(destDir, entry.getName());
+                progress.setEntry(entry.getName());
 
+                // Security check for zip slip; Path.startsWith compares whole names
+                if (!outputFile.getCanonicalFile().toPath().startsWith(destPath)) {
+                    throw new IOException("Potential zip slip attack detected: " + entry.getName());
+                }
+
+                if (entry.isDirectory()) {
+                    outputFile.mkdirs();
+                    dirCount++;
+                    continue;
+                }
+                outputFile.getParentFile().mkdirs();
+
+                InputStream raw = new BufferedInputStream(progress.countRead(Channels.newInputStream(
+                        channel.position(RawZipReader.dataOffset(channel, entry)))));
+                InputStream data = raw;
+                Inflater inflater = null;
+                if (entry.getMethod() != ZipEntry.STORED) {
+                    inflater = new Inflater(true);
+                    if (entry.getDictionaryId() != null) {
+                        inflater.setDictionary(dictionaryRegistry.get(entry.getDictionaryId()));
+                    }
+                    data = new InflaterInputStream(raw, inflater);
+                }
+
+                CRC32 crc = new CRC32();
+                long fileSize = 0;
+                try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                    byte[] buffer = new byte[bufferSize];
+                    int bytesRead;
+                    long remaining = entry.getSize();
+                    while (remaining > 0 && (bytesRead = data.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                        fos.write(buffer, 0, bytesRead);
+                        progress.addWritten(bytesRead);
+                        crc.update(buffer, 0, bytesRead);
+                        fileSize += bytesRead;
+                        remaining -= bytesRead;
+                    }
+                    fos.flush();
+                    PhaseTimings.sync(fos.getFD());
+                } finally {
+                    // Closing the stream would close the shared channel, so only release the inflater
+                    if (inflater != null) {
+                        inflater.end();
+                    }
+                }
+                if (fileSize != entry.getSize() || crc.getValue() != entry.getCrc()) {
+                    throw new ZipException("Corrupt entry: " + entry.getName());
+                }
+                totalExtractedSize += fileSize;
+                fileCount++;
+            }
+        }
         return new long[]{fileCount, dirCount, totalExtractedSize};
     }
 
-    private void zipDirectory(File directory, String baseName, ZipOutputStream zos) throws IOException {
-        File[] files = directory.listFiles();
-        if (files == null) return;
+    // Adds or replaces entries in an existing ZIP. Untouched entries are copied as raw
+    // compressed bytes, so the cost scales with the size of the update, not the archive.
+    // Returns {entriesCopied, entriesAdded, entriesReplaced, sourceBytes}.
+    public long[] updateZIP(File archive, File source) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.UPDATE_ZIP, archive.getName());
+        FileTree tree = newScanner().scan(source);
+        Map<String, FileTree.Node> updates = new LinkedHashMap<>();
+        for (FileTree.Node file : tree.getFiles()) {
+            updates.put(file.getName(), file);
+        }
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                zipDirectory(file, baseName + "/" + file.getName(), zos);
-            } else {
-                addFileToZip(file, baseName + "/" + file.getName(), zos);
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(tree.getTotalSize());
+
+        Path archivePath = archive.getAbsoluteFile().toPath();
+        Path tempPath = Files.createTempFile(archivePath.getParent(), archive.getName(), ".tmp");
+        long updatedSize = 0;
+        int copied = 0;
+        int added = 0;
+        int replaced = 0;
+        try (FileChannel in = FileChannel.open(archivePath, StandardOpenOption.READ);
+             RawZipWriter writer = new RawZipWriter(FileChannel.open(tempPath, StandardOpenOption.WRITE))) {
+
+            for (RawZipEntry entry : RawZipReader.readEntries(in)) {
+                FileTree.Node update = updates.remove(entry.getName());
+                if (update != null && isModified(update, entry)) {
+                    progress.setEntry(entry.getName());
+                    writer.addEntry(entry.getName(), update.getFile(), compressionLevel);
+                    progress.addRead(update.getSize());
+                    updatedSize += update.getSize();
+                    replaced++;
+                } else {
+                    writer.copyEntry(in, entry);
+                    copied++;
+                }
+            }
+            for (FileTree.Node update : updates.values()) {
+                progress.setEntry(update.getName());
+                writer.addEntry(update.getName(), update.getFile(), compressionLevel);
+                progress.addRead(update.getSize());
+                updatedSize += update.getSize();
+                added++;
             }
+            writer.finish();
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
         }
+
+        // A manifest from compressZIPIncremental no longer describes the archive; drop it first
+        // so a crash in between leaves no stale manifest, only a full rebuild next time
+        Files.deleteIfExists(ArchiveManifest.manifestFileFor(archive).toPath());
+        replaceFile(tempPath, archivePath);
+
+        recordActivity(OperationType.UPDATE_ZIP, archive.getName(), updatedSize, archive.length(), startTime);
+
+        return new long[]{copied, added, replaced, tree.getTotalSize()};
     }
 
-    private void addFileToZip(File file, String entryName, ZipOutputStream zos) throws IOException {
-        ZipEntry zipEntry = new ZipEntry(entryName);
+    // Re-archives a directory into destFile, reusing the compressed data of every file that is
+    // unchanged since the previous run. The previous run is described by destFile's manifest;
+    // files whose size and mtime match are copied raw without being read, files with a new
+    // mtime are hashed and only recompressed if their content actually changed.
+    // Returns {filesReused, filesCompressed, totalFiles, totalBytes}.
+    public long[] compressZIPIncremental(File source, File destFile) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.COMPRESS_ZIP, source.getName());
+        FileTree tree = newScanner().scan(source);
+
+        File manifestFile = ArchiveManifest.manifestFileFor(destFile);
+        ArchiveManifest previous = destFile.isFile() ? ArchiveManifest.load(manifestFile) : new ArchiveManifest();
+        ArchiveManifest current = new ArchiveManifest();
+
+        long originalSize = tree.getTotalSize();
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(originalSize);
+
+        Path destPath = destFile.getAbsoluteFile().toPath();
+        Path tempPath = Files.createTempFile(destPath.getParent(), destFile.getName(), ".tmp");
+        int reused = 0;
+        int compressed = 0;
+        try (FileChannel in = previous.size() > 0 ? FileChannel.open(destPath, StandardOpenOption.READ) : null;
+             RawZipWriter writer = new RawZipWriter(FileChannel.open(tempPath, StandardOpenOption.WRITE))) {
+
+            Map<String, RawZipEntry> previousEntries = new HashMap<>();
+            if (in != null) {
+                for (RawZipEntry entry : RawZipReader.readEntries(in)) {
+                    previousEntries.put(entry.getName(), entry);
+                }
+            }
+
+            for (FileTree.Node file : tree.getFiles()) {
+                String name = file.getName();
+                File f = file.getFile();
+                long size = file.getSize();
+                long lastModified = file.getLastModified();
+                progress.setEntry(name);
+
+                ArchiveManifest.Entry before = previous.get(name);
+                RawZipEntry raw = previousEntries.get(name);
+                // The archive may have been changed behind the manifest's back; only reuse an
+                // entry that is still the one the manifest describes
+                if (before != null && raw != null && before.getSize() == size
+                        && raw.getSize() == before.getSize() && raw.getCrc() == before.getCrc()) {
+                    String sha256 = before.getLastModified() == lastModified
+                            ? before.getSha256()
+                            : ArchiveManifest.sha256(f);
+                    if (sha256.equals(before.getSha256())) {
+                        writer.copyEntry(in, raw);
+                        progress.addRead(size);
+                        current.put(new ArchiveManifest.Entry(name, size, lastModified, raw.getCrc(), sha256));
+                        reused++;
+                        continue;
+                    }
+                }
+
+                MessageDigest digest = ArchiveManifest.newDigest();
+                CRC32 crc = new CRC32();
+                try (InputStream fis = progress.countRead(new CheckedInputStream(
+                        new DigestInputStream(new FileInputStream(f), digest), crc))) {
+                    writer.addEntry(name, fis, lastModified, compressionLevel);
+                }
+                current.put(new ArchiveManifest.Entry(name, size, lastModified, crc.getValue(),
+                        HexFormat.of().formatHex(digest.digest())));
+                compressed++;
+            }
+            writer.finish();
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+
+        // The manifest is written before the archive is moved into place, and the old one is
+        // gone by then, so a crash never pairs an archive with a manifest of another run
+        Path manifestTemp = Files.createTempFile(destPath.getParent(), manifestFile.getName(), ".tmp");
+        try {
+            current.save(manifestTemp.toFile());
+            Files.deleteIfExists(manifestFile.toPath());
+            replaceFile(tempPath, destPath);
+            replaceFile(manifestTemp, manifestFile.toPath());
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            Files.deleteIfExists(manifestTemp);
+            throw e;
+        }
+
+        recordActivity(OperationType.COMPRESS_ZIP, source.getName(), originalSize, destFile.length(), startTime);
+
+        return new long[]{reused, compressed, tree.getFiles().size(), originalSize};
+    }
+
+    private void replaceFile(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Packs source into a solid archive: small files share one deflate stream per block instead
+    // of each paying for its own headers and window. Returns {files, blocks, totalBytes}.
+    public long[] compressSolid(File source, File destFile) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.COMPRESS_SOLID, source.getName());
+        long[] stats = SolidArchive.create(newScanner().scan(source), destFile, compressionLevel, getCompressionPool(),
+                Runtime.getRuntime().availableProcessors(), SolidArchive.DEFAULT_BLOCK_SIZE);
+
+        recordActivity(OperationType.COMPRESS_SOLID, source.getName(), stats[2], destFile.length(), startTime);
+
+        return stats;
+    }
+
+    // Returns {files, directories, totalBytes}
+    public long[] decompressSolid(File sourceFile, File destDir) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DECOMPRESS_SOLID, sourceFile.getName());
+        if (!destDir.exists()) {
+            destDir.mkdirs();
+        }
+        long[] stats = SolidArchive.extractAll(sourceFile, destDir, getCompressionPool(),
+                Runtime.getRuntime().availableProcessors());
+
+        recordActivity(OperationType.DECOMPRESS_SOLID, sourceFile.getName(), sourceFile.length(), stats[2], startTime);
+
+        return stats;
+    }
+
+    // Stores a snapshot of source in a deduplicating chunk store; only chunks the store has
+    // not seen before are compressed and written. Returns {files, totalBytes, chunksWritten, bytesWritten}.
+    public long[] backupDedup(File source, File storeDir, String snapshot) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DEDUP_BACKUP, source.getName());
+        long[] stats = new DedupStore(storeDir).backup(source, snapshot);
+
+        recordActivity(OperationType.DEDUP_BACKUP, source.getName(), stats[1], stats[3], startTime);
+
+        return stats;
+    }
+
+    // Returns {files, bytesRestored}
+    public long[] restoreDedup(File storeDir, String snapshot, File destDir) throws IOException {
+        long startTime = OperationMonitor.start(OperationType.DEDUP_RESTORE, snapshot);
+        long[] stats = new DedupStore(storeDir).restore(snapshot, destDir);
+
+        recordActivity(OperationType.DEDUP_RESTORE, snapshot, stats[1], stats[1], startTime);
+
+        return stats;
+    }
+
+    // Returns {chunksDeleted, bytesFreed}
+    public long[] gcDedup(File storeDir) throws IOException {
+        return new DedupStore(storeDir).gc();
+    }
+
+    // DOS timestamps in ZIP entries only have two second resolution
+    private boolean isModified(FileTree.Node file, RawZipEntry entry) {
+        return file.getSize() != entry.getSize() || file.getLastModified() > entry.getTime() + 2000;
+    }
+
+    private void recordActivity(OperationType operationType, String fileName, long originalSize, long resultSize,
+                                long startTime) {
+        // Compress time is what is left after the scan and fsync phases inside the operation
+        long elapsed = System.nanoTime() - startTime;
+        long work = elapsed;
+        for (Map.Entry<String, Long> phase : PhaseTimings.operationPhases().entrySet()) {
+            metrics.recordPhase(operationType, phase.getKey(), phase.getValue());
+            work -= phase.getValue();
+        }
+        PhaseTimings.record(CompressionMetrics.COMPRESS, work);
+        metrics.recordPhase(operationType, CompressionMetrics.COMPRESS, work);
+        metrics.recordOperation(operationType, originalSize, resultSize, elapsed);
+
+        Activity activity = new Activity();
+        activity.setOperationType(operationType);
+        activity.setFileName(fileName);
+        activity.setOriginalSize(originalSize);
+        activity.setResultSize(resultSize);
+        activity.setTimestamp(LocalDateTime.now());
+        saveActivity(activity);
+        OperationMonitor.finish(originalSize, resultSize);
+    }
+
+    // The only place activity records are stored; operations call it through recordActivity,
+    // the API for records a client ran itself
+    public void saveActivity(Activity activity) {
+        // No repository outside Spring, e.g. in the CLI or benchmarks
+        if (activityRepository != null) {
+            long persistStart = System.nanoTime();
+            activityRepository.save(activity);
+            long persistTime = System.nanoTime() - persistStart;
+            PhaseTimings.record(CompressionMetrics.PERSIST, persistTime);
+            metrics.recordPhase(activity.getOperationType(), CompressionMetrics.PERSIST, persistTime);
+        } else if (activitySink != null) {
+            activitySink.accept(activity);
+        }
+    }
+
+    private void addFileToZip(FileTree.Node file, ZipOutputStream zos) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(file.getName());
+        zipEntry.setTime(file.getLastModified());
         zos.putNextEntry(zipEntry);
 
-        try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] buffer = new byte[8192];
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setEntry(file.getName());
+        try (InputStream fis = progress.countRead(new FileInputStream(file.getFile()))) {
+            byte[] buffer = new byte[bufferSize];
             int bytesRead;
             while ((bytesRead = fis.read(buffer)) != -1) {
                 zos.write(buffer, 0, bytesRead);
@@ -187,19 +766,13 @@ public class CompressionService {
         zos.closeEntry();
     }
 
+    // Operations return the sizes they already know; this is for trees nothing has scanned yet
     public long calculateTotalSize(File file) {
-        long size = 0;
-        if (file.isFile()) {
-            return file.length();
-        } else if (file.isDirectory()) {
-            File[] files = file.listFiles();
-            if (files != null) {
-                for (File f : files) {
-                    size += calculateTotalSize(f);
-                }
-            }
+        try {
+            return newScanner().totalSize(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return size;
     }
 
     public String formatBytes(long bytes) {
@@ -0,0 +1,437 @@
+package com.example.compressiontool;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Deduplicating snapshot store. Files are split into content-defined chunks with a rolling
+// Gear hash, so an insert or delete only changes the chunks around it. Chunks are stored once,
+// deflated, under their SHA-256; a snapshot is just a list of files and their chunk hashes.
+//
+// Layout:
+//   <root>/chunks/ab/ab12...ef     deflated chunk data
+//   <root>/snapshots/<name>.snapshot
+//
+// A snapshot file starts with a sequence number one higher than any snapshot before it, which
+// orders snapshots independently of file times; snapshots written before there was one sort
+// first, by modification time.
+public class DedupStore {
+
+    private static final int MIN_CHUNK = 2 * 1024;
+    private static final int MAX_CHUNK = 64 * 1024;
+    // 13 bits gives an average chunk of about 8 KB. The top bits are used because with a
+    // left-shifting hash they depend on the last 64 bytes, the low bits only on the last 13.
+    private static final long CHUNK_MASK = 0xFFF8_0000_0000_0000L;
+    private static final long[] GEAR = new long[256];
+    private static final Pattern SNAPSHOT_NAME = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final String SNAPSHOT_HEADER = "# CompressionTool snapshot v1";
+    private static final String SEQUENCE_PREFIX = "# sequence ";
+
+    static {
+        // Fixed seed: chunk boundaries must be identical across runs
+        Random random = new Random(0x5DEECE66DL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final File root;
+    private final File chunksDir;
+    private final File snapshotsDir;
+
+    public DedupStore(File root) {
+        this.root = root;
+        this.chunksDir = new File(root, "chunks");
+        this.snapshotsDir = new File(root, "snapshots");
+    }
+
+    public static class FileRecord {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final List<String> chunks;
+
+        public FileRecord(String path, long size, long lastModified, List<String> chunks) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.chunks = chunks;
+        }
+
+        public String getPath() { return path; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public List<String> getChunks() { return chunks; }
+    }
+
+    // Returns {files, totalBytes, chunksWritten, bytesWritten}
+    public long[] backup(File source, String snapshot) throws IOException {
+        checkSnapshotName(snapshot);
+        chunksDir.mkdirs();
+        snapshotsDir.mkdirs();
+
+        StoreLock lock = lock();
+        try {
+            // Files unchanged since the latest snapshot keep their chunk list without being read
+            Map<String, FileRecord> previous = new HashMap<>();
+            String latest = latestSnapshot();
+            if (latest != null) {
+                for (FileRecord record : readSnapshot(latest)) {
+                    previous.put(record.getPath(), record);
+                }
+            }
+
+            List<FileRecord> records = new ArrayList<>();
+            long[] stats = new long[4];
+            collect(source, source.getName(), previous, records, stats);
+
+            long sequence = 0;
+            for (String existing : listSnapshots()) {
+                sequence = Math.max(sequence, readSequence(snapshotFile(existing)));
+            }
+
+            File snapshotFile = snapshotFile(snapshot);
+            File tempFile = new File(snapshotsDir, snapshot + ".snapshot.tmp");
+            try (FileOutputStream fos = new FileOutputStream(tempFile);
+                 BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
+                writer.write(SNAPSHOT_HEADER);
+                writer.newLine();
+                writer.write(SEQUENCE_PREFIX + (sequence + 1));
+                writer.newLine();
+                for (FileRecord record : records) {
+                    writer.write(record.getPath() + "\t" + record.getSize() + "\t" + record.getLastModified()
+                            + "\t" + String.join(",", record.getChunks()));
+                    writer.newLine();
+                }
+                writer.flush();
+                PhaseTimings.sync(fos.getFD());
+            }
+            move(tempFile.toPath(), snapshotFile.toPath());
+            return stats;
+        } finally {
+            lock.close();
+        }
+    }
+
+    // Returns {files, bytesRestored}
+    public long[] restore(String snapshot, File destDir) throws IOException {
+        checkSnapshotName(snapshot);
+        destDir.mkdirs();
+        Path destPath = destDir.getCanonicalFile().toPath();
+
+        long files = 0;
+        long bytes = 0;
+        byte[] buffer = new byte[8192];
+        for (FileRecord record : readSnapshot(snapshot)) {
+            File outputFile = new File(destDir, record.getPath());
+            // Zip slip guard; Path.startsWith compares whole names, so /dest-other is outside /dest
+            if (!outputFile.getCanonicalFile().toPath().startsWith(destPath)) {
+                throw new IOException("Invalid path in snapshot: " + record.getPath());
+            }
+            outputFile.getParentFile().mkdirs();
+            try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                for (String hash : record.getChunks()) {
+                    try (InputStream in = new InflaterInputStream(new FileInputStream(chunkFile(hash)))) {
+                        int bytesRead;
+                        while ((bytesRead = in.read(buffer)) != -1) {
+                            fos.write(buffer, 0, bytesRead);
+                            bytes += bytesRead;
+                        }
+                    }
+                }
+                fos.flush();
+                PhaseTimings.sync(fos.getFD());
+            }
+            outputFile.setLastModified(record.getLastModified());
+            files++;
+        }
+        return new long[]{files, bytes};
+    }
+
+    // Deletes every chunk that no snapshot refers to. Returns {chunksDeleted, bytesFreed}
+    public long[] gc() throws IOException {
+        if (!chunksDir.isDirectory()) {
+            return new long[]{0, 0};
+        }
+        StoreLock lock = lock();
+        try {
+            Set<String> live = new HashSet<>();
+            for (String snapshot : listSnapshots()) {
+                for (FileRecord record : readSnapshot(snapshot)) {
+                    live.addAll(record.getChunks());
+                }
+            }
+
+            long deleted = 0;
+            long freed = 0;
+            File[] prefixes = chunksDir.listFiles();
+            if (prefixes == null) return new long[]{0, 0};
+            for (File prefix : prefixes) {
+                File[] chunks = prefix.listFiles();
+                if (chunks == null) continue;
+                for (File chunk : chunks) {
+                    if (!live.contains(chunk.getName())) {
+                        long length = chunk.length();
+                        if (chunk.delete()) {
+                            deleted++;
+                            freed += length;
+                        }
+                    }
+                }
+            }
+            return new long[]{deleted, freed};
+        } finally {
+            lock.close();
+        }
+    }
+
+    public boolean deleteSnapshot(String snapshot) {
+        checkSnapshotName(snapshot);
+        return snapshotFile(snapshot).delete();
+    }
+
+    // Oldest first
+    public List<String> listSnapshots() {
+        List<String> names = new ArrayList<>();
+        File[] files = snapshotsDir.listFiles((dir, name) -> name.endsWith(".snapshot"));
+        if (files == null) return names;
+        Map<File, Long> sequences = new HashMap<>();
+        for (File file : files) {
+            sequences.put(file, readSequence(file));
+        }
+        Arrays.sort(files, Comparator.<File>comparingLong(sequences::get).thenComparingLong(File::lastModified));
+        for (File file : files) {
+            names.add(file.getName().substring(0, file.getName().length() - ".snapshot".length()));
+        }
+        return names;
+    }
+
+    public List<FileRecord> readSnapshot(String snapshot) throws IOException {
+        checkSnapshotName(snapshot);
+        File snapshotFile = snapshotFile(snapshot);
+        if (!snapshotFile.isFile()) {
+            throw new IOException("Snapshot not found: " + snapshot);
+        }
+        List<FileRecord> records = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!SNAPSHOT_HEADER.equals(line)) {
+                throw new IOException("Not a snapshot file: " + snapshot);
+            }
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                String[] fields = line.split("\t", -1);
+                if (fields.length != 4) continue;
+                List<String> chunks = fields[3].isEmpty() ? List.of() : Arrays.asList(fields[3].split(","));
+                records.add(new FileRecord(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), chunks));
+            }
+        }
+        return records;
+    }
+
+    public long storedBytes() throws IOException {
+        if (!chunksDir.isDirectory()) return 0;
+        try (Stream<Path> paths = Files.walk(chunksDir.toPath())) {
+            return paths.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+        }
+    }
+
+    private String latestSnapshot() {
+        List<String> snapshots = listSnapshots();
+        return snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+    }
+
+    private File snapshotFile(String snapshot) {
+        return new File(snapshotsDir, snapshot + ".snapshot");
+    }
+
+    // 0 for a snapshot without a sequence number, or one that cannot be read
+    private static long readSequence(File snapshotFile) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            String line = reader.readLine();
+            if (SNAPSHOT_HEADER.equals(header) && line != null && line.startsWith(SEQUENCE_PREFIX)) {
+                return Long.parseLong(line.substring(SEQUENCE_PREFIX.length()));
+            }
+        } catch (IOException | NumberFormatException e) {
+            // Sorts with the unnumbered snapshots
+        }
+        return 0;
+    }
+
+    private void collect(File file, String path, Map<String, FileRecord> previous,
+                         List<FileRecord> records, long[] stats) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children == null) return;
+            Arrays.sort(children);
+            for (File child : children) {
+                collect(child, path + "/" + child.getName(), previous, records, stats);
+            }
+            return;
+        }
+
+        long size = file.length();
+        long lastModified = file.lastModified();
+        FileRecord before = previous.get(path);
+        List<String> chunks;
+        if (before != null && before.getSize() == size && before.getLastModified() == lastModified
+                && allChunksPresent(before.getChunks())) {
+            chunks = before.getChunks();
+        } else {
+            chunks = storeChunks(file, stats);
+        }
+        records.add(new FileRecord(path, size, lastModified, chunks));
+        stats[0]++;
+        stats[1] += size;
+    }
+
+    private boolean allChunksPresent(List<String> chunks) {
+        for (String hash : chunks) {
+            if (!chunkFile(hash).isFile()) return false;
+        }
+        return true;
+    }
+
+    private List<String> storeChunks(File file, long[] stats) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        byte[] chunk = new byte[MAX_CHUNK];
+        byte[] buffer = new byte[64 * 1024];
+        int length = 0;
+        long hash = 0;
+        MessageDigest digest = ArchiveManifest.newDigest();
+
+        try (InputStream in = new FileInputStream(file)) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                for (int i = 0; i < bytesRead; i++) {
+                    byte b = buffer[i];
+                    chunk[length++] = b;
+                    hash = (hash << 1) + GEAR[b & 0xFF];
+                    if ((length >= MIN_CHUNK && (hash & CHUNK_MASK) == 0) || length == MAX_CHUNK) {
+                        hashes.add(writeChunk(chunk, length, digest, stats));
+                        length = 0;
+                        hash = 0;
+                    }
+                }
+            }
+        }
+        if (length > 0) {
+            hashes.add(writeChunk(chunk, length, digest, stats));
+        }
+        return hashes;
+    }
+
+    private String writeChunk(byte[] data, int length, MessageDigest digest, long[] stats) throws IOException {
+        digest.update(data, 0, length);
+        String hash = HexFormat.of().formatHex(digest.digest());
+        File chunkFile = chunkFile(hash);
+        if (chunkFile.isFile()) {
+            return hash;
+        }
+
+        chunkFile.getParentFile().mkdirs();
+        File tempFile = new File(chunkFile.getPath() + ".tmp");
+        // A Deflater passed to DeflaterOutputStream is not ended by close(); its native memory
+        // would otherwise only be freed by the GC
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try (FileOutputStream fos = new FileOutputStream(tempFile);
+             DeflaterOutputStream dos = new DeflaterOutputStream(fos, deflater, 8192, false)) {
+            dos.write(data, 0, length);
+            dos.finish();
+            fos.flush();
+            PhaseTimings.sync(fos.getFD());
+        } finally {
+            deflater.end();
+        }
+        move(tempFile.toPath(), chunkFile.toPath());
+        stats[2]++;
+        stats[3] += chunkFile.length();
+        return hash;
+    }
+
+    private File chunkFile(String hash) {
+        return new File(new File(chunksDir, hash.substring(0, 2)), hash);
+    }
+
+    private void checkSnapshotName(String snapshot) {
+        if (snapshot == null || !SNAPSHOT_NAME.matcher(snapshot).matches()) {
+            throw new IllegalArgumentException("Invalid snapshot name: " + snapshot);
+        }
+    }
+
+    private void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Backups and gc must not interleave, or gc could delete chunks a running backup just reused
+    private StoreLock lock() throws IOException {
+        root.mkdirs();
+        FileChannel channel = FileChannel.open(new File(root, ".lock").toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+                throw new IOException("Dedup store is busy: " + root);
+            }
+            return new StoreLock(channel, lock);
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            throw new IOException("Dedup store is busy: " + root);
+        }
+    }
+
+    private static class StoreLock implements AutoCloseable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        StoreLock(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            lock.release();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.example.compressiontool;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// GZIP with a preset deflate dictionary. The dictionary id is recorded in the FEXTRA field
+// of the header (subfield "DI"), so decompressGZIP can pick the right dictionary by itself.
+// Standard gunzip cannot decode these files since it has no way to load the dictionary.
+public class DictionaryGzipCodec {
+
+    private static final int FHCRC = 0x02;
+    private static final int FEXTRA = 0x04;
+    private static final int FNAME = 0x08;
+    private static final int FCOMMENT = 0x10;
+    private static final byte SUBFIELD_1 = 'D';
+    private static final byte SUBFIELD_2 = 'I';
+
+    private DictionaryGzipCodec() {}
+
+    // Returns the number of uncompressed bytes written
+    public static long compress(InputStream in, OutputStream out, String dictionaryId, byte[] dictionary, int level)
+            throws IOException {
+        byte[] id = dictionaryId.getBytes(StandardCharsets.UTF_8);
+        byte[] header = new byte[10 + 2 + 4 + id.length];
+        header[0] = (byte) 0x1F;
+        header[1] = (byte) 0x8B;
+        header[2] = Deflater.DEFLATED;
+        header[3] = FEXTRA;
+        header[9] = (byte) 0xFF;   // unknown OS
+        writeShort(header, 10, 4 + id.length);
+        header[12] = SUBFIELD_1;
+        header[13] = SUBFIELD_2;
+        writeShort(header, 14, id.length);
+        System.arraycopy(id, 0, header, 16, id.length);
+        out.write(header);
+
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        deflater.setDictionary(dictionary);
+        byte[] buffer = new byte[8192];
+        byte[] deflated = new byte[8192];
+        long size = 0;
+        try {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, bytesRead);
+                size += bytesRead;
+                deflater.setInput(buffer, 0, bytesRead);
+                while (!deflater.needsInput()) {
+                    int count = deflater.deflate(deflated);
+                    out.write(deflated, 0, count);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(deflated);
+                out.write(deflated, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        byte[] trailer = new byte[8];
+        writeInt(trailer, 0, crc.getValue());
+        writeInt(trailer, 4, size);
+        out.write(trailer);
+        return size;
+    }
+
+    // Returns the dictionary id from the GZIP header, or null for a plain GZIP file
+    public static String readDictionaryId(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return readHeader(new DataInputStream(in));
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    // Peeks at the header of a stream that supports mark; the stream is left where it was
+    public static String readDictionaryId(InputStream in) throws IOException {
+        in.mark(64 * 1024);
+        try {
+            return readHeader(new DataInputStream(in));
+        } catch (EOFException e) {
+            return null;
+        } finally {
+            in.reset();
+        }
+    }
+
+    // Returns the number of bytes written to out
+    public static long decompress(InputStream in, OutputStream out, DictionaryRegistry registry) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        String dictionaryId = readHeader(data);
+        if (dictionaryId == null) {
+            throw new ZipException("GZIP header has no dictionary id");
+        }
+
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(registry.get(dictionaryId));
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[8192];
+        byte[] inflated = new byte[8192];
+        long size = 0;
+        byte[] trailer = new byte[8];
+        int trailerLength = 0;
+        int bufferLength = 0;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    bufferLength = data.read(buffer);
+                    if (bufferLength == -1) {
+                        throw new EOFException("Unexpected end of GZIP data");
+                    }
+                    inflater.setInput(buffer, 0, bufferLength);
+                }
+                int count = inflater.inflate(inflated);
+                if (count > 0) {
+                    crc.update(inflated, 0, count);
+                    out.write(inflated, 0, count);
+                    size += count;
+                }
+            }
+            // Whatever the inflater did not consume is the start of the trailer
+            int remaining = inflater.getRemaining();
+            trailerLength = Math.min(remaining, trailer.length);
+            System.arraycopy(buffer, bufferLength - remaining, trailer, 0, trailerLength);
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid GZIP data: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        data.readFully(trailer, trailerLength, trailer.length - trailerLength);
+
+        if (readInt(trailer, 0) != crc.getValue() || readInt(trailer, 4) != (size & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        return size;
+    }
+
+    private static String readHeader(DataInputStream in) throws IOException {
+        int id1 = in.readUnsignedByte();
+        int id2 = in.readUnsignedByte();
+        if (id1 != 0x1F || id2 != 0x8B) {
+            throw new ZipException("Not in GZIP format");
+        }
+        int method = in.readUnsignedByte();
+        if (method != Deflater.DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = in.readUnsignedByte();
+        in.skipNBytes(6);   // MTIME, XFL, OS
+
+        String dictionaryId = null;
+        if ((flags & FEXTRA) != 0) {
+            int extraLength = readShort(in);
+            byte[] extra = new byte[extraLength];
+            in.readFully(extra);
+            int pos = 0;
+            while (pos + 4 <= extraLength) {
+                int length = (extra[pos + 2] & 0xFF) | (extra[pos + 3] & 0xFF) << 8;
+                if (extra[pos] == SUBFIELD_1 && extra[pos + 1] == SUBFIELD_2 && pos + 4 + length <= extraLength) {
+                    dictionaryId = new String(extra, pos + 4, length, StandardCharsets.UTF_8);
+                }
+                pos += 4 + length;
+            }
+        }
+        if ((flags & FNAME) != 0) {
+            while (in.readUnsignedByte() != 0) { }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (in.readUnsignedByte() != 0) { }
+        }
+        if ((flags & FHCRC) != 0) {
+            in.skipNBytes(2);
+        }
+        return dictionaryId;
+    }
+
+    private static int readShort(DataInputStream in) throws IOException {
+        return in.readUnsignedByte() | in.readUnsignedByte() << 8;
+    }
+
+    private static long readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFFL) | (data[offset + 1] & 0xFFL) << 8
+                | (data[offset + 2] & 0xFFL) << 16 | (data[offset + 3] & 0xFFL) << 24;
+    }
+
+    private static void writeShort(byte[] data, int offset, int value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeInt(byte[] data, int offset, long value) {
+        data[offset] = (byte) value;
+        data[offset + 1] = (byte) (value >> 8);
+        data[offset + 2] = (byte) (value >> 16);
+        data[offset + 3] = (byte) (value >> 24);
+    }
+}
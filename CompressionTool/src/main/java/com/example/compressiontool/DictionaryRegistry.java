@@ -0,0 +1,203 @@
+package com.example.compressiontool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Preset dictionaries for small files, stored as <directory>/<id>.dict. Deflate can only look
+// back 32 KB, so a dictionary is at most that size and its most useful content goes last.
+// Archives only record a dictionary's id, so an id can never be given to other content: once
+// registered, a dictionary cannot be replaced.
+public class DictionaryRegistry {
+
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private static final int GRAM = 8;
+    private static final int SEGMENT = 64;
+    private static final Pattern DICTIONARY_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final File directory;
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+
+    public DictionaryRegistry(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void register(String id, byte[] dictionary) throws IOException {
+        checkId(id);
+        if (dictionary.length == 0 || dictionary.length > MAX_DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Dictionary must be 1 to " + MAX_DICTIONARY_SIZE + " bytes");
+        }
+        directory.mkdirs();
+        try {
+            Files.write(new File(directory, id + ".dict").toPath(), dictionary, StandardOpenOption.CREATE_NEW);
+        } catch (FileAlreadyExistsException e) {
+            throw new IllegalArgumentException("Dictionary already exists: " + id);
+        }
+        cache.put(id, dictionary);
+    }
+
+    public boolean exists(String id) {
+        checkId(id);
+        return cache.containsKey(id) || new File(directory, id + ".dict").isFile();
+    }
+
+    public byte[] get(String id) throws IOException {
+        checkId(id);
+        byte[] dictionary = cache.get(id);
+        if (dictionary != null) {
+            return dictionary;
+        }
+        File file = new File(directory, id + ".dict");
+        if (!file.isFile()) {
+            throw new IOException("Unknown dictionary: " + id);
+        }
+        dictionary = Files.readAllBytes(file.toPath());
+        cache.put(id, dictionary);
+        return dictionary;
+    }
+
+    public List<String> list() {
+        List<String> ids = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".dict"));
+        if (files == null) return ids;
+        for (File file : files) {
+            ids.add(file.getName().substring(0, file.getName().length() - ".dict".length()));
+        }
+        ids.sort(null);
+        return ids;
+    }
+
+    public byte[] train(String id, List<File> samples, int maxSize) throws IOException {
+        // Checked again by register; this just saves training for nothing
+        if (exists(id)) {
+            throw new IllegalArgumentException("Dictionary already exists: " + id);
+        }
+        List<byte[]> data = new ArrayList<>();
+        for (File sample : samples) {
+            if (sample.isFile() && sample.length() > 0) {
+                data.add(Files.readAllBytes(sample.toPath()));
+            }
+        }
+        byte[] dictionary = train(data, Math.min(maxSize, MAX_DICTIONARY_SIZE));
+        if (dictionary.length == 0) {
+            throw new IOException("Sample corpus has no repeated content to build a dictionary from");
+        }
+        register(id, dictionary);
+        return dictionary;
+    }
+
+    // Simplified COVER-style training: count in how many samples each 8-byte gram occurs, score
+    // fixed-size segments by the grams they cover, and greedily take the best segments. Grams of
+    // a chosen segment stop counting so the dictionary does not fill up with the same content.
+    static byte[] train(List<byte[]> samples, int maxSize) {
+        Map<Long, Integer> frequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<Long> seen = new HashSet<>();
+            for (int i = 0; i + GRAM <= sample.length; i++) {
+                seen.add(gram(sample, i));
+            }
+            for (Long g : seen) {
+                frequency.merge(g, 1, Integer::sum);
+            }
+        }
+
+        // Lazy greedy: scores only go down as grams are used up, so a candidate whose
+        // re-computed score still beats the next one in the queue is the true best
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) -> Long.compare(b.score, a.score));
+        Set<String> unique = new HashSet<>();
+        for (byte[] sample : samples) {
+            for (int start = 0; start < sample.length; start += SEGMENT) {
+                byte[] segment = Arrays.copyOfRange(sample, start, Math.min(sample.length, start + SEGMENT));
+                if (segment.length >= GRAM && unique.add(new String(segment, StandardCharsets.ISO_8859_1))) {
+                    long score = score(segment, frequency);
+                    if (score > 0) {
+                        queue.add(new Candidate(segment, score));
+                    }
+                }
+            }
+        }
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        while (size < maxSize && !queue.isEmpty()) {
+            Candidate top = queue.poll();
+            long score = score(top.segment, frequency);
+            if (score <= 0) continue;
+            if (!queue.isEmpty() && score < queue.peek().score) {
+                top.score = score;
+                queue.add(top);
+                continue;
+            }
+            for (int i = 0; i + GRAM <= top.segment.length; i++) {
+                frequency.remove(gram(top.segment, i));
+            }
+            chosen.add(top.segment);
+            size += top.segment.length;
+        }
+
+        // Best segments were picked first; put them at the end, closest to the data
+        byte[] dictionary = new byte[Math.min(size, maxSize)];
+        int pos = dictionary.length;
+        for (byte[] segment : chosen) {
+            int length = Math.min(segment.length, pos);
+            if (length == 0) break;
+            pos -= length;
+            System.arraycopy(segment, 0, dictionary, pos, length);
+        }
+        return dictionary;
+    }
+
+    private static class Candidate {
+        final byte[] segment;
+        long score;
+
+        Candidate(byte[] segment, long score) {
+            this.segment = segment;
+            this.score = score;
+        }
+    }
+
+    private static long score(byte[] segment, Map<Long, Integer> frequency) {
+        long score = 0;
+        for (int i = 0; i + GRAM <= segment.length; i++) {
+            Integer count = frequency.get(gram(segment, i));
+            // A gram seen in only one sample does not help other files
+            if (count != null && count > 1) {
+                score += count;
+            }
+        }
+        return score;
+    }
+
+    private static long gram(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < GRAM; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private void checkId(String id) {
+        if (id == null || !DICTIONARY_ID.matcher(id).matches()) {
+            throw new IllegalArgumentException("Invalid dictionary id: " + id);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.compressiontool;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+// A file or directory tree read in one scan, see TreeScanner, with the size and mtime of every
+// file taken from the attributes the scan already has. An operation scans once and uses the
+// result for its total size, its entries and its stats, instead of walking the tree for each.
+//
+// Names are archive entry names: the root's own name, then '/'-separated, e.g. docs/a/b.txt.
+public class FileTree {
+
+    public static class Node {
+        private final File file;
+        private final String name;
+        private final long size;
+        private final long lastModified;
+
+        Node(File file, String name, long size, long lastModified) {
+            this.file = file;
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public File getFile() { return file; }
+        public String getName() { return name; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+    }
+
+    private final List<Node> files = new ArrayList<>();
+    private final List<Node> directories = new ArrayList<>();
+    private long totalSize;
+
+    FileTree() {}
+
+    void addFile(Node file) {
+        files.add(file);
+        totalSize += file.getSize();
+    }
+
+    void addDirectory(Node directory) {
+        directories.add(directory);
+    }
+
+    // Regular files, depth first in listing order; for a single-file root, just the root
+    public List<Node> getFiles() {
+        return files;
+    }
+
+    // Includes the root when it is a directory
+    public List<Node> getDirectories() {
+        return directories;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+}
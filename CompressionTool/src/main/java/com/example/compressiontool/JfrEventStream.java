@@ -0,0 +1,100 @@
+package com.example.compressiontool;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Relays the OperationMonitor JFR events to Server-Sent Events subscribers. The in-process
+// RecordingStream only runs while someone is subscribed.
+@Component
+public class JfrEventStream {
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+    private RecordingStream stream;
+
+    public synchronized SseEmitter subscribe() throws IOException {
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> unsubscribe(emitter));
+        emitter.onTimeout(() -> unsubscribe(emitter));
+        emitter.onError(e -> unsubscribe(emitter));
+
+        // Operations that started before the subscription
+        for (OperationMonitor.Operation operation : OperationMonitor.inFlight()) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("operationId", operation.getId());
+            data.put("operation", operation.getType().name());
+            data.put("file", operation.getFile());
+            data.put("codec", OperationMonitor.codec(operation.getType()));
+            data.put("startedAt", operation.getStartedAt());
+            emitter.send(SseEmitter.event().name("started").data(data));
+        }
+        emitters.add(emitter);
+
+        if (stream == null) {
+            stream = new RecordingStream();
+            stream.enable(OperationMonitor.STARTED_EVENT);
+            stream.enable(OperationMonitor.OPERATION_EVENT);
+            stream.setMaxAge(Duration.ofSeconds(30));
+            stream.onEvent(OperationMonitor.STARTED_EVENT, event -> broadcast("started", started(event)));
+            stream.onEvent(OperationMonitor.OPERATION_EVENT, event -> broadcast("completed", completed(event)));
+            stream.startAsync();
+        }
+        return emitter;
+    }
+
+    private synchronized void unsubscribe(SseEmitter emitter) {
+        emitters.remove(emitter);
+        if (emitters.isEmpty() && stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private void broadcast(String name, Map<String, Object> data) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(data));
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static Map<String, Object> started(RecordedEvent event) {
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("operationId", event.getLong("operationId"));
+        data.put("operation", event.getString("operation"));
+        data.put("file", event.getString("file"));
+        data.put("codec", event.getString("codec"));
+        data.put("startedAt", event.getStartTime().toEpochMilli());
+        return data;
+    }
+
+    private static Map<String, Object> completed(RecordedEvent event) {
+        Map<String, Object> data = started(event);
+        data.put("durationMs", event.getDuration().toNanos() / 1e6);
+        data.put("bytesIn", event.getLong("bytesIn"));
+        data.put("bytesOut", event.getLong("bytesOut"));
+        data.put("fsyncMs", event.getDuration("fsyncTime").toNanos() / 1e6);
+        data.put("poolWaitMs", event.getDuration("poolWaitTime").toNanos() / 1e6);
+        return data;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+        emitters.forEach(SseEmitter::complete);
+    }
+}
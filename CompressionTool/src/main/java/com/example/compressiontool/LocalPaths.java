@@ -0,0 +1,71 @@
+package com.example.compressiontool;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Path mode, for clients on the same host as the server: operations take a path instead of
+// an uploaded file and write their result to an outputPath instead of returning it, so the
+// data never goes through HTTP. Only paths under one of compression.paths.allowed-roots are
+// accepted, after resolving symlinks; with no roots configured path mode is off.
+@Component
+public class LocalPaths {
+
+    private List<Path> roots = List.of();
+
+    @Value("${compression.paths.allowed-roots:}")
+    public void setAllowedRoots(String allowedRoots) throws IOException {
+        List<Path> resolved = new ArrayList<>();
+        for (String root : allowedRoots.split(",")) {
+            if (root.isBlank()) continue;
+            Path path = Path.of(root.trim()).toAbsolutePath().normalize();
+            resolved.add(Files.exists(path) ? path.toRealPath() : path);
+        }
+        this.roots = List.copyOf(resolved);
+    }
+
+    public List<String> getRoots() {
+        return roots.stream().map(Path::toString).toList();
+    }
+
+    // An existing file or directory to read
+    public File input(String path) throws IOException {
+        Path target = check(Path.of(path).toAbsolutePath().normalize(), path);
+        if (!Files.exists(target)) {
+            throw new IllegalArgumentException("Path not found: " + path);
+        }
+        return check(target.toRealPath(), path).toFile();
+    }
+
+    // A file or directory to create. It must not exist yet, and its parent must.
+    public File output(String path) throws IOException {
+        Path target = check(Path.of(path).toAbsolutePath().normalize(), path);
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IllegalArgumentException("Output path already exists: " + path);
+        }
+        Path parent = target.getParent();
+        if (parent == null || !Files.isDirectory(parent)) {
+            throw new IllegalArgumentException("Output directory not found: " + path);
+        }
+        return check(parent.toRealPath().resolve(target.getFileName()), path).toFile();
+    }
+
+    private Path check(Path target, String path) {
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("Path mode is disabled; set compression.paths.allowed-roots");
+        }
+        for (Path root : roots) {
+            if (target.startsWith(root)) {
+                return target;
+            }
+        }
+        throw new IllegalArgumentException("Path is outside the allowed roots: " + path);
+    }
+}
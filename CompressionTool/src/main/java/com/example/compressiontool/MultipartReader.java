@@ -0,0 +1,315 @@
+package com.example.compressiontool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Reads a multipart/form-data body part by part while it is still arriving, so an upload can be
+// fed to a codec as it comes in instead of being saved first. Each part's body is a stream that
+// ends at the next boundary; next() skips whatever of it was not read. Everything is read through
+// one buffer, and part bodies are handed out without copying them anywhere else.
+//
+// The whole body is limited to maxBytes; going over throws SizeLimitExceededException. A body
+// that is not valid multipart throws IllegalArgumentException, and one that ends early throws
+// EOFException.
+public class MultipartReader {
+
+    public static class SizeLimitExceededException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SizeLimitExceededException(long maxBytes) {
+            super("Upload is larger than the limit of " + maxBytes + " bytes");
+        }
+    }
+
+    public static class Part {
+        private final String name;
+        private final String fileName;
+        private final String contentType;
+        private final InputStream body;
+
+        Part(String name, String fileName, String contentType, InputStream body) {
+            this.name = name;
+            this.fileName = fileName;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        public String getName() { return name; }
+        // Null for a plain form field
+        public String getFileName() { return fileName; }
+        public String getContentType() { return contentType; }
+        public InputStream getBody() { return body; }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADERS_SIZE = 16 * 1024;
+    private static final int MAX_FIELD_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final long maxBytes;
+    // CRLF, "--", then the boundary; the first boundary has no CRLF, so the buffer starts with one
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int head;
+    private int tail;
+    // No delimiter starts before this; saves rescanning the buffer on every small read
+    private int scanFrom;
+    private long bytesRead;
+    private boolean eof;
+    private boolean finished;
+    private PartStream current;
+
+    public MultipartReader(InputStream in, String boundary, long maxBytes) {
+        if (boundary.isEmpty() || boundary.length() > 70) {
+            throw new IllegalArgumentException("Invalid multipart boundary");
+        }
+        this.in = in;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        buffer[0] = '\r';
+        buffer[1] = '\n';
+        tail = 2;
+        // The preamble, usually empty, reads as a part of its own
+        current = new PartStream();
+    }
+
+    // The boundary parameter of a multipart/form-data content type
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase().startsWith("multipart/form-data")) {
+            throw new IllegalArgumentException("Expected a multipart/form-data upload");
+        }
+        String boundary = parameter(contentType, "boundary");
+        if (boundary == null) {
+            throw new IllegalArgumentException("Multipart upload has no boundary");
+        }
+        return boundary;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    // The next part, or null after the last one
+    public Part next() throws IOException {
+        if (finished) return null;
+        current.skipRest();
+
+        // After a boundary: "--" ends the body, otherwise optional padding and CRLF
+        if (!require(2)) throw new EOFException("Multipart body ended after a boundary");
+        if (buffer[head] == '-' && buffer[head + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        String line = readLine();
+        if (!line.isBlank()) {
+            throw new IllegalArgumentException("Malformed multipart boundary");
+        }
+
+        String disposition = null;
+        String contentType = null;
+        int headersSize = 0;
+        while (!(line = readLine()).isEmpty()) {
+            headersSize += line.length();
+            if (headersSize > MAX_HEADERS_SIZE) {
+                throw new IllegalArgumentException("Multipart part headers are too large");
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) continue;
+            String header = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (header.equalsIgnoreCase("Content-Disposition")) {
+                disposition = value;
+            } else if (header.equalsIgnoreCase("Content-Type")) {
+                contentType = value;
+            }
+        }
+        if (disposition == null) {
+            throw new IllegalArgumentException("Multipart part has no Content-Disposition");
+        }
+        current = new PartStream();
+        return new Part(parameter(disposition, "name"), parameter(disposition, "filename"), contentType, current);
+    }
+
+    // Reads parts up to the first file, putting plain fields before it into fields; null if the
+    // body has no file part
+    public Part nextFile(Map<String, String> fields) throws IOException {
+        Part part;
+        while ((part = next()) != null) {
+            if (part.getFileName() != null) {
+                return part;
+            }
+            byte[] value = part.getBody().readNBytes(MAX_FIELD_SIZE + 1);
+            if (value.length > MAX_FIELD_SIZE) {
+                throw new IllegalArgumentException("Form field " + part.getName() + " is too large");
+            }
+            if (part.getName() != null) {
+                fields.put(part.getName(), new String(value, StandardCharsets.UTF_8));
+            }
+        }
+        return null;
+    }
+
+    // Reads the rest of the body, checking that it ends properly
+    public void finish() throws IOException {
+        while (next() != null) {
+            // Parts after the file are not used
+        }
+    }
+
+    // One part's body: everything up to the next delimiter
+    private class PartStream extends InputStream {
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int count = read(one, 0, 1);
+            return count == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (done) return -1;
+            if (len == 0) return 0;
+            while (true) {
+                int found = indexOfDelimiter();
+                if (found == head) {
+                    head += delimiter.length;
+                    done = true;
+                    return -1;
+                }
+                // Without a whole delimiter in the buffer, its last bytes may be the start of one
+                int available = found >= 0 ? found - head : tail - head - (delimiter.length - 1);
+                if (available > 0) {
+                    int count = Math.min(len, available);
+                    System.arraycopy(buffer, head, b, off, count);
+                    head += count;
+                    return count;
+                }
+                if (!fill()) {
+                    throw new EOFException("Multipart body ended inside a part");
+                }
+            }
+        }
+
+        void skipRest() throws IOException {
+            byte[] discard = new byte[8192];
+            while (read(discard, 0, discard.length) != -1) {
+                // Skipping
+            }
+        }
+    }
+
+    private int indexOfDelimiter() {
+        byte first = delimiter[0];
+        int last = tail - delimiter.length;
+        int i = Math.max(head, scanFrom);
+        outer:
+        for (; i <= last; i++) {
+            if (buffer[i] != first) continue;
+            for (int j = 1; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) continue outer;
+            }
+            scanFrom = i;
+            return i;
+        }
+        scanFrom = i;
+        return -1;
+    }
+
+    // A header line without its CRLF
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            for (int i = head; i < tail - 1; i++) {
+                if (buffer[i] == '\r' && buffer[i + 1] == '\n') {
+                    line.write(buffer, head, i - head);
+                    head = i + 2;
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            }
+            // Keep a trailing CR, it may be the start of the line end
+            int keep = tail > head && buffer[tail - 1] == '\r' ? 1 : 0;
+            line.write(buffer, head, tail - head - keep);
+            head = tail - keep;
+            if (line.size() > MAX_HEADERS_SIZE) {
+                throw new IllegalArgumentException("Multipart part headers are too large");
+            }
+            if (!fill()) {
+                throw new EOFException("Multipart body ended inside part headers");
+            }
+        }
+    }
+
+    private boolean require(int count) throws IOException {
+        while (tail - head < count) {
+            if (!fill()) return false;
+        }
+        return true;
+    }
+
+    // Moves what is left to the front of the buffer and reads more after it
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (head > 0) {
+            System.arraycopy(buffer, head, buffer, 0, tail - head);
+            tail -= head;
+            scanFrom = Math.max(0, scanFrom - head);
+            head = 0;
+        }
+        int count = in.read(buffer, tail, buffer.length - tail);
+        if (count == -1) {
+            eof = true;
+            return false;
+        }
+        bytesRead += count;
+        if (bytesRead > maxBytes) {
+            throw new SizeLimitExceededException(maxBytes);
+        }
+        tail += count;
+        return true;
+    }
+
+    // name=value or name="value" from a header value such as a Content-Disposition
+    private static String parameter(String header, String name) {
+        int i = 0;
+        int length = header.length();
+        while (i < length) {
+            int semicolon = header.indexOf(';', i);
+            if (semicolon < 0) return null;
+            i = semicolon + 1;
+            while (i < length && header.charAt(i) == ' ') i++;
+            int equals = header.indexOf('=', i);
+            if (equals < 0) return null;
+            String key = header.substring(i, equals).trim();
+            i = equals + 1;
+            String value;
+            if (i < length && header.charAt(i) == '"') {
+                StringBuilder quoted = new StringBuilder();
+                i++;
+                while (i < length && header.charAt(i) != '"') {
+                    char c = header.charAt(i);
+                    if (c == '\\' && i + 1 < length) {
+                        c = header.charAt(++i);
+                    }
+                    quoted.append(c);
+                    i++;
+                }
+                i++;
+                value = quoted.toString();
+            } else {
+                int end = header.indexOf(';', i);
+                value = header.substring(i, end < 0 ? length : end).trim();
+                i = end < 0 ? length : end;
+            }
+            if (key.equalsIgnoreCase(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,219 @@
+package com.example.compressiontool;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Tracks service operations while they run and emits JDK Flight Recorder events for them.
+// JFR events cost next to nothing unless a recording or RecordingStream has them enabled,
+// so they stay on in production: jcmd <pid> JFR.start, or GET /api/compression/operations/stream.
+public final class OperationMonitor {
+
+    public static final String STARTED_EVENT = "com.example.compressiontool.OperationStarted";
+    public static final String OPERATION_EVENT = "com.example.compressiontool.Operation";
+    public static final String BLOCK_EVENT = "com.example.compressiontool.Block";
+
+    @Name(STARTED_EVENT)
+    @Label("Compression Operation Started")
+    @Category("CompressionTool")
+    @StackTrace(false)
+    public static class StartedEvent extends Event {
+        @Label("Operation Id")
+        long operationId;
+        @Label("Operation")
+        String operation;
+        @Label("File")
+        String file;
+        @Label("Codec")
+        String codec;
+    }
+
+    @Name(OPERATION_EVENT)
+    @Label("Compression Operation")
+    @Category("CompressionTool")
+    @StackTrace(false)
+    public static class OperationEvent extends Event {
+        @Label("Operation Id")
+        long operationId;
+        @Label("Operation")
+        String operation;
+        @Label("File")
+        String file;
+        @Label("Codec")
+        String codec;
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+        @Label("Fsync Time")
+        @Timespan
+        long fsyncTime;
+        @Label("Pool Wait Time")
+        @Timespan
+        long poolWaitTime;
+    }
+
+    // One block of a block-parallel codec, run on the shared compression pool
+    @Name(BLOCK_EVENT)
+    @Label("Compression Block")
+    @Category("CompressionTool")
+    @StackTrace(false)
+    public static class BlockEvent extends Event {
+        @Label("Work")
+        String work;
+        @Label("Bytes In")
+        @DataAmount
+        long bytesIn;
+        @Label("Bytes Out")
+        @DataAmount
+        long bytesOut;
+        @Label("Queue Time")
+        @Timespan
+        long queueTime;
+    }
+
+    public static class Operation {
+        private final long id;
+        private final OperationType type;
+        private final String file;
+        private final long startedAt = System.currentTimeMillis();
+        private final String thread = Thread.currentThread().getName();
+        private final OperationEvent event = new OperationEvent();
+        private final ProgressTracker progress;
+        private volatile long poolWaitTime;
+
+        Operation(long id, OperationType type, String file, String progressId) {
+            this.id = id;
+            this.type = type;
+            this.file = file;
+            this.progress = new ProgressTracker(this, progressId, LISTENERS);
+        }
+
+        public long getId() { return id; }
+        public OperationType getType() { return type; }
+        public String getFile() { return file; }
+        public long getStartedAt() { return startedAt; }
+        public String getThread() { return thread; }
+        public OperationProgress getProgress() { return progress.snapshot(); }
+    }
+
+    private static final AtomicLong IDS = new AtomicLong();
+    private static final Map<Thread, Operation> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final List<ProgressListener> LISTENERS = new CopyOnWriteArrayList<>();
+    // Client-chosen id for the next operation started on this thread, see bindProgressId
+    private static final ThreadLocal<String> PROGRESS_ID = new ThreadLocal<>();
+
+    private OperationMonitor() {}
+
+    // Returns the start time to pass to recordActivity
+    public static long start(OperationType type, String file) {
+        String progressId = PROGRESS_ID.get();
+        PROGRESS_ID.remove();
+        Operation operation = new Operation(IDS.incrementAndGet(), type, file, progressId);
+        StartedEvent started = new StartedEvent();
+        if (started.shouldCommit()) {
+            started.operationId = operation.id;
+            started.operation = type.name();
+            started.file = file;
+            started.codec = codec(type);
+            started.commit();
+        }
+        operation.event.begin();
+        // An operation on this thread that failed never called finish; this replaces it
+        IN_FLIGHT.put(Thread.currentThread(), operation);
+        return PhaseTimings.startOperation();
+    }
+
+    public static void finish(long bytesIn, long bytesOut) {
+        Operation operation = IN_FLIGHT.remove(Thread.currentThread());
+        if (operation == null) return;
+        operation.progress.finish();
+        OperationEvent event = operation.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.operationId = operation.id;
+            event.operation = operation.type.name();
+            event.file = operation.file;
+            event.codec = codec(operation.type);
+            event.bytesIn = bytesIn;
+            event.bytesOut = bytesOut;
+            event.fsyncTime = PhaseTimings.operationPhases().getOrDefault(CompressionMetrics.FSYNC, 0L);
+            event.poolWaitTime = operation.poolWaitTime;
+            event.commit();
+        }
+    }
+
+    // Drops whatever the current thread left behind, e.g. after an operation threw
+    public static void clear() {
+        PROGRESS_ID.remove();
+        Operation operation = IN_FLIGHT.remove(Thread.currentThread());
+        if (operation != null) {
+            operation.progress.fail(null);
+        }
+    }
+
+    // Tags the next operation started on this thread, so a client can follow its progress
+    // by an id it chose before the request went out
+    public static void bindProgressId(String progressId) {
+        if (progressId == null || progressId.isBlank()) {
+            PROGRESS_ID.remove();
+        } else {
+            PROGRESS_ID.set(progressId);
+        }
+    }
+
+    // The tracker of the operation running on this thread
+    public static ProgressTracker progress() {
+        Operation operation = IN_FLIGHT.get(Thread.currentThread());
+        return operation != null ? operation.progress : ProgressTracker.NONE;
+    }
+
+    public static OperationProgress progress(String progressId) {
+        for (Operation operation : IN_FLIGHT.values()) {
+            if (progressId.equals(operation.progress.getProgressId())) {
+                return operation.progress.snapshot();
+            }
+        }
+        return null;
+    }
+
+    static void addProgressListener(ProgressListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    static void removeProgressListener(ProgressListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    // Called on the thread that runs the operation, after it collects a pool task's result
+    public static void addPoolWait(long nanos) {
+        Operation operation = IN_FLIGHT.get(Thread.currentThread());
+        if (operation != null) {
+            operation.poolWaitTime += nanos;
+        }
+    }
+
+    public static List<Operation> inFlight() {
+        List<Operation> operations = new ArrayList<>(IN_FLIGHT.values());
+        operations.sort((a, b) -> Long.compare(a.id, b.id));
+        return operations;
+    }
+
+    static String codec(OperationType type) {
+        String name = type.name();
+        return name.substring(name.indexOf('_') + 1);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.compressiontool;
+
+// A snapshot of one operation's progress. totalBytes is what the operation will read
+// (0 when unknown), so fraction and etaMillis are -1 until both it and a rate are known.
+public class OperationProgress {
+
+    private final long operationId;
+    private final String progressId;
+    private final OperationType operation;
+    private final String file;
+    private final String currentEntry;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long totalBytes;
+    private final long elapsedMillis;
+    private final boolean done;
+    private final String error;
+
+    public OperationProgress(long operationId, String progressId, OperationType operation, String file,
+                             String currentEntry, long bytesRead, long bytesWritten, long totalBytes,
+                             long elapsedMillis, boolean done, String error) {
+        this.operationId = operationId;
+        this.progressId = progressId;
+        this.operation = operation;
+        this.file = file;
+        this.currentEntry = currentEntry;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.totalBytes = totalBytes;
+        this.elapsedMillis = elapsedMillis;
+        this.done = done;
+        this.error = error;
+    }
+
+    public long getOperationId() { return operationId; }
+    public String getProgressId() { return progressId; }
+    public OperationType getOperation() { return operation; }
+    public String getFile() { return file; }
+    public String getCurrentEntry() { return currentEntry; }
+    public long getBytesRead() { return bytesRead; }
+    public long getBytesWritten() { return bytesWritten; }
+    public long getTotalBytes() { return totalBytes; }
+    public long getElapsedMillis() { return elapsedMillis; }
+    public boolean isDone() { return done; }
+    public String getError() { return error; }
+
+    public double getFraction() {
+        if (done && error == null) return 1.0;
+        if (totalBytes <= 0) return -1;
+        return Math.min(1.0, (double) bytesRead / totalBytes);
+    }
+
+    // Input bytes per second since the operation started
+    public double getBytesPerSecond() {
+        return elapsedMillis > 0 ? bytesRead * 1000.0 / elapsedMillis : 0;
+    }
+
+    public long getEtaMillis() {
+        if (done) return 0;
+        double rate = getBytesPerSecond();
+        if (totalBytes <= 0 || rate <= 0) return -1;
+        return (long) (Math.max(0, totalBytes - bytesRead) * 1000 / rate);
+    }
+}
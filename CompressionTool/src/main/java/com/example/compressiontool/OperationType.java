@@ -4,5 +4,10 @@ public enum OperationType {
     COMPRESS_GZIP,
     COMPRESS_ZIP,
     DECOMPRESS_GZIP,
-    DECOMPRESS_ZIP
+    DECOMPRESS_ZIP,
+    UPDATE_ZIP,
+    DEDUP_BACKUP,
+    DEDUP_RESTORE,
+    COMPRESS_SOLID,
+    DECOMPRESS_SOLID
 }
@@ -0,0 +1,117 @@
+package com.example.compressiontool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Block-parallel GZIP in the manner of pigz: the input is cut into fixed-size blocks, each
+// block is deflated into a complete GZIP member on the executor, and the members are written
+// in input order. A series of members is a valid GZIP stream, which gunzip, GZIPInputStream
+// and decompressGZIP all read back as one. Every block starts with an empty window; at the
+// default block size that costs well under one percent.
+public class ParallelGzip {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+    private ParallelGzip() {}
+
+    // Returns {bytes read, bytes written}
+    // At most two blocks per unit of parallelism are held in memory at once
+    public static long[] compress(InputStream in, OutputStream out, int level, ExecutorService executor,
+                                  int parallelism, int blockSize) throws IOException {
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        long bytesRead = 0;
+        long bytesWritten = 0;
+        try {
+            byte[] block = new byte[blockSize];
+            int length;
+            while ((length = in.readNBytes(block, 0, blockSize)) > 0) {
+                bytesRead += length;
+                byte[] data = block;
+                int dataLength = length;
+                pending.add(executor.submit(() -> member(data, dataLength, level)));
+                block = new byte[blockSize];
+                while (pending.size() >= 2 * parallelism) {
+                    bytesWritten += write(pending.poll(), out);
+                }
+            }
+            while (!pending.isEmpty()) {
+                bytesWritten += write(pending.poll(), out);
+            }
+            // Empty input still has to be a GZIP stream
+            if (bytesRead == 0) {
+                byte[] empty = member(block, 0, level);
+                out.write(empty);
+                bytesWritten += empty.length;
+            }
+            return new long[]{bytesRead, bytesWritten};
+        } finally {
+            // Only non-empty after a failure; the executor is shared, so stop our own work only
+            for (Future<byte[]> block : pending) {
+                block.cancel(true);
+            }
+        }
+    }
+
+    private static int write(Future<byte[]> block, OutputStream out) throws IOException {
+        long waitStart = System.nanoTime();
+        byte[] data = await(block);
+        OperationMonitor.addPoolWait(System.nanoTime() - waitStart);
+        out.write(data);
+        return data.length;
+    }
+
+    // Header without name or timestamp, raw deflate data, then CRC-32 and size
+    private static byte[] member(byte[] data, int length, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 2));
+        out.write(new byte[]{(byte) 0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xFF}, 0, 10);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        writeInt(out, crc.getValue());
+        writeInt(out, length);
+        return out.toByteArray();
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, long value) {
+        out.write((int) value);
+        out.write((int) (value >> 8));
+        out.write((int) (value >> 16));
+        out.write((int) (value >> 24));
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.compressiontool;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.SyncFailedException;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringJoiner;
+
+// Per-thread breakdown of where a request spent its time, returned to clients in the
+// Server-Timing header. Phases recorded inside a service operation (scan, fsync) are also
+// tracked per operation so they can be subtracted from that operation's compress time.
+public final class PhaseTimings {
+
+    private static final ThreadLocal<PhaseTimings> CURRENT = ThreadLocal.withInitial(PhaseTimings::new);
+
+    private final Map<String, Long> request = new LinkedHashMap<>();
+    private final Map<String, Long> operation = new LinkedHashMap<>();
+    private long requestStart = System.nanoTime();
+
+    private PhaseTimings() {}
+
+    public static void beginRequest() {
+        PhaseTimings timings = CURRENT.get();
+        timings.request.clear();
+        timings.operation.clear();
+        timings.requestStart = System.nanoTime();
+    }
+
+    public static void endRequest() {
+        CURRENT.remove();
+    }
+
+    // Returns the start time to pass to recordActivity
+    public static long startOperation() {
+        CURRENT.get().operation.clear();
+        return System.nanoTime();
+    }
+
+    public static void record(String phase, long nanos) {
+        CURRENT.get().request.merge(phase, nanos, Long::sum);
+    }
+
+    // A phase that happens inside a service operation
+    public static void recordNested(String phase, long nanos) {
+        PhaseTimings timings = CURRENT.get();
+        timings.request.merge(phase, nanos, Long::sum);
+        timings.operation.merge(phase, nanos, Long::sum);
+    }
+
+    public static Map<String, Long> operationPhases() {
+        return new LinkedHashMap<>(CURRENT.get().operation);
+    }
+
+    public static Map<String, Long> requestPhases() {
+        return new LinkedHashMap<>(CURRENT.get().request);
+    }
+
+    // e.g. "upload;dur=12.4, compress;dur=310.0, fsync;dur=41.7, persist;dur=88.2, total;dur=455.1"
+    public static String toServerTiming() {
+        PhaseTimings timings = CURRENT.get();
+        StringJoiner header = new StringJoiner(", ");
+        for (Map.Entry<String, Long> phase : timings.request.entrySet()) {
+            header.add(entry(phase.getKey(), phase.getValue()));
+        }
+        header.add(entry("total", System.nanoTime() - timings.requestStart));
+        return header.toString();
+    }
+
+    public static void sync(FileDescriptor fd) throws SyncFailedException {
+        long start = System.nanoTime();
+        fd.sync();
+        recordNested(CompressionMetrics.FSYNC, System.nanoTime() - start);
+    }
+
+    public static void force(FileChannel channel) throws IOException {
+        long start = System.nanoTime();
+        channel.force(true);
+        recordNested(CompressionMetrics.FSYNC, System.nanoTime() - start);
+    }
+
+    private static String entry(String name, long nanos) {
+        return String.format(Locale.ROOT, "%s;dur=%.1f", name, nanos / 1_000_000.0);
+    }
+}
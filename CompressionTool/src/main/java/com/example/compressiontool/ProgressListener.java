@@ -0,0 +1,10 @@
+package com.example.compressiontool;
+
+// Receives byte-level progress for running operations. Called on the thread doing the work,
+// at most every ProgressTracker.PUBLISH_INTERVAL_MILLIS per operation plus once when it ends,
+// so implementations must be quick and must not throw.
+@FunctionalInterface
+public interface ProgressListener {
+
+    void onProgress(OperationProgress progress);
+}
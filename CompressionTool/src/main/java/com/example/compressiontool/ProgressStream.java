@@ -0,0 +1,87 @@
+package com.example.compressiontool;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Sends the progress of one operation as Server-Sent Events. The client picks a progress id,
+// subscribes to GET /api/compression/progress/{id} and then passes the same id as the
+// progressId parameter of the operation; the stream completes when that operation ends.
+@Component
+public class ProgressStream implements ProgressListener {
+
+    // Also bounds how long a subscription whose operation never starts is kept around
+    private static final long TIMEOUT_MILLIS = Duration.ofHours(1).toMillis();
+
+    @Autowired
+    private CompressionService compressionService;
+
+    private final Map<String, List<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void register() {
+        compressionService.addProgressListener(this);
+    }
+
+    public SseEmitter subscribe(String progressId) throws IOException {
+        SseEmitter emitter = new SseEmitter(TIMEOUT_MILLIS);
+        emitter.onCompletion(() -> unsubscribe(progressId, emitter));
+        emitter.onTimeout(() -> unsubscribe(progressId, emitter));
+        emitter.onError(e -> unsubscribe(progressId, emitter));
+        emitters.computeIfAbsent(progressId, id -> new CopyOnWriteArrayList<>()).add(emitter);
+
+        // The operation may already be running. Otherwise a comment still gets the response
+        // headers out now, which tells the client its subscription is in place.
+        OperationProgress current = OperationMonitor.progress(progressId);
+        if (current != null) {
+            emitter.send(SseEmitter.event().name("progress").data(current));
+        } else {
+            emitter.send(SseEmitter.event().comment("subscribed"));
+        }
+        return emitter;
+    }
+
+    @Override
+    public void onProgress(OperationProgress progress) {
+        if (progress.getProgressId() == null) return;
+        List<SseEmitter> subscribers = progress.isDone()
+                ? emitters.remove(progress.getProgressId())
+                : emitters.get(progress.getProgressId());
+        if (subscribers == null) return;
+
+        String name = !progress.isDone() ? "progress" : progress.getError() == null ? "done" : "failed";
+        for (SseEmitter emitter : subscribers) {
+            try {
+                emitter.send(SseEmitter.event().name(name).data(progress));
+                if (progress.isDone()) {
+                    emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private void unsubscribe(String progressId, SseEmitter emitter) {
+        emitters.computeIfPresent(progressId, (id, list) -> {
+            list.remove(emitter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    @PreDestroy
+    public void close() {
+        compressionService.removeProgressListener(this);
+        emitters.values().forEach(list -> list.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.compressiontool;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts the bytes one operation reads and writes and hands throttled snapshots to the
+// registered ProgressListeners. Every operation gets one from OperationMonitor.start; code
+// running outside an operation gets NONE, which counts nothing.
+public class ProgressTracker {
+
+    public static final long PUBLISH_INTERVAL_MILLIS = 200;
+
+    static final ProgressTracker NONE = new ProgressTracker(null, null, List.of());
+
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MILLIS);
+
+    private final OperationMonitor.Operation operation;
+    private final String progressId;
+    private final List<ProgressListener> listeners;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong lastPublish = new AtomicLong(startNanos);
+    private volatile long totalBytes;
+    private volatile String currentEntry;
+    private volatile boolean done;
+
+    ProgressTracker(OperationMonitor.Operation operation, String progressId, List<ProgressListener> listeners) {
+        this.operation = operation;
+        this.progressId = progressId;
+        this.listeners = listeners;
+    }
+
+    public String getProgressId() {
+        return progressId;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public void setEntry(String entry) {
+        this.currentEntry = entry;
+    }
+
+    public void addRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+        maybePublish();
+    }
+
+    public void addWritten(long bytes) {
+        bytesWritten.addAndGet(bytes);
+        maybePublish();
+    }
+
+    public InputStream countRead(InputStream in) {
+        if (operation == null) return in;
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int value = super.read();
+                if (value != -1) addRead(1);
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+                if (count > 0) addRead(count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                if (skipped > 0) addRead(skipped);
+                return skipped;
+            }
+        };
+    }
+
+    public OutputStream countWritten(OutputStream out) {
+        if (operation == null) return out;
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                addWritten(1);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                out.write(buffer, offset, length);
+                addWritten(length);
+            }
+        };
+    }
+
+    public OperationProgress snapshot() {
+        return snapshot(null);
+    }
+
+    void finish() {
+        complete(null);
+    }
+
+    void fail(String error) {
+        complete(error == null ? "Operation failed" : error);
+    }
+
+    private void complete(String error) {
+        if (operation == null || done) return;
+        done = true;
+        publish(snapshot(error));
+    }
+
+    private OperationProgress snapshot(String error) {
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (operation == null) {
+            return new OperationProgress(0, null, null, null, null, 0, 0, 0, elapsed, done, error);
+        }
+        return new OperationProgress(operation.getId(), progressId, operation.getType(), operation.getFile(),
+                currentEntry, bytesRead.get(), bytesWritten.get(), totalBytes, elapsed, done, error);
+    }
+
+    private void maybePublish() {
+        if (operation == null || listeners.isEmpty()) return;
+        long now = System.nanoTime();
+        long last = lastPublish.get();
+        // Only one thread wins each interval, so block workers never publish concurrently
+        if (now - last >= PUBLISH_INTERVAL_NANOS && lastPublish.compareAndSet(last, now)) {
+            publish(snapshot(null));
+        }
+    }
+
+    private void publish(OperationProgress progress) {
+        for (ProgressListener listener : listeners) {
+            try {
+                listener.onProgress(progress);
+            } catch (RuntimeException e) {
+                // A broken listener must not fail the operation it is watching
+            }
+        }
+    }
+}
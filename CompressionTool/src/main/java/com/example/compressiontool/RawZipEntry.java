@@ -0,0 +1,65 @@
+package com.example.compressiontool;
+
+import java.nio.charset.StandardCharsets;
+
+// One entry of an existing ZIP archive as it sits on disk, so it can be copied
+// into a new archive without inflating and re-deflating its data.
+public class RawZipEntry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final int dosTime;
+    private final long localHeaderOffset;
+    private final byte[] centralRecord;
+    private final byte[] extra;
+
+    // Length of the local header, data and optional data descriptor in the source file
+    private long rawLength;
+
+    public RawZipEntry(String name, int method, long crc, long compressedSize, long size, int dosTime,
+                       long localHeaderOffset, byte[] centralRecord, byte[] extra) {
+        this.name = name;
+        this.method = method;
+        this.crc = crc;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.dosTime = dosTime;
+        this.localHeaderOffset = localHeaderOffset;
+        this.centralRecord = centralRecord;
+        this.extra = extra;
+    }
+
+    public String getName() { return name; }
+    public int getMethod() { return method; }
+    public long getCrc() { return crc; }
+    public long getCompressedSize() { return compressedSize; }
+    public long getSize() { return size; }
+    public int getDosTime() { return dosTime; }
+    public long getLocalHeaderOffset() { return localHeaderOffset; }
+    public byte[] getCentralRecord() { return centralRecord; }
+    public byte[] getExtra() { return extra; }
+
+    public long getRawLength() { return rawLength; }
+    void setRawLength(long rawLength) { this.rawLength = rawLength; }
+
+    // Id of the preset dictionary the entry was deflated with, or null
+    public String getDictionaryId() {
+        int pos = 0;
+        while (pos + 4 <= extra.length) {
+            int headerId = (extra[pos] & 0xFF) | (extra[pos + 1] & 0xFF) << 8;
+            int length = (extra[pos + 2] & 0xFF) | (extra[pos + 3] & 0xFF) << 8;
+            if (headerId == RawZipWriter.DICTIONARY_EXTRA_ID && pos + 4 + length <= extra.length) {
+                return new String(extra, pos + 4, length, StandardCharsets.UTF_8);
+            }
+            pos += 4 + length;
+        }
+        return null;
+    }
+
+    public boolean isDirectory() { return name.endsWith("/"); }
+
+    public long getTime() { return RawZipWriter.dosToJavaTime(dosTime); }
+}
@@ -0,0 +1,118 @@
+package com.example.compressiontool;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Reads the central directory of an existing ZIP file without touching entry data.
+public class RawZipReader {
+
+    static final int LOCAL_HEADER_SIG = 0x04034b50;
+    static final int CENTRAL_HEADER_SIG = 0x02014b50;
+    static final int END_OF_CENTRAL_DIR_SIG = 0x06054b50;
+
+    private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+
+    private RawZipReader() {}
+
+    public static List<RawZipEntry> readEntries(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        int tailSize = (int) Math.min(fileSize, END_OF_CENTRAL_DIR_SIZE + MAX_COMMENT_SIZE);
+        ByteBuffer tail = readFully(channel, fileSize - tailSize, tailSize);
+
+        int eocd = -1;
+        for (int i = tailSize - END_OF_CENTRAL_DIR_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_OF_CENTRAL_DIR_SIG) {
+                eocd = i;
+                break;
+            }
+        }
+        if (eocd < 0) {
+            throw new IOException("Not a ZIP file: end of central directory not found");
+        }
+
+        int totalEntries = Short.toUnsignedInt(tail.getShort(eocd + 10));
+        long centralDirSize = Integer.toUnsignedLong(tail.getInt(eocd + 12));
+        long centralDirOffset = Integer.toUnsignedLong(tail.getInt(eocd + 16));
+        if (totalEntries == 0xFFFF || centralDirOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 archives are not supported");
+        }
+
+        ByteBuffer central = readFully(channel, centralDirOffset, (int) centralDirSize);
+        List<RawZipEntry> entries = new ArrayList<>(totalEntries);
+        int pos = 0;
+        for (int i = 0; i < totalEntries; i++) {
+            if (central.getInt(pos) != CENTRAL_HEADER_SIG) {
+                throw new IOException("Corrupt central directory at entry " + i);
+            }
+            int method = Short.toUnsignedInt(central.getShort(pos + 10));
+            int dosTime = central.getInt(pos + 12);
+            long crc = Integer.toUnsignedLong(central.getInt(pos + 16));
+            long compressedSize = Integer.toUnsignedLong(central.getInt(pos + 20));
+            long size = Integer.toUnsignedLong(central.getInt(pos + 24));
+            int nameLength = Short.toUnsignedInt(central.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(central.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(central.getShort(pos + 32));
+            long localHeaderOffset = Integer.toUnsignedLong(central.getInt(pos + 42));
+            if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                throw new IOException("ZIP64 archives are not supported");
+            }
+
+            int recordLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            byte[] record = new byte[recordLength];
+            central.get(pos, record);
+            byte[] nameBytes = new byte[nameLength];
+            central.get(pos + CENTRAL_HEADER_SIZE, nameBytes);
+            byte[] extra = new byte[extraLength];
+            central.get(pos + CENTRAL_HEADER_SIZE + nameLength, extra);
+
+            // Names are decoded as UTF-8 like ZipFile does by default
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+            entries.add(new RawZipEntry(name, method, crc, compressedSize, size, dosTime,
+                    localHeaderOffset, record, extra));
+            pos += recordLength;
+        }
+
+        // An entry spans from its local header up to the next local header (or the central
+        // directory), which covers any data descriptor without having to parse it
+        List<RawZipEntry> byOffset = new ArrayList<>(entries);
+        byOffset.sort(Comparator.comparingLong(RawZipEntry::getLocalHeaderOffset));
+        for (int i = 0; i < byOffset.size(); i++) {
+            long end = i + 1 < byOffset.size() ? byOffset.get(i + 1).getLocalHeaderOffset() : centralDirOffset;
+            byOffset.get(i).setRawLength(end - byOffset.get(i).getLocalHeaderOffset());
+        }
+        return entries;
+    }
+
+    // Offset of the first byte of compressed data for the entry
+    public static long dataOffset(FileChannel channel, RawZipEntry entry) throws IOException {
+        ByteBuffer header = readFully(channel, entry.getLocalHeaderOffset(), LOCAL_HEADER_SIZE);
+        if (header.getInt(0) != LOCAL_HEADER_SIG) {
+            throw new IOException("Corrupt local header for entry " + entry.getName());
+        }
+        int nameLength = Short.toUnsignedInt(header.getShort(26));
+        int extraLength = Short.toUnsignedInt(header.getShort(28));
+        return entry.getLocalHeaderOffset() + LOCAL_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new EOFException("Unexpected end of ZIP file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
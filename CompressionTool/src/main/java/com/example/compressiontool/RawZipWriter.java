@@ -0,0 +1,239 @@
+package com.example.compressiontool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+// Writes a ZIP file entry by entry. Entries from an existing archive are copied as raw
+// bytes with FileChannel.transferTo; only new entries go through the Deflater.
+public class RawZipWriter implements AutoCloseable {
+
+    private static final int DATA_DESCRIPTOR_SIG = 0x08074b50;
+    private static final int VERSION = 20;
+    // Data descriptor follows the data (sizes unknown up front), names are UTF-8
+    private static final int FLAGS = 0x0008 | 0x0800;
+    private static final long MAX_ZIP32 = 0xFFFFFFFFL;
+    static final int DICTIONARY_EXTRA_ID = 0x4443;
+
+    private final FileChannel out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final byte[] buffer = new byte[8192];
+    private final byte[] deflated = new byte[8192];
+    private int entryCount = 0;
+
+    public RawZipWriter(FileChannel out) {
+        this.out = out;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public void copyEntry(FileChannel source, RawZipEntry entry) throws IOException {
+        long offset = out.position();
+        if (offset > MAX_ZIP32) {
+            throw new IOException("Archive too large (ZIP64 not supported)");
+        }
+        long position = entry.getLocalHeaderOffset();
+        long remaining = entry.getRawLength();
+        while (remaining > 0) {
+            long transferred = source.transferTo(position, remaining, out);
+            if (transferred <= 0) {
+                throw new IOException("Could not copy entry " + entry.getName());
+            }
+            position += transferred;
+            remaining -= transferred;
+        }
+
+        // Reuse the original central record, only the local header offset moves
+        byte[] record = entry.getCentralRecord().clone();
+        ByteBuffer.wrap(record).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) offset);
+        centralDirectory.write(record);
+        entryCount++;
+    }
+
+    public void addEntry(String name, File file, int level) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file)) {
+            addEntry(name, fis, file.lastModified(), level);
+        }
+    }
+
+    public void addEntry(String name, InputStream in, long time, int level) throws IOException {
+        addEntry(name, in, time, level, null, null);
+    }
+
+    // With a dictionary the entry is deflated against it and the dictionary id is stored in
+    // an extra field, so only decompressZIP (not a plain unzip) can read the entry back
+    public void addEntry(String name, InputStream in, long time, int level, String dictionaryId, byte[] dictionary)
+            throws IOException {
+        long offset = out.position();
+        if (offset > MAX_ZIP32) {
+            throw new IOException("Archive too large (ZIP64 not supported)");
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int dosTime = javaToDosTime(time);
+        byte[] extra = dictionaryId != null ? dictionaryExtra(dictionaryId) : new byte[0];
+
+        ByteBuffer header = ByteBuffer.allocate(30 + nameBytes.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(RawZipReader.LOCAL_HEADER_SIG);
+        header.putShort((short) VERSION);
+        header.putShort((short) FLAGS);
+        header.putShort((short) ZipEntry.DEFLATED);
+        header.putInt(dosTime);
+        header.putInt(0);   // crc, size and compressed size go into the data descriptor
+        header.putInt(0);
+        header.putInt(0);
+        header.putShort((short) nameBytes.length);
+        header.putShort((short) extra.length);
+        header.put(nameBytes);
+        header.put(extra);
+        writeFully(header.flip());
+
+        CRC32 crc = new CRC32();
+        Deflater deflater = new Deflater(level, true);
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        long size = 0;
+        long compressedSize = 0;
+        try {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, bytesRead);
+                size += bytesRead;
+                deflater.setInput(buffer, 0, bytesRead);
+                while (!deflater.needsInput()) {
+                    compressedSize += drain(deflater);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressedSize += drain(deflater);
+            }
+        } finally {
+            deflater.end();
+        }
+        if (size > MAX_ZIP32 || compressedSize > MAX_ZIP32) {
+            throw new IOException("Entry too large (ZIP64 not supported): " + name);
+        }
+
+        ByteBuffer descriptor = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        descriptor.putInt(DATA_DESCRIPTOR_SIG);
+        descriptor.putInt((int) crc.getValue());
+        descriptor.putInt((int) compressedSize);
+        descriptor.putInt((int) size);
+        writeFully(descriptor.flip());
+
+        ByteBuffer record = ByteBuffer.allocate(46 + nameBytes.length + extra.length).order(ByteOrder.LITTLE_ENDIAN);
+        record.putInt(RawZipReader.CENTRAL_HEADER_SIG);
+        record.putShort((short) VERSION);
+        record.putShort((short) VERSION);
+        record.putShort((short) FLAGS);
+        record.putShort((short) ZipEntry.DEFLATED);
+        record.putInt(dosTime);
+        record.putInt((int) crc.getValue());
+        record.putInt((int) compressedSize);
+        record.putInt((int) size);
+        record.putShort((short) nameBytes.length);
+        record.putShort((short) extra.length);
+        record.putShort((short) 0);   // comment
+        record.putShort((short) 0);   // disk number
+        record.putShort((short) 0);   // internal attributes
+        record.putInt(0);             // external attributes
+        record.putInt((int) offset);
+        record.put(nameBytes);
+        record.put(extra);
+        centralDirectory.write(record.array());
+        entryCount++;
+    }
+
+    public void finish() throws IOException {
+        if (entryCount > 0xFFFF) {
+            throw new IOException("Too many entries (ZIP64 not supported): " + entryCount);
+        }
+        long centralDirOffset = out.position();
+        byte[] central = centralDirectory.toByteArray();
+        writeFully(ByteBuffer.wrap(central));
+
+        ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+        end.putInt(RawZipReader.END_OF_CENTRAL_DIR_SIG);
+        end.putShort((short) 0);
+        end.putShort((short) 0);
+        end.putShort((short) entryCount);
+        end.putShort((short) entryCount);
+        end.putInt(central.length);
+        end.putInt((int) centralDirOffset);
+        end.putShort((short) 0);
+        writeFully(end.flip());
+        PhaseTimings.force(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private static byte[] dictionaryExtra(String dictionaryId) {
+        byte[] id = dictionaryId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer extra = ByteBuffer.allocate(4 + id.length).order(ByteOrder.LITTLE_ENDIAN);
+        extra.putShort((short) DICTIONARY_EXTRA_ID);
+        extra.putShort((short) id.length);
+        extra.put(id);
+        return extra.array();
+    }
+
+    private int drain(Deflater deflater) throws IOException {
+        int count = deflater.deflate(deflated);
+        if (count > 0) {
+            writeFully(ByteBuffer.wrap(deflated, 0, count));
+        }
+        return count;
+    }
+
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            out.write(data);
+        }
+    }
+
+    static int javaToDosTime(long time) {
+        LocalDateTime ldt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+        if (ldt.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (ldt.getYear() - 1980) << 25
+                | ldt.getMonthValue() << 21
+                | ldt.getDayOfMonth() << 16
+                | ldt.getHour() << 11
+                | ldt.getMinute() << 5
+                | ldt.getSecond() >> 1;
+    }
+
+    static long dosToJavaTime(int dosTime) {
+        try {
+            LocalDateTime ldt = LocalDateTime.of(
+                    ((dosTime >> 25) & 0x7f) + 1980,
+                    Math.max(1, (dosTime >> 21) & 0x0f),
+                    Math.max(1, (dosTime >> 16) & 0x1f),
+                    (dosTime >> 11) & 0x1f,
+                    (dosTime >> 5) & 0x3f,
+                    (dosTime << 1) & 0x3e);
+            return ldt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeException e) {
+            return -1;
+        }
+    }
+}
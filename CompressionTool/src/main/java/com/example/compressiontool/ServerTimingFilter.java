@@ -0,0 +1,33 @@
+package com.example.compressiontool;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+// Starts a fresh PhaseTimings for each API request; ServerTimingAdvice writes it out.
+// Also drops any in-flight operation a failed request left on this thread.
+@Component
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        PhaseTimings.beginRequest();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            PhaseTimings.endRequest();
+            OperationMonitor.clear();
+        }
+    }
+}
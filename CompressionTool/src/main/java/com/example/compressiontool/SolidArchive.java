@@ -0,0 +1,517 @@
+package com.example.compressiontool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+// Solid archive: all files are concatenated into one logical stream, sorted by extension so
+// similar content sits together, and that stream is cut into fixed-size blocks that are each
+// deflated once. Blocks are independent, so they are compressed and inflated in parallel, and a
+// single file can be extracted by inflating only the blocks it spans.
+//
+// Layout: magic, blocks, deflated index, then the index offset and the magic again.
+public class SolidArchive {
+
+    public static final String EXTENSION = ".solid";
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024 * 1024;
+
+    private static final byte[] MAGIC = "CTSOLID1".getBytes(StandardCharsets.US_ASCII);
+    // Names are stored with an unsigned 16-bit length
+    private static final int MAX_NAME_LENGTH = 0xFFFF;
+
+    private SolidArchive() {}
+
+    public static class Entry {
+        private final String name;
+        private final boolean directory;
+        private final long offset;
+        private final long size;
+        private final long lastModified;
+        private final long crc;
+
+        Entry(String name, boolean directory, long offset, long size, long lastModified, long crc) {
+            this.name = name;
+            this.directory = directory;
+            this.offset = offset;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.crc = crc;
+        }
+
+        public String getName() { return name; }
+        public boolean isDirectory() { return directory; }
+        public long getSize() { return size; }
+        public long getLastModified() { return lastModified; }
+        public long getCrc() { return crc; }
+    }
+
+    private static class Block {
+        final long position;
+        final int compressedLength;
+        final long start;
+        final int length;
+
+        Block(long position, int compressedLength, long start, int length) {
+            this.position = position;
+            this.compressedLength = compressedLength;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    // A block being deflated or inflated on the executor. Queue time is reported to the
+    // OperationMonitor once the result has been collected.
+    private static class PendingBlock {
+        final Future<byte[]> result;
+        final int length;
+        volatile long queueTime;
+
+        PendingBlock(ExecutorService executor, String work, int length, int bytesIn, Callable<byte[]> task) {
+            long submitted = System.nanoTime();
+            this.length = length;
+            this.result = executor.submit(() -> {
+                queueTime = System.nanoTime() - submitted;
+                OperationMonitor.BlockEvent event = new OperationMonitor.BlockEvent();
+                event.begin();
+                byte[] data = task.call();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.work = work;
+                    event.bytesIn = bytesIn;
+                    event.bytesOut = data.length;
+                    event.queueTime = queueTime;
+                    event.commit();
+                }
+                return data;
+            });
+        }
+
+        static PendingBlock deflate(ExecutorService executor, byte[] block, int length, int level) {
+            return new PendingBlock(executor, "deflate", length, length,
+                    () -> SolidArchive.deflate(length == block.length ? block : Arrays.copyOf(block, length), level));
+        }
+
+        byte[] await() throws IOException {
+            byte[] data = SolidArchive.await(result);
+            OperationMonitor.addPoolWait(queueTime);
+            return data;
+        }
+    }
+
+    private static class Index {
+        final List<Block> blocks = new ArrayList<>();
+        final List<Entry> entries = new ArrayList<>();
+    }
+
+    // Returns {files, blocks, uncompressed bytes}
+    // At most two blocks per unit of parallelism are held in memory at once
+    public static long[] create(FileTree tree, File dest, int level, ExecutorService executor, int parallelism,
+                                int blockSize) throws IOException {
+
+        // Group by extension, then by name, so files with similar content share a deflate window
+        List<FileTree.Node> files = new ArrayList<>(tree.getFiles());
+        files.sort(Comparator.<FileTree.Node, String>comparing(file -> extension(file.getName()))
+                .thenComparing(file -> baseName(file.getName()))
+                .thenComparing(FileTree.Node::getName));
+
+        // Checked up front rather than when the index is written, after all the compression work
+        for (FileTree.Node file : files) {
+            checkNameLength(file.getName());
+        }
+        for (FileTree.Node directory : tree.getDirectories()) {
+            checkNameLength(directory.getName() + "/");
+        }
+
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(tree.getTotalSize());
+
+        Index index = new Index();
+        for (FileTree.Node directory : tree.getDirectories()) {
+            index.entries.add(new Entry(directory.getName() + "/", true, 0, 0, directory.getLastModified(), 0));
+        }
+        // Compressed blocks are written in order; at most two per thread are in flight
+        Deque<PendingBlock> pending = new ArrayDeque<>();
+        try (RandomAccessFile raf = new RandomAccessFile(dest, "rw")) {
+            raf.setLength(0);
+            raf.write(MAGIC);
+
+            long streamPosition = 0;
+            byte[] block = new byte[blockSize];
+            int blockLength = 0;
+
+            for (FileTree.Node file : files) {
+                CRC32 crc = new CRC32();
+                long offset = streamPosition + blockLength;
+                long size = 0;
+                progress.setEntry(file.getName());
+                try (InputStream in = progress.countRead(new FileInputStream(file.getFile()))) {
+                    int bytesRead;
+                    while ((bytesRead = in.read(block, blockLength, block.length - blockLength)) != -1) {
+                        crc.update(block, blockLength, bytesRead);
+                        blockLength += bytesRead;
+                        size += bytesRead;
+                        if (blockLength == block.length) {
+                            pending.add(PendingBlock.deflate(executor, block, blockLength, level));
+                            streamPosition += blockLength;
+                            block = new byte[blockSize];
+                            blockLength = 0;
+                            while (pending.size() >= 2 * parallelism) {
+                                writeBlock(raf, pending.poll(), index);
+                            }
+                        }
+                    }
+                }
+                index.entries.add(new Entry(file.getName(), false, offset, size, file.getLastModified(), crc.getValue()));
+            }
+            if (blockLength > 0) {
+                pending.add(PendingBlock.deflate(executor, block, blockLength, level));
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(raf, pending.poll(), index);
+            }
+
+            long indexOffset = raf.getFilePointer();
+            raf.write(deflate(writeIndex(index), level));
+            raf.writeLong(indexOffset);
+            raf.write(MAGIC);
+            PhaseTimings.sync(raf.getFD());
+            return new long[]{files.size(), index.blocks.size(), streamPosition + blockLength};
+        } finally {
+            // Only non-empty after a failure; the executor is shared, so stop our own work only
+            for (PendingBlock block : pending) {
+                block.result.cancel(true);
+            }
+        }
+    }
+
+    public static List<Entry> list(File archive) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r")) {
+            return readIndex(raf).entries;
+        }
+    }
+
+    // Returns {files, directories, bytes}
+    public static long[] extractAll(File archive, File destDir, ExecutorService executor, int parallelism)
+            throws IOException {
+        Path destPath = destDir.getCanonicalFile().toPath();
+        long fileCount = 0;
+        long dirCount = 0;
+        long totalSize = 0;
+        // Blocks are inflated ahead of the writer in parallel, two per thread
+        Deque<PendingBlock> inflated = new ArrayDeque<>();
+        ProgressTracker progress = OperationMonitor.progress();
+        progress.setTotalBytes(archive.length());
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r")) {
+            Index index = readIndex(raf);
+            List<Entry> entries = new ArrayList<>(index.entries);
+            entries.sort(Comparator.comparingLong(e -> e.offset));
+
+            int nextBlock = 0;
+            byte[] current = new byte[0];
+            int currentPos = 0;
+
+            for (Entry entry : entries) {
+                File outputFile = new File(destDir, entry.name);
+
+                // Security check for path traversal; Path.startsWith compares whole names
+                if (!outputFile.getCanonicalFile().toPath().startsWith(destPath)) {
+                    throw new IOException("Potential path traversal detected: " + entry.name);
+                }
+                if (entry.directory) {
+                    outputFile.mkdirs();
+                    dirCount++;
+                    continue;
+                }
+                outputFile.getParentFile().mkdirs();
+                progress.setEntry(entry.name);
+
+                CRC32 crc = new CRC32();
+                try (FileOutputStream fos = new FileOutputStream(outputFile)) {
+                    long remaining = entry.size;
+                    while (remaining > 0) {
+                        if (currentPos == current.length) {
+                            while (nextBlock < index.blocks.size() && inflated.size() < 2 * parallelism) {
+                                Block block = index.blocks.get(nextBlock++);
+                                byte[] compressed = readBlock(raf, block);
+                                progress.addRead(compressed.length);
+                                inflated.add(new PendingBlock(executor, "inflate", block.length, compressed.length,
+                                        () -> inflate(compressed, block.length)));
+                            }
+                            if (inflated.isEmpty()) {
+                                throw new EOFException("Solid archive is truncated");
+                            }
+                            current = inflated.poll().await();
+                            currentPos = 0;
+                        }
+                        int count = (int) Math.min(remaining, current.length - currentPos);
+                        fos.write(current, currentPos, count);
+                        progress.addWritten(count);
+                        crc.update(current, currentPos, count);
+                        currentPos += count;
+                        remaining -= count;
+                    }
+                    fos.flush();
+                    PhaseTimings.sync(fos.getFD());
+                }
+                if (crc.getValue() != entry.crc) {
+                    throw new ZipException("CRC mismatch for " + entry.name);
+                }
+                if (entry.lastModified > 0) {
+                    outputFile.setLastModified(entry.lastModified);
+                }
+                totalSize += entry.size;
+                fileCount++;
+            }
+        } finally {
+            for (PendingBlock block : inflated) {
+                block.result.cancel(true);
+            }
+        }
+        return new long[]{fileCount, dirCount, totalSize};
+    }
+
+    // Inflates only the blocks the entry spans. Returns the number of bytes written.
+    public static long extract(File archive, String name, OutputStream out) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(archive, "r")) {
+            Index index = readIndex(raf);
+            Entry entry = null;
+            for (Entry candidate : index.entries) {
+                if (!candidate.directory && candidate.name.equals(name)) {
+                    entry = candidate;
+                    break;
+                }
+            }
+            if (entry == null) {
+                throw new IOException("Entry not found: " + name);
+            }
+
+            CRC32 crc = new CRC32();
+            long position = entry.offset;
+            long remaining = entry.size;
+            int blockIndex = findBlock(index.blocks, position);
+            while (remaining > 0) {
+                if (blockIndex >= index.blocks.size()) {
+                    throw new EOFException("Solid archive is truncated");
+                }
+                Block block = index.blocks.get(blockIndex++);
+                byte[] data = inflate(readBlock(raf, block), block.length);
+                int from = (int) (position - block.start);
+                int count = (int) Math.min(remaining, data.length - from);
+                out.write(data, from, count);
+                crc.update(data, from, count);
+                position += count;
+                remaining -= count;
+            }
+            if (crc.getValue() != entry.crc) {
+                throw new ZipException("CRC mismatch for " + entry.name);
+            }
+            return entry.size;
+        }
+    }
+
+    public static boolean isSolidArchive(File file) {
+        try (InputStream in = new FileInputStream(file)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static String extension(String name) {
+        String fileName = name.substring(name.lastIndexOf('/') + 1);
+        int dot = fileName.lastIndexOf('.');
+        return dot > 0 ? fileName.substring(dot + 1).toLowerCase() : "";
+    }
+
+    private static void checkNameLength(String name) {
+        int length = name.getBytes(StandardCharsets.UTF_8).length;
+        if (length > MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Name is " + length + " bytes, solid archives allow at most "
+                    + MAX_NAME_LENGTH + ": " + name.substring(0, 64) + "...");
+        }
+    }
+
+    private static String baseName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    private static void writeBlock(RandomAccessFile raf, PendingBlock pending, Index index) throws IOException {
+        byte[] compressed = pending.await();
+        Block previous = index.blocks.isEmpty() ? null : index.blocks.get(index.blocks.size() - 1);
+        long start = previous == null ? 0 : previous.start + previous.length;
+        index.blocks.add(new Block(raf.getFilePointer(), compressed.length, start, pending.length));
+        raf.write(compressed);
+        OperationMonitor.progress().addWritten(compressed.length);
+    }
+
+    private static int findBlock(List<Block> blocks, long position) {
+        int low = 0;
+        int high = blocks.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (blocks.get(mid).start <= position) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    private static byte[] readBlock(RandomAccessFile raf, Block block) throws IOException {
+        byte[] compressed = new byte[block.compressedLength];
+        raf.seek(block.position);
+        raf.readFully(compressed);
+        return compressed;
+    }
+
+    private static byte[] writeIndex(Index index) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+            out.writeInt(index.blocks.size());
+            for (Block block : index.blocks) {
+                out.writeLong(block.position);
+                out.writeInt(block.compressedLength);
+                out.writeInt(block.length);
+            }
+            out.writeInt(index.entries.size());
+            for (Entry entry : index.entries) {
+                byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.writeBoolean(entry.directory);
+                out.writeLong(entry.offset);
+                out.writeLong(entry.size);
+                out.writeLong(entry.lastModified);
+                out.writeInt((int) entry.crc);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Index readIndex(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        byte[] magic = new byte[MAGIC.length];
+        if (length < 2L * MAGIC.length + 8) {
+            throw new ZipException("Not a solid archive");
+        }
+        raf.seek(0);
+        raf.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new ZipException("Not a solid archive");
+        }
+        raf.seek(length - MAGIC.length - 8);
+        long indexOffset = raf.readLong();
+        raf.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || indexOffset < MAGIC.length || indexOffset > length - MAGIC.length - 8) {
+            throw new ZipException("Solid archive index is missing or truncated");
+        }
+        byte[] compressed = new byte[(int) (length - MAGIC.length - 8 - indexOffset)];
+        raf.seek(indexOffset);
+        raf.readFully(compressed);
+
+        Index index = new Index();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new ByteArrayInputStream(inflate(compressed, -1))))) {
+            int blockCount = in.readInt();
+            long start = 0;
+            for (int i = 0; i < blockCount; i++) {
+                Block block = new Block(in.readLong(), in.readInt(), start, in.readInt());
+                index.blocks.add(block);
+                start += block.length;
+            }
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                byte[] name = new byte[in.readUnsignedShort()];
+                in.readFully(name);
+                index.entries.add(new Entry(new String(name, StandardCharsets.UTF_8), in.readBoolean(),
+                        in.readLong(), in.readLong(), in.readLong(), in.readInt() & 0xFFFFFFFFL));
+            }
+        }
+        return index;
+    }
+
+    private static byte[] deflate(byte[] data, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // A negative length means the size is not known up front
+    private static byte[] inflate(byte[] data, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length >= 0 ? length : data.length * 4);
+            byte[] buffer = new byte[64 * 1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new EOFException("Solid archive block is truncated");
+                }
+                out.write(buffer, 0, count);
+            }
+            if (length >= 0 && out.size() != length) {
+                throw new ZipException("Solid archive block has the wrong size");
+            }
+            return out.toByteArray();
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid solid archive block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
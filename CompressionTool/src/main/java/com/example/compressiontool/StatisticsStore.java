@@ -0,0 +1,147 @@
+package com.example.compressiontool;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+// The desktop counters shared by the UI, the interactive CLI, batch runs and watch jobs.
+// They live in a small file that every process maps into memory, and each update is one
+// atomic add on the mapped page, so concurrent processes never overwrite each other's counts
+// and nothing is rewritten per operation. The kernel owns the page, so an update survives
+// the process that made it even if that process is killed.
+//
+// Layout: an 8-byte magic, then one little-endian long per Counter at 8 + 8 * slot. The file
+// is created under a file lock and seeded once from the old compression_stats.properties.
+public class StatisticsStore {
+
+    public static final String DEFAULT_FILE = "compression_stats.dat";
+    public static final String LEGACY_FILE = "compression_stats.properties";
+
+    public enum Counter {
+        TOTAL_OPERATIONS(0, "totalOperations"),
+        TOTAL_BYTES_SAVED(1, "totalBytesSaved"),
+        FILES_COMPRESSED(2, "filesCompressed"),
+        FILES_DECOMPRESSED(3, "filesDecompressed");
+
+        private final int slot;
+        private final String legacyKey;
+
+        Counter(int slot, String legacyKey) {
+            this.slot = slot;
+            this.legacyKey = legacyKey;
+        }
+
+        int offset() {
+            return 8 + 8 * slot;
+        }
+    }
+
+    private static final long MAGIC = 0x3153544154535443L;   // "CTSTATS1", little-endian
+    // Room for more counters without changing the format
+    private static final int SIZE = 8 + 8 * 16;
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final ByteBuffer buffer;
+
+    private StatisticsStore(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public static StatisticsStore open() throws IOException {
+        return open(new File(DEFAULT_FILE), new File(LEGACY_FILE));
+    }
+
+    public static StatisticsStore open(File file, File legacyProperties) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Only the first process to get here initializes; the others wait and then see the magic
+            FileLock lock = channel.lock();
+            try {
+                if (channel.size() < SIZE) {
+                    channel.write(ByteBuffer.allocate(SIZE - (int) channel.size()), channel.size());
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+                StatisticsStore store = new StatisticsStore(buffer);
+                if ((long) LONGS.getVolatile(buffer, 0) != MAGIC) {
+                    store.seed(legacyProperties);
+                    LONGS.setVolatile(buffer, 0, MAGIC);
+                }
+                // The mapping stays valid after the channel is closed
+                return store;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    // The default file, or counts for this process only if it cannot be opened, e.g. in a
+    // read-only working directory
+    public static StatisticsStore openOrInMemory() {
+        try {
+            return open();
+        } catch (IOException e) {
+            System.err.println("Statistics will not be saved: " + e.getMessage());
+            return inMemory();
+        }
+    }
+
+    // For when the file cannot be opened: counts for this process only
+    public static StatisticsStore inMemory() {
+        return new StatisticsStore(ByteBuffer.allocateDirect(SIZE + 8).alignedSlice(8));
+    }
+
+    public long get(Counter counter) {
+        return (long) LONGS.getVolatile(buffer, counter.offset());
+    }
+
+    // Returns the new value
+    public long add(Counter counter, long delta) {
+        return (long) LONGS.getAndAdd(buffer, counter.offset(), delta) + delta;
+    }
+
+    // Each counter is updated on its own, so there is no instant at which all of them change
+    // together. The total goes last: a reader that reads it first, as the UI and CLI do, never
+    // sees an operation counted whose file count and bytes saved are not in yet.
+    public void recordCompression(long bytesSaved) {
+        add(Counter.FILES_COMPRESSED, 1);
+        add(Counter.TOTAL_BYTES_SAVED, bytesSaved);
+        add(Counter.TOTAL_OPERATIONS, 1);
+    }
+
+    public void recordDecompression() {
+        add(Counter.FILES_DECOMPRESSED, 1);
+        add(Counter.TOTAL_OPERATIONS, 1);
+    }
+
+    public void reset() {
+        for (Counter counter : Counter.values()) {
+            LONGS.setVolatile(buffer, counter.offset(), 0L);
+        }
+    }
+
+    private void seed(File legacyProperties) {
+        Properties props = new Properties();
+        try (FileInputStream fis = new FileInputStream(legacyProperties)) {
+            props.load(fis);
+        } catch (IOException e) {
+            // No previous statistics found, starting fresh
+        }
+        for (Counter counter : Counter.values()) {
+            long value;
+            try {
+                value = Long.parseLong(props.getProperty(counter.legacyKey, "0").trim());
+            } catch (NumberFormatException e) {
+                value = 0;
+            }
+            LONGS.setVolatile(buffer, counter.offset(), value);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.compressiontool;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+
+// Spring's multipart handling, except for the streaming endpoints: their bodies are left
+// unread for MultipartReader, instead of being saved to disk before the controller runs.
+// Replaces the resolver Spring Boot would otherwise configure.
+@Component("multipartResolver")
+public class StreamingMultipartResolver extends StandardServletMultipartResolver {
+
+    public static final String STREAM_PREFIX = "/api/compression/stream/";
+
+    @Override
+    public boolean isMultipart(HttpServletRequest request) {
+        return super.isMultipart(request) && !request.getRequestURI().startsWith(STREAM_PREFIX);
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.compressiontool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Builds a FileTree with a fork/join pool: every directory is a task that lists and stats its
+// own entries and forks one task per subdirectory, and idle workers steal subtrees from busy
+// ones. Listing and stat calls are latency bound, on network shares most of all, so several
+// run at once even on a single core.
+//
+// The running totals can be read from any thread while the scan is going, and a listener gets
+// them at most every PUBLISH_INTERVAL_MILLIS. cancel() stops the scan, as does interrupting the
+// thread waiting in scan(); either way scan() throws InterruptedIOException. A tree with more
+// than maxFiles files is refused with an IllegalArgumentException as soon as the limit is passed.
+public class TreeScanner {
+
+    public static final int DEFAULT_PARALLELISM = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    public static final long PUBLISH_INTERVAL_MILLIS = ProgressTracker.PUBLISH_INTERVAL_MILLIS;
+
+    public interface ScanListener {
+        void scanned(long files, long directories, long bytes);
+
+        // Unreadable directories and entries are skipped; this says which. Unlike scanned,
+        // it may be called from several workers at once.
+        default void failed(Path path, IOException e) {}
+    }
+
+    private static final long PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(PUBLISH_INTERVAL_MILLIS);
+
+    // One pool per parallelism, shared by every scan that asks for it, so a burst of scans does
+    // not start a burst of threads. Concurrent scans split the workers between them; idle
+    // workers time out, so a pool that is not in use holds no threads.
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private int parallelism = DEFAULT_PARALLELISM;
+    private long maxFiles = Long.MAX_VALUE;
+    private int maxDepth = Integer.MAX_VALUE;
+    private ScanListener listener;
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder directories = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLong lastPublish = new AtomicLong();
+    private volatile boolean cancelled;
+    private volatile boolean limitReached;
+
+    public TreeScanner parallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Scan parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    // 0 means no limit
+    public TreeScanner maxFiles(long maxFiles) {
+        this.maxFiles = maxFiles > 0 ? maxFiles : Long.MAX_VALUE;
+        return this;
+    }
+
+    // As in Files.walkFileTree: 0 is the root only, 1 its direct children
+    public TreeScanner maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public TreeScanner listener(ScanListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getDirectories() {
+        return directories.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    // A missing root gives an empty tree. Symlinks are followed; link cycles are skipped.
+    public FileTree scan(File root) throws IOException {
+        return run(root, true);
+    }
+
+    // Like scan, without keeping an entry per file, for when only the total matters
+    public long totalSize(File root) throws IOException {
+        run(root, false);
+        return getBytes();
+    }
+
+    private FileTree run(File root, boolean retain) throws IOException {
+        long start = System.nanoTime();
+        lastPublish.set(start);
+        Path rootPath = root.toPath();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+        } catch (IOException e) {
+            attrs = null;
+        }
+
+        FileTree tree = new FileTree();
+        if (attrs != null && attrs.isDirectory()) {
+            DirectoryTask task = new DirectoryTask(null, rootPath, root.getName(), attrs, 0, retain);
+            ForkJoinPool pool = POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+            ForkJoinTask<Void> result = pool.submit(task);
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                // The pool is shared, so the tasks are not interrupted; they see the flag and stop
+                cancel();
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+            if (limitReached) {
+                throw new IllegalArgumentException("Too many files: more than " + maxFiles);
+            }
+            if (cancelled) {
+                throw new InterruptedIOException("Scan cancelled");
+            }
+            if (retain) {
+                task.collect(tree);
+            }
+        } else if (attrs != null && attrs.isRegularFile()) {
+            tree.addFile(new FileTree.Node(root, root.getName(), attrs.size(), attrs.lastModifiedTime().toMillis()));
+            files.increment();
+            bytes.add(attrs.size());
+        }
+
+        if (listener != null) {
+            listener.scanned(getFiles(), getDirectories(), getBytes());
+        }
+        PhaseTimings.recordNested(CompressionMetrics.SCAN, System.nanoTime() - start);
+        return tree;
+    }
+
+    // One directory: its own files, and a subtask per subdirectory. The results stay in the
+    // tasks until the scan is done and are then collected depth first, in listing order.
+    // ForkJoinTask is Serializable, but a scan's tasks never leave the process
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient DirectoryTask parent;
+        private final transient Path dir;
+        private final String name;
+        private final transient BasicFileAttributes attrs;
+        private final int depth;
+        private final boolean retain;
+        private final transient List<FileTree.Node> dirFiles = new ArrayList<>();
+        private final transient List<DirectoryTask> subdirectories = new ArrayList<>();
+
+        DirectoryTask(DirectoryTask parent, Path dir, String name, BasicFileAttributes attrs, int depth,
+                      boolean retain) {
+            this.parent = parent;
+            this.retain = retain;
+            this.dir = dir;
+            this.name = name;
+            this.attrs = attrs;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            directories.increment();
+            if (depth >= maxDepth || cancelled) return;
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path entry : entries) {
+                    if (cancelled) return;
+                    BasicFileAttributes entryAttrs;
+                    try {
+                        entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        failed(entry, e);
+                        continue;
+                    }
+                    String entryName = name + "/" + entry.getFileName();
+                    if (entryAttrs.isDirectory()) {
+                        if (isAncestor(entryAttrs.fileKey())) {
+                            failed(entry, new FileSystemLoopException(entry.toString()));
+                            continue;
+                        }
+                        subdirectories.add(new DirectoryTask(this, entry, entryName, entryAttrs, depth + 1, retain));
+                    } else if (entryAttrs.isRegularFile()) {
+                        if (retain) {
+                            dirFiles.add(new FileTree.Node(entry.toFile(), entryName, entryAttrs.size(),
+                                    entryAttrs.lastModifiedTime().toMillis()));
+                        }
+                        files.increment();
+                        bytes.add(entryAttrs.size());
+                        if (files.sum() > maxFiles) {
+                            limitReached = true;
+                            cancelled = true;
+                            return;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                failed(dir, e);
+                return;
+            }
+            publish();
+            invokeAll(subdirectories);
+            if (!retain) {
+                subdirectories.clear();
+            }
+        }
+
+        // Symlinked directories can point back up the tree; without file keys there is no way to tell
+        private boolean isAncestor(Object fileKey) {
+            if (fileKey == null) return false;
+            for (DirectoryTask task = this; task != null; task = task.parent) {
+                if (fileKey.equals(task.attrs.fileKey())) return true;
+            }
+            return false;
+        }
+
+        void collect(FileTree tree) {
+            tree.addDirectory(new FileTree.Node(dir.toFile(), name, 0, attrs.lastModifiedTime().toMillis()));
+            for (FileTree.Node file : dirFiles) {
+                tree.addFile(file);
+            }
+            for (DirectoryTask subdirectory : subdirectories) {
+                subdirectory.collect(tree);
+            }
+        }
+    }
+
+    private void failed(Path path, IOException e) {
+        if (listener != null) {
+            listener.failed(path, e);
+        }
+    }
+
+    private void publish() {
+        if (listener == null) return;
+        long now = System.nanoTime();
+        long last = lastPublish.get();
+        // Only one worker wins each interval, so the listener is never called concurrently
+        if (now - last >= PUBLISH_INTERVAL_NANOS && lastPublish.compareAndSet(last, now)) {
+            listener.scanned(getFiles(), getDirectories(), getBytes());
+        }
+    }
+}
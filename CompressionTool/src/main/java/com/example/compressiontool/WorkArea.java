@@ -0,0 +1,327 @@
+package com.example.compressiontool;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The one place requests keep their uploads, intermediate files and results. Each request gets
+// a job directory, and a job is only created if its estimated size fits under the quota and
+// leaves the configured space free on the volume; otherwise the request is refused with an
+// InsufficientSpaceException instead of failing halfway through a write.
+//
+// A job is deleted when the request ends, unless it holds a result waiting to be downloaded;
+// that is deleted once the download stream is closed, or after the TTL if it never is. Job
+// directories left over from a previous run are removed at startup.
+//
+// Space that will be needed outside a job, such as a chunked upload still coming in, is
+// reserved and counts against the quota like a job until it is released. A job whose input size
+// is not known up front is charged as the input arrives, see Job.charge.
+//
+// The quota must fit a job for the largest upload accepted; startup fails otherwise, since such
+// uploads would be let in and then never run.
+@Component
+public class WorkArea {
+
+    // Roughly the input plus an output of about the same size; the real size replaces the
+    // estimate once the job's result is ready
+    public static final int ESTIMATE_FACTOR = 2;
+
+    // How much input Job.charge lets through per charge
+    public static final long CHARGE_STEP = 64L * 1024 * 1024;
+
+    public static class InsufficientSpaceException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public InsufficientSpaceException(String message) {
+            super(message);
+        }
+    }
+
+    public class Job implements AutoCloseable {
+        private final File directory;
+        private volatile long bytes;
+        private volatile long expiresAtNanos;
+        private volatile boolean kept;
+        private boolean deleted;
+
+        Job(File directory, long estimate) {
+            this.directory = directory;
+            this.bytes = estimate;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        // For an input whose size is only known once it has been read, e.g. a streaming upload
+        // without a Content-Length. The job is charged CHARGE_STEP of input at a time, just ahead
+        // of the bytes read, and read() throws InsufficientSpaceException as soon as the next
+        // step does not fit.
+        public InputStream charge(InputStream in) {
+            return new FilterInputStream(in) {
+                private long read;
+                private long charged;
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        counted(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int count = super.read(b, off, len);
+                    if (count > 0) {
+                        counted(count);
+                    }
+                    return count;
+                }
+
+                private void counted(int count) throws InsufficientSpaceException {
+                    read += count;
+                    while (read > charged) {
+                        grow(Job.this, CHARGE_STEP * ESTIMATE_FACTOR);
+                        charged += CHARGE_STEP;
+                    }
+                }
+            };
+        }
+
+        // Keeps the job past the end of the request; the returned callback, run when the
+        // download has been sent, deletes it
+        public synchronized Runnable keepForDownload() {
+            bytes = measure(directory.toPath());
+            expiresAtNanos = System.nanoTime() + ttlNanos;
+            kept = true;
+            return this::delete;
+        }
+
+        // End of the request: deletes the job unless keepForDownload was called
+        @Override
+        public synchronized void close() {
+            if (!kept) {
+                delete();
+            }
+        }
+
+        synchronized void delete() {
+            if (deleted) return;
+            deleted = true;
+            jobs.remove(directory.getName());
+            deleteTree(directory.toPath());
+        }
+    }
+
+    public class Reservation implements AutoCloseable {
+        private final long bytes;
+
+        Reservation(long bytes) {
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        // Safe to call more than once
+        @Override
+        public void close() {
+            reservations.remove(this);
+        }
+    }
+
+    @Autowired
+    private CompressionMetrics metrics;
+
+    private File directory = new File(System.getProperty("java.io.tmpdir"), "compression-work");
+    private long quotaBytes;
+    private long minFreeBytes;
+    private long ttlNanos;
+    private long maxUploadBytes;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final Set<Reservation> reservations = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService sweeper;
+
+    @Value("${compression.work.dir:${java.io.tmpdir}/compression-work}")
+    public void setDirectory(String directory) {
+        this.directory = new File(directory);
+    }
+
+    // Most bytes all jobs together may hold; 0 means no quota
+    @Value("${compression.work.quota-bytes:10737418240}")
+    public void setQuotaBytes(long quotaBytes) {
+        this.quotaBytes = quotaBytes > 0 ? quotaBytes : Long.MAX_VALUE;
+    }
+
+    // Space that must stay free on the work area's volume after a new job's estimate
+    @Value("${compression.work.min-free-bytes:1073741824}")
+    public void setMinFreeBytes(long minFreeBytes) {
+        if (minFreeBytes < 0) {
+            throw new IllegalArgumentException("Minimum free space must not be negative");
+        }
+        this.minFreeBytes = minFreeBytes;
+    }
+
+    // How long a result waits to be downloaded
+    @Value("${compression.work.ttl-minutes:60}")
+    public void setTtlMinutes(long ttlMinutes) {
+        if (ttlMinutes < 1) {
+            throw new IllegalArgumentException("Work area TTL must be at least a minute");
+        }
+        this.ttlNanos = TimeUnit.MINUTES.toNanos(ttlMinutes);
+    }
+
+    @Value("${compression.upload.max-size:4GB}")
+    public void setMaxUploadSize(DataSize maxUploadSize) {
+        this.maxUploadBytes = maxUploadSize.toBytes();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (maxUploadBytes > quotaBytes / ESTIMATE_FACTOR) {
+            throw new IllegalArgumentException("compression.work.quota-bytes (" + quotaBytes + ") must be at least "
+                    + ESTIMATE_FACTOR + " times compression.upload.max-size (" + maxUploadBytes + ")");
+        }
+        Files.createDirectories(directory.toPath());
+        try (Stream<Path> leftovers = Files.list(directory.toPath())) {
+            leftovers.forEach(WorkArea::deleteTree);
+        }
+        metrics.gauge("compression.workarea.bytes", "Bytes held in the work area, estimated for running jobs",
+                this::getBytesHeld);
+        metrics.gauge("compression.workarea.jobs", "Jobs in the work area, running or awaiting download",
+                jobs::size);
+        metrics.gauge("compression.workarea.free.bytes", "Usable space on the work area's volume",
+                () -> directory.getUsableSpace());
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "work-area-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    // inputBytes is what the request brings in, e.g. the upload size; it is scaled by
+    // ESTIMATE_FACTOR to cover the output
+    public Job create(long inputBytes) throws IOException {
+        return create(inputBytes, null);
+    }
+
+    // For a job whose input is already reserved, e.g. a chunked upload: the reservation is not
+    // counted twice. Its owner still releases it once the input has moved into the job.
+    public Job create(long inputBytes, Reservation input) throws IOException {
+        long estimate = Math.max(0, inputBytes) * ESTIMATE_FACTOR;
+        synchronized (this) {
+            long credit = input != null && reservations.contains(input) ? input.bytes : 0;
+            check(estimate, credit, "job");
+            String id = UUID.randomUUID().toString();
+            File jobDir = new File(directory, id);
+            Files.createDirectories(jobDir.toPath());
+            Job job = new Job(jobDir, estimate);
+            jobs.put(id, job);
+            return job;
+        }
+    }
+
+    // Adds to a running job's charge, under the same check as a new job
+    private synchronized void grow(Job job, long bytes) throws InsufficientSpaceException {
+        check(bytes, 0, "job");
+        job.bytes += bytes;
+    }
+
+    // Holds bytes against the quota until the reservation is closed
+    public synchronized Reservation reserve(long bytes) throws IOException {
+        long amount = Math.max(0, bytes);
+        check(amount, 0, "upload");
+        return hold(amount);
+    }
+
+    // Like reserve, without the check, for bytes already on disk, e.g. uploads from before a restart
+    public Reservation hold(long bytes) {
+        Reservation reservation = new Reservation(Math.max(0, bytes));
+        reservations.add(reservation);
+        return reservation;
+    }
+
+    public long getBytesHeld() {
+        long held = 0;
+        for (Job job : jobs.values()) {
+            held += job.bytes;
+        }
+        for (Reservation reservation : reservations) {
+            held += reservation.bytes;
+        }
+        return held;
+    }
+
+    // Called with the lock held; credit is what the caller already holds and is about to hand over
+    private void check(long estimate, long credit, String what) throws InsufficientSpaceException {
+        long held = getBytesHeld() - credit;
+        if (held + estimate > quotaBytes) {
+            metrics.increment("compression.workarea.rejected", "Jobs refused for lack of space");
+            throw new InsufficientSpaceException("Work area is full: " + held + " of " + quotaBytes
+                    + " bytes in use, this " + what + " needs about " + estimate);
+        }
+        long usable = directory.getUsableSpace();
+        if (usable - (estimate - credit) < minFreeBytes) {
+            metrics.increment("compression.workarea.rejected", "Jobs refused for lack of space");
+            throw new InsufficientSpaceException("Not enough disk space: " + usable
+                    + " bytes free, this " + what + " needs about " + estimate);
+        }
+    }
+
+    // Deletes results nobody downloaded within the TTL. Running jobs are left alone however
+    // long they take; they are deleted when their request ends.
+    private void sweep() {
+        long now = System.nanoTime();
+        for (Job job : List.copyOf(jobs.values())) {
+            if (job.kept && now - job.expiresAtNanos > 0) {
+                job.delete();
+                metrics.increment("compression.workarea.expired", "Results deleted without being downloaded");
+            }
+        }
+    }
+
+    private static long measure(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.mapToLong(file -> file.toFile().isFile() ? file.toFile().length() : 0).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteTree(Path path) {
+        try (Stream<Path> files = Files.walk(path)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(file -> file.toFile().delete());
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+}
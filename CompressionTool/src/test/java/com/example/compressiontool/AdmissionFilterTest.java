@@ -0,0 +1,193 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionFilterTest {
+
+    private AdmissionFilter filter;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    void setUp() {
+        filter = newFilter(100, 1, 30_000, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void requestsOverTheRateAreRejected() throws Exception {
+        filter.setRequestRate(1);
+        filter.setRequestBurst(2);
+        assertEquals(200, send("10.0.0.1", 0, () -> {}).getStatus());
+        assertEquals(200, send("10.0.0.1", 0, () -> {}).getStatus());
+
+        MockHttpServletResponse rejected = send("10.0.0.1", 0, () -> {});
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertTrue(rejected.getContentAsString().startsWith("Too many requests from 10.0.0.1"));
+        // Another client has its own bucket
+        assertEquals(200, send("10.0.0.2", 0, () -> {}).getStatus());
+    }
+
+    @Test
+    void theGlobalQueueIsCapped() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // Two clients at half the budget each fill it
+        Future<MockHttpServletResponse> a = sendAsync("10.0.0.1", 50, () -> release.await());
+        Future<MockHttpServletResponse> b = sendAsync("10.0.0.2", 50, () -> release.await());
+        awaitInFlight(100);
+
+        Future<MockHttpServletResponse> queued = sendAsync("10.0.0.3", 10, () -> {});
+        awaitQueued(1);
+        MockHttpServletResponse refused = send("10.0.0.4", 10, () -> {});
+        assertEquals(429, refused.getStatus());
+        assertEquals("Server busy: 1 requests already queued", refused.getContentAsString());
+
+        release.countDown();
+        assertEquals(200, a.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(200, b.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(200, queued.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(0, filter.getInFlightBytes());
+        assertEquals(0, filter.getQueued());
+    }
+
+    @Test
+    void queuedRequestsTimeOut() throws Exception {
+        filter = newFilter(100, 1, 200, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<MockHttpServletResponse> a = sendAsync("10.0.0.1", 50, () -> release.await());
+        Future<MockHttpServletResponse> b = sendAsync("10.0.0.2", 50, () -> release.await());
+        awaitInFlight(100);
+
+        MockHttpServletResponse refused = send("10.0.0.3", 10, () -> {});
+        assertEquals(429, refused.getStatus());
+        assertTrue(refused.getContentAsString().startsWith("Server busy: no capacity"));
+        assertEquals(0, filter.getQueued());
+
+        release.countDown();
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void oneClientCannotHoldMoreThanHalfTheBudget() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<MockHttpServletResponse> first = sendAsync("10.0.0.1", 50, () -> release.await());
+        awaitInFlight(50);
+        AtomicInteger ran = new AtomicInteger();
+        Future<MockHttpServletResponse> second = sendAsync("10.0.0.1", 10, () -> ran.incrementAndGet());
+        awaitQueued(1);
+
+        // Room in the budget, but not in the first client's half of it
+        assertEquals(200, send("10.0.0.2", 40, () -> {}).getStatus());
+        assertEquals(0, ran.get());
+
+        release.countDown();
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(200, second.get(5, TimeUnit.SECONDS).getStatus());
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    void concurrentClientsNeverExceedTheBudget() throws Exception {
+        filter = newFilter(100, 200, 30_000, 200);
+        AtomicLong inside = new AtomicLong();
+        AtomicLong peak = new AtomicLong();
+        List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            int size = 5 + i % 30;
+            String client = "10.0.0." + (i % 7);
+            responses.add(sendAsync(client, size, () -> {
+                peak.accumulateAndGet(inside.addAndGet(size), Math::max);
+                Thread.sleep(1);
+                inside.addAndGet(-size);
+            }));
+        }
+        for (Future<MockHttpServletResponse> response : responses) {
+            assertEquals(200, response.get(30, TimeUnit.SECONDS).getStatus());
+        }
+        assertTrue(peak.get() <= 100, "peak " + peak.get());
+        assertEquals(0, filter.getInFlightBytes());
+        assertEquals(0, filter.getQueued());
+    }
+
+    private AdmissionFilter newFilter(long maxInFlightBytes, int maxQueued, long queueTimeoutMillis,
+                                      int maxQueuedPerClient) {
+        AdmissionFilter filter = new AdmissionFilter();
+        ReflectionTestUtils.setField(filter, "metrics", CompressionMetrics.noop());
+        filter.setRequestRate(0);
+        filter.setRequestBurst(0);
+        filter.setByteRate(0);
+        filter.setByteBurst(0);
+        filter.setMaxInFlightBytes(maxInFlightBytes);
+        filter.setMaxQueued(maxQueued);
+        filter.setQueueTimeoutMillis(queueTimeoutMillis);
+        filter.setMaxQueuedPerClient(maxQueuedPerClient);
+        filter.registerGauges();
+        return filter;
+    }
+
+    // What the rest of the chain does once the request is admitted
+    interface Handler {
+        void handle() throws Exception;
+    }
+
+    private MockHttpServletResponse send(String client, int bodyLength, Handler handler) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/compression/compress/gzip");
+        request.setRemoteAddr(client);
+        if (bodyLength > 0) {
+            request.setContent(new byte[bodyLength]);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+            try {
+                handler.handle();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return response;
+    }
+
+    private Future<MockHttpServletResponse> sendAsync(String client, int bodyLength, Handler handler) {
+        return executor.submit(() -> send(client, bodyLength, handler));
+    }
+
+    private void awaitInFlight(long bytes) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (filter.getInFlightBytes() != bytes) {
+            assertTrue(System.nanoTime() < deadline, "in flight: " + filter.getInFlightBytes());
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitQueued(int requests) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (filter.getQueued() != requests) {
+            assertTrue(System.nanoTime() < deadline, "queued: " + filter.getQueued());
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkedUploadStoreTest {
+
+    private static final int CHUNK = 64 * 1024;
+
+    @TempDir
+    Path temp;
+
+    private ChunkedUploadStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = newStore();
+    }
+
+    @Test
+    void chunksInAnyOrderMakeTheFile() throws IOException {
+        byte[] data = random(3 * CHUNK + 1000, 1);
+        ChunkedUploadStore.Upload upload = store.create("data.bin", data.length, CHUNK);
+        assertEquals(4, upload.getChunkCount());
+        for (int index : new int[]{3, 1, 0, 2}) {
+            writeChunk(upload, index, data);
+        }
+        store.complete(upload);
+
+        Path job = Files.createDirectory(temp.resolve("job"));
+        File taken = store.take(upload.getUploadId(), job.toFile());
+        assertArrayEquals(data, Files.readAllBytes(taken.toPath()));
+        assertNull(store.get(upload.getUploadId()));
+        assertFalse(Files.exists(temp.resolve("uploads").resolve(upload.getUploadId())));
+    }
+
+    @Test
+    void badChunksAreNotAcknowledged() throws IOException {
+        byte[] data = random(2 * CHUNK, 1);
+        ChunkedUploadStore.Upload upload = store.create("data.bin", data.length, CHUNK);
+        byte[] chunk = Arrays.copyOfRange(data, 0, CHUNK);
+        assertThrows(IllegalArgumentException.class,
+                () -> store.writeChunk(upload, 0, new ByteArrayInputStream(chunk), "00000000"));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.writeChunk(upload, 0, new ByteArrayInputStream(chunk, 0, CHUNK - 1), checksum(chunk)));
+        assertThrows(IllegalArgumentException.class, () -> store.complete(upload));
+        assertEquals(List.of(), upload.getReceived());
+    }
+
+    @Test
+    void uploadsResumeAfterARestart() throws IOException {
+        byte[] data = random(2 * CHUNK, 1);
+        ChunkedUploadStore.Upload upload = store.create("data.bin", data.length, CHUNK);
+        writeChunk(upload, 1, data);
+
+        ChunkedUploadStore restarted = newStore();
+        ChunkedUploadStore.Upload resumed = restarted.get(upload.getUploadId());
+        assertEquals(List.of(1), resumed.getReceived());
+        restarted.writeChunk(resumed, 0, new ByteArrayInputStream(data, 0, CHUNK),
+                checksum(Arrays.copyOfRange(data, 0, CHUNK)));
+        File completed = restarted.complete(resumed);
+        assertArrayEquals(data, Files.readAllBytes(completed.toPath()));
+    }
+
+    @Test
+    void sizeIsCappedAtTheUploadLimit() throws IOException {
+        store.setMaxSize(DataSize.ofMegabytes(1));
+        store.create("ok.bin", 1024 * 1024, CHUNK);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> store.create("big.bin", 1024 * 1024 + 1, CHUNK));
+        assertTrue(e.getMessage().contains("limit"));
+    }
+
+    @Test
+    void concurrentTakesGiveTheFileToExactlyOne() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 50; round++) {
+                byte[] data = random(CHUNK, round);
+                ChunkedUploadStore.Upload upload = store.create("data.bin", data.length, CHUNK);
+                writeChunk(upload, 0, data);
+                store.complete(upload);
+
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<File>> takes = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    Path job = Files.createDirectories(temp.resolve("job-" + round + "-" + i));
+                    Callable<File> take = () -> {
+                        start.await();
+                        return store.take(upload.getUploadId(), job.toFile());
+                    };
+                    takes.add(executor.submit(take));
+                }
+                start.countDown();
+
+                int taken = 0;
+                for (Future<File> take : takes) {
+                    try {
+                        assertArrayEquals(data, Files.readAllBytes(take.get().toPath()));
+                        taken++;
+                    } catch (ExecutionException e) {
+                        // The loser is told the upload is gone, not handed an I/O error
+                        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+                    }
+                }
+                assertEquals(1, taken, "round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void writesAfterADeleteAreRefused() throws IOException {
+        byte[] data = random(CHUNK, 1);
+        ChunkedUploadStore.Upload upload = store.create("data.bin", data.length, CHUNK);
+        assertTrue(store.delete(upload.getUploadId()));
+        assertFalse(store.delete(upload.getUploadId()));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.writeChunk(upload, 0, new ByteArrayInputStream(data), checksum(data)));
+    }
+
+    @Test
+    void sweepDeletesIdleUploadsOnly() throws IOException {
+        byte[] data = random(2 * CHUNK, 1);
+        ChunkedUploadStore.Upload idle = store.create("idle.bin", data.length, CHUNK);
+        writeChunk(idle, 0, data);
+        ChunkedUploadStore.Upload active = store.create("active.bin", data.length, CHUNK);
+        // Left behind by a take that did not finish
+        Path orphan = Files.createDirectories(temp.resolve("uploads").resolve("3b1f2c4e-0000-4000-8000-000000000000"));
+        Files.write(orphan.resolve("data.bin"), data);
+
+        Path uploads = temp.resolve("uploads");
+        age(uploads.resolve(idle.getUploadId()));
+        age(orphan);
+        store.sweep();
+
+        assertNull(store.get(idle.getUploadId()));
+        assertFalse(Files.exists(uploads.resolve(idle.getUploadId())));
+        assertFalse(Files.exists(orphan));
+        assertNotNull(store.get(active.getUploadId()));
+    }
+
+    private ChunkedUploadStore newStore() {
+        ChunkedUploadStore store = new ChunkedUploadStore();
+        store.setDirectory(temp.resolve("uploads").toString());
+        store.setTtlMinutes(60);
+        return store;
+    }
+
+    private void writeChunk(ChunkedUploadStore.Upload upload, int index, byte[] data) throws IOException {
+        int from = index * upload.getChunkSize();
+        byte[] chunk = Arrays.copyOfRange(data, from, (int) Math.min(data.length, (long) from + upload.getChunkSize()));
+        store.writeChunk(upload, index, new ByteArrayInputStream(chunk), checksum(chunk));
+    }
+
+    static String checksum(byte[] chunk) {
+        CRC32C crc = new CRC32C();
+        crc.update(chunk);
+        return HexFormat.of().toHexDigits((int) crc.getValue());
+    }
+
+    // Two hours back, past the one hour TTL
+    static void age(Path dir) throws IOException {
+        long then = System.currentTimeMillis() - 2 * 3_600_000;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                assertTrue(file.toFile().setLastModified(then));
+            }
+        }
+        assertTrue(dir.toFile().setLastModified(then));
+    }
+}
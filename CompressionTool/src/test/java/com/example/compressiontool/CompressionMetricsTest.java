@@ -0,0 +1,60 @@
+package com.example.compressiontool;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.compressiontool.RawZipTest.text;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompressionMetricsTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void metersAreRegisteredOnceAndReused() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CompressionMetrics metrics = new CompressionMetrics(registry);
+        for (int i = 0; i < 3; i++) {
+            metrics.recordPhase(OperationType.COMPRESS_GZIP, CompressionMetrics.SCAN, 1_000);
+            metrics.recordPhase(OperationType.COMPRESS_GZIP, CompressionMetrics.FSYNC, 2_000);
+            metrics.recordAdmission("admitted", 500);
+            metrics.increment("compression.test.events", "Test events");
+        }
+
+        Timer scan = registry.get("compression.phase").tag("phase", CompressionMetrics.SCAN).timer();
+        assertEquals(3, scan.count());
+        assertEquals(2, registry.get("compression.phase").timers().size());
+        assertEquals(3, registry.get("compression.admission.wait").timer().count());
+        assertEquals(3.0, registry.get("compression.test.events").counter().count());
+    }
+
+    @Test
+    void eachOperationStoresOneActivity() throws IOException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CompressionService service = new CompressionService();
+        service.setMetrics(new CompressionMetrics(registry));
+        List<Activity> saved = new ArrayList<>();
+        service.setActivitySink(saved::add);
+
+        File input = temp.resolve("input.txt").toFile();
+        Files.write(input.toPath(), text(50_000, 1));
+        File output = temp.resolve("input.txt.gz").toFile();
+        service.compressGZIP(input, output);
+
+        assertEquals(1, saved.size());
+        assertEquals(OperationType.COMPRESS_GZIP, saved.get(0).getOperationType());
+        assertEquals(50_000, saved.get(0).getOriginalSize());
+        assertEquals(output.length(), saved.get(0).getResultSize());
+        assertEquals(1, registry.get("compression.phase").tag("phase", CompressionMetrics.COMPRESS).timer().count());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DedupStoreTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void restoresWhatWasBackedUp() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.bin"), random(300_000, 1));
+        write(source.resolve("dir/b.bin"), random(10_000, 2));
+        write(source.resolve("empty"), new byte[0]);
+        DedupStore store = new DedupStore(temp.resolve("store").toFile());
+
+        long[] stats = store.backup(source.toFile(), "first");
+        assertEquals(3, stats[0]);
+        assertEquals(310_000, stats[1]);
+
+        Path dest = temp.resolve("dest");
+        store.restore("first", dest.toFile());
+        assertSameTree(source, dest.resolve("source"));
+    }
+
+    @Test
+    void editsOnlyStoreTheChunksAroundThem() throws IOException {
+        Path source = temp.resolve("source");
+        byte[] original = random(1_000_000, 1);
+        write(source.resolve("a.bin"), original);
+        DedupStore store = new DedupStore(temp.resolve("store").toFile());
+        long[] first = store.backup(source.toFile(), "first");
+
+        // An insert in the middle shifts everything after it; content-defined chunks resync
+        byte[] edited = new byte[original.length + 100];
+        System.arraycopy(original, 0, edited, 0, 500_000);
+        System.arraycopy(original, 500_000, edited, 500_100, 500_000);
+        write(source.resolve("a.bin"), edited);
+        long[] second = store.backup(source.toFile(), "second");
+        assertTrue(second[2] < first[2] / 10, "chunks written: " + second[2] + " of " + first[2]);
+
+        Path dest = temp.resolve("dest");
+        store.restore("second", dest.toFile());
+        assertArrayEquals(edited, Files.readAllBytes(dest.resolve("source/a.bin")));
+    }
+
+    @Test
+    void gcKeepsOnlyChunksOfRemainingSnapshots() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.bin"), random(200_000, 1));
+        DedupStore store = new DedupStore(temp.resolve("store").toFile());
+        store.backup(source.toFile(), "first");
+        assertArrayEquals(new long[]{0, 0}, store.gc());
+
+        write(source.resolve("a.bin"), random(200_000, 2));
+        store.backup(source.toFile(), "second");
+        long before = store.storedBytes();
+        assertTrue(store.deleteSnapshot("first"));
+
+        long[] freed = store.gc();
+        assertTrue(freed[0] > 0);
+        assertEquals(before - freed[1], store.storedBytes());
+
+        Path dest = temp.resolve("dest");
+        store.restore("second", dest.toFile());
+        assertArrayEquals(random(200_000, 2), Files.readAllBytes(dest.resolve("source/a.bin")));
+    }
+
+    @Test
+    void snapshotsAreOrderedByCreationNotFileTime() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.bin"), random(10_000, 1));
+        Path storeDir = temp.resolve("store");
+        DedupStore store = new DedupStore(storeDir.toFile());
+        store.backup(source.toFile(), "b-first");
+        store.backup(source.toFile(), "a-second");
+
+        // E.g. copied or restored from elsewhere: file times no longer say which came first
+        File first = storeDir.resolve("snapshots/b-first.snapshot").toFile();
+        File second = storeDir.resolve("snapshots/a-second.snapshot").toFile();
+        assertTrue(first.setLastModified(System.currentTimeMillis()));
+        assertTrue(second.setLastModified(System.currentTimeMillis() - 3_600_000));
+
+        assertEquals(List.of("b-first", "a-second"), store.listSnapshots());
+    }
+
+    @Test
+    void restoreRefusesPathsOutsideTheDestination() throws IOException {
+        Path storeDir = temp.resolve("store");
+        // dest-other shares dest's name as a prefix, which a string comparison would let through
+        Files.createDirectories(storeDir.resolve("snapshots"));
+        Files.writeString(storeDir.resolve("snapshots/evil.snapshot"),
+                "# CompressionTool snapshot v1\n../dest-other/file\t0\t0\t\n", StandardCharsets.UTF_8);
+        DedupStore store = new DedupStore(storeDir.toFile());
+
+        IOException e = assertThrows(IOException.class, () -> store.restore("evil", temp.resolve("dest").toFile()));
+        assertTrue(e.getMessage().contains("Invalid path"));
+        assertFalse(Files.exists(temp.resolve("dest-other")));
+    }
+
+    private static void write(Path path, byte[] data) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, data);
+    }
+
+    private static void assertSameTree(Path expected, Path actual) throws IOException {
+        try (var files = Files.walk(expected)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Path restored = actual.resolve(expected.relativize(file).toString());
+                assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(restored), file.toString());
+                assertEquals(Files.getLastModifiedTime(file).toMillis(), Files.getLastModifiedTime(restored).toMillis());
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DictionaryTest {
+
+    @TempDir
+    Path temp;
+
+    private final CompressionService service = new CompressionService();
+    private Path samples;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        service.setDictionaryDirectory(temp.resolve("dictionaries").toString());
+        samples = temp.resolve("samples");
+        Files.createDirectories(samples);
+        for (int i = 0; i < 50; i++) {
+            Files.writeString(samples.resolve("sample-" + i + ".json"), record(i));
+        }
+        service.trainDictionary("records", samples.toFile());
+    }
+
+    @Test
+    void gzipRoundTripRecordsTheDictionaryInTheHeader() throws IOException {
+        File input = temp.resolve("input.json").toFile();
+        Files.writeString(input.toPath(), record(1000));
+        File compressed = temp.resolve("input.json.gz").toFile();
+        File plain = temp.resolve("plain.json.gz").toFile();
+        service.compressGZIP(input, compressed, "records");
+        service.compressGZIP(input, plain);
+
+        byte[] header = Files.readAllBytes(compressed.toPath());
+        assertEquals(0x04, header[3] & 0x04, "FEXTRA flag");
+        assertEquals('D', header[12]);
+        assertEquals('I', header[13]);
+        assertEquals("records", new String(header, 16, header[14], StandardCharsets.UTF_8));
+        assertTrue(compressed.length() < plain.length(), compressed.length() + " vs " + plain.length());
+
+        File output = temp.resolve("output.json").toFile();
+        service.decompressGZIP(compressed, output);
+        assertArrayEquals(Files.readAllBytes(input.toPath()), Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    void zipRoundTripRecordsTheDictionaryInTheExtraField() throws IOException {
+        Path source = temp.resolve("source");
+        Files.createDirectories(source);
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(source.resolve("r" + i + ".json"), record(2000 + i));
+        }
+        File archive = temp.resolve("source.zip").toFile();
+        service.compressZIP(source.toFile(), archive, "records");
+
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            for (RawZipEntry entry : RawZipReader.readEntries(channel)) {
+                if (!entry.isDirectory()) {
+                    assertEquals("records", entry.getDictionaryId(), entry.getName());
+                }
+            }
+        }
+
+        Path dest = temp.resolve("dest");
+        service.decompressZIP(archive, dest.toFile());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(record(2000 + i), Files.readString(dest.resolve("source/r" + i + ".json")));
+        }
+    }
+
+    @Test
+    void idsCannotBeReused() throws IOException {
+        DictionaryRegistry registry = service.getDictionaryRegistry();
+        byte[] original = registry.get("records");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register("records", new byte[]{1, 2, 3}));
+        assertThrows(IllegalArgumentException.class, () -> service.trainDictionary("records", samples.toFile()));
+        assertArrayEquals(original, registry.get("records"));
+        assertArrayEquals(original, new DictionaryRegistry(registry.getDirectory()).get("records"));
+    }
+
+    private static String record(int seed) {
+        Random random = new Random(seed);
+        return "{\"id\": " + seed + ", \"status\": \"" + (random.nextBoolean() ? "active" : "suspended")
+                + "\", \"region\": \"eu-west-" + random.nextInt(3) + "\", \"created\": \"2024-0"
+                + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + "T12:00:00Z\", \"tags\": [\"customer\", \"tier-"
+                + random.nextInt(4) + "\"], \"balance\": " + random.nextInt(100000) + "}\n";
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static com.example.compressiontool.RawZipTest.text;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IncrementalZipTest {
+
+    @TempDir
+    Path temp;
+
+    private final CompressionService service = new CompressionService();
+
+    @Test
+    void unchangedFilesAreReused() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.txt"), text(20_000, 1));
+        write(source.resolve("b.bin"), random(30_000, 2));
+        File archive = temp.resolve("out.zip").toFile();
+
+        long[] stats = service.compressZIPIncremental(source.toFile(), archive);
+        assertEquals(0, stats[0]);
+        assertEquals(2, stats[1]);
+
+        stats = service.compressZIPIncremental(source.toFile(), archive);
+        assertEquals(2, stats[0]);
+        assertEquals(0, stats[1]);
+        assertContents(archive, Map.of("source/a.txt", text(20_000, 1), "source/b.bin", random(30_000, 2)));
+    }
+
+    @Test
+    void onlyChangedContentIsRecompressed() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.txt"), text(20_000, 1));
+        write(source.resolve("b.txt"), text(20_000, 2));
+        File archive = temp.resolve("out.zip").toFile();
+        service.compressZIPIncremental(source.toFile(), archive);
+
+        // Same size, new content; and a touched file whose content is the same
+        write(source.resolve("a.txt"), text(20_000, 3));
+        touch(source.resolve("a.txt"));
+        touch(source.resolve("b.txt"));
+        long[] stats = service.compressZIPIncremental(source.toFile(), archive);
+        assertEquals(1, stats[0]);
+        assertEquals(1, stats[1]);
+        assertContents(archive, Map.of("source/a.txt", text(20_000, 3), "source/b.txt", text(20_000, 2)));
+    }
+
+    @Test
+    void entriesThatNoLongerMatchTheManifestAreNotReused() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.txt"), text(20_000, 1));
+        File archive = temp.resolve("out.zip").toFile();
+        service.compressZIPIncremental(source.toFile(), archive);
+
+        // Replace the archive behind the manifest with one holding other bytes of the same size
+        Path other = temp.resolve("other").resolve("source");
+        write(other.resolve("a.txt"), text(20_000, 9));
+        File replaced = temp.resolve("replaced.zip").toFile();
+        service.compressZIP(other.toFile(), replaced);
+        Files.move(replaced.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        long[] stats = service.compressZIPIncremental(source.toFile(), archive);
+        assertEquals(0, stats[0]);
+        assertEquals(1, stats[1]);
+        assertContents(archive, Map.of("source/a.txt", text(20_000, 1)));
+    }
+
+    @Test
+    void leavesOnlyTheArchiveAndItsManifest() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.txt"), text(1_000, 1));
+        Path out = Files.createDirectory(temp.resolve("out"));
+        File archive = out.resolve("out.zip").toFile();
+        service.compressZIPIncremental(source.toFile(), archive);
+        service.compressZIPIncremental(source.toFile(), archive);
+
+        try (var files = Files.list(out)) {
+            assertEquals(2, files.count());
+        }
+        ArchiveManifest manifest = ArchiveManifest.load(ArchiveManifest.manifestFileFor(archive));
+        assertEquals(1, manifest.size());
+        assertEquals(ArchiveManifest.sha256(source.resolve("a.txt").toFile()), manifest.get("source/a.txt").getSha256());
+    }
+
+    private static void write(Path path, byte[] data) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, data);
+    }
+
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10_000));
+    }
+
+    private static void assertContents(File archive, Map<String, byte[]> expected) throws IOException {
+        Map<String, byte[]> actual = new HashMap<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (ZipEntry entry : zip.stream().toList()) {
+                try (InputStream in = zip.getInputStream(entry)) {
+                    actual.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultipartReaderTest {
+
+    private static final String BOUNDARY = "----boundary7MA4YWxkTrZu0gW";
+
+    @Test
+    void readsFieldsAndTheFile() throws IOException {
+        byte[] data = random(200_000, 1);
+        byte[] body = body(field("progressId", "p-1"), field("threads", "4"), file("file", "data.bin", data));
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 0);
+        Map<String, String> fields = new LinkedHashMap<>();
+        MultipartReader.Part part = reader.nextFile(fields);
+        assertEquals(Map.of("progressId", "p-1", "threads", "4"), fields);
+        assertEquals("file", part.getName());
+        assertEquals("data.bin", part.getFileName());
+        assertEquals("application/octet-stream", part.getContentType());
+        assertArrayEquals(data, part.getBody().readAllBytes());
+        reader.finish();
+        assertEquals(body.length, reader.getBytesRead());
+    }
+
+    @Test
+    void delimitersSplitAcrossReadsAreFound() throws IOException {
+        // Data that nearly matches the delimiter, right before the real one, is the hard case
+        byte[] data = ("x\r\n--" + BOUNDARY.substring(0, 10) + "y\r\n-").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] body = body(file("file", "a.txt", data), file("other", "b.txt", data));
+        for (int readSize = 1; readSize <= body.length; readSize++) {
+            MultipartReader reader = new MultipartReader(trickle(body, readSize), BOUNDARY, 0);
+            MultipartReader.Part first = reader.next();
+            assertArrayEquals(data, readAll(first.getBody(), readSize), "read size " + readSize);
+            MultipartReader.Part second = reader.next();
+            assertEquals("b.txt", second.getFileName());
+            assertArrayEquals(data, readAll(second.getBody(), readSize), "read size " + readSize);
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void delimitersAcrossBufferFillsAreFound() throws IOException {
+        // Put the delimiter across the 64 KB buffer's edge at every offset around it
+        for (int shift = -50; shift <= 50; shift++) {
+            byte[] data = random(64 * 1024 - 150 + shift, shift + 100);
+            byte[] body = body(file("file", "a.bin", data), field("after", "yes"));
+            MultipartReader reader = new MultipartReader(trickle(body, 8192), BOUNDARY, 0);
+            MultipartReader.Part part = reader.nextFile(new LinkedHashMap<>());
+            assertArrayEquals(data, part.getBody().readAllBytes(), "shift " + shift);
+            MultipartReader.Part after = reader.next();
+            assertEquals("yes", new String(after.getBody().readAllBytes(), StandardCharsets.UTF_8));
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void thePreambleIsSkipped() throws IOException {
+        byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+        byte[] parts = body(file("file", "a.txt", data));
+        byte[] preamble = "This is a multi-part message in MIME format.\r\n".getBytes(StandardCharsets.UTF_8);
+        byte[] body = concat(preamble, parts);
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 0);
+        MultipartReader.Part part = reader.next();
+        assertEquals("a.txt", part.getFileName());
+        assertArrayEquals(data, part.getBody().readAllBytes());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void quotedFileNamesAreUnescaped() throws IOException {
+        String disposition = "form-data; name=\"file\"; filename=\"my \\\"report\\\"; final\\\\v2.txt\"";
+        byte[] body = (("--" + BOUNDARY + "\r\nContent-Disposition: " + disposition + "\r\n\r\nx\r\n--" + BOUNDARY + "--\r\n"))
+                .getBytes(StandardCharsets.UTF_8);
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, 0);
+        MultipartReader.Part part = reader.next();
+        assertEquals("file", part.getName());
+        assertEquals("my \"report\"; final\\v2.txt", part.getFileName());
+        assertNull(part.getContentType());
+    }
+
+    @Test
+    void aBodyCutOffInsideAPartIsAnError() throws IOException {
+        byte[] data = random(100_000, 1);
+        byte[] body = body(file("file", "a.bin", data));
+        byte[] truncated = Arrays.copyOf(body, body.length / 2);
+
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(truncated), BOUNDARY, 0);
+        MultipartReader.Part part = reader.next();
+        EOFException e = assertThrows(EOFException.class, () -> part.getBody().readAllBytes());
+        assertEquals("Multipart body ended inside a part", e.getMessage());
+
+        // Cut off in the headers, and right after the last part's delimiter
+        byte[] headers = Arrays.copyOf(body, ("--" + BOUNDARY + "\r\nContent-Disp").length());
+        assertThrows(EOFException.class, () -> new MultipartReader(new ByteArrayInputStream(headers), BOUNDARY, 0).next());
+        byte[] noEnd = Arrays.copyOf(body, body.length - "--\r\n".length());
+        MultipartReader unfinished = new MultipartReader(new ByteArrayInputStream(noEnd), BOUNDARY, 0);
+        unfinished.next();
+        assertThrows(EOFException.class, unfinished::finish);
+    }
+
+    @Test
+    void theSizeLimitCoversTheWholeBody() throws IOException {
+        byte[] data = random(100_000, 1);
+        byte[] body = body(file("file", "a.bin", data));
+
+        MultipartReader exact = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, body.length);
+        assertArrayEquals(data, exact.next().getBody().readAllBytes());
+        exact.finish();
+
+        MultipartReader over = new MultipartReader(new ByteArrayInputStream(body), BOUNDARY, body.length - 1);
+        MultipartReader.SizeLimitExceededException e = assertThrows(MultipartReader.SizeLimitExceededException.class,
+                () -> {
+                    over.next().getBody().readAllBytes();
+                    over.finish();
+                });
+        assertEquals("Upload is larger than the limit of " + (body.length - 1) + " bytes", e.getMessage());
+    }
+
+    @Test
+    void badBoundariesAreRejected() {
+        assertEquals(BOUNDARY, MultipartReader.boundary("multipart/form-data; boundary=" + BOUNDARY));
+        assertEquals("a b", MultipartReader.boundary("multipart/form-data; charset=UTF-8; boundary=\"a b\""));
+        assertThrows(IllegalArgumentException.class, () -> MultipartReader.boundary("application/json"));
+        assertThrows(IllegalArgumentException.class, () -> MultipartReader.boundary("multipart/form-data"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new MultipartReader(new ByteArrayInputStream(new byte[0]), "x".repeat(71), 0));
+    }
+
+    private static byte[] field(String name, String value) {
+        return ("Content-Disposition: form-data; name=\"" + name + "\"\r\n\r\n" + value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] file(String name, String fileName, byte[] data) {
+        byte[] headers = ("Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + fileName
+                + "\"\r\nContent-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        return concat(headers, data);
+    }
+
+    private static byte[] body(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(("--" + BOUNDARY + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.writeBytes(part);
+            out.writeBytes("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        out.writeBytes(("--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] both = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, both, a.length, b.length);
+        return both;
+    }
+
+    // At most readSize bytes per read, the way a slow connection delivers a body
+    private static InputStream trickle(byte[] body, int readSize) {
+        return new FilterInputStream(new ByteArrayInputStream(body)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, readSize));
+            }
+        };
+    }
+
+    private static byte[] readAll(InputStream in, int readSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[readSize];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static com.example.compressiontool.RawZipTest.text;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelGzipTest {
+
+    private static final int BLOCK = 64 * 1024;
+
+    @TempDir
+    Path temp;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void writesOneMemberPerBlock() throws IOException {
+        byte[] data = text(10 * BLOCK + 123, 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long[] sizes = ParallelGzip.compress(new ByteArrayInputStream(data), out, Deflater.DEFAULT_COMPRESSION,
+                executor, 3, BLOCK);
+        assertEquals(data.length, sizes[0]);
+        assertEquals(out.size(), sizes[1]);
+
+        byte[] compressed = out.toByteArray();
+        assertEquals(11, countMembers(compressed));
+        assertArrayEquals(data, gunzip(compressed));
+    }
+
+    @Test
+    void emptyInputIsStillAGzipStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long[] sizes = ParallelGzip.compress(new ByteArrayInputStream(new byte[0]), out, Deflater.DEFAULT_COMPRESSION,
+                executor, 2, BLOCK);
+        assertEquals(0, sizes[0]);
+        assertEquals(1, countMembers(out.toByteArray()));
+        assertArrayEquals(new byte[0], gunzip(out.toByteArray()));
+    }
+
+    @Test
+    void serviceReadsBackItsOwnMembers() throws IOException {
+        byte[] data = random(3 * ParallelGzip.DEFAULT_BLOCK_SIZE + 1000, 1);
+        CompressionService service = new CompressionService();
+        File compressed = temp.resolve("data.bin.gz").toFile();
+        try (var out = Files.newOutputStream(compressed.toPath())) {
+            long[] sizes = service.compressGZIP(new ByteArrayInputStream(data), out, "data.bin", 4);
+            assertEquals(data.length, sizes[0]);
+        }
+        // The thread count is capped at the pool size; on one core that is a single plain stream
+        int members = Runtime.getRuntime().availableProcessors() > 1 ? 4 : 1;
+        assertEquals(members, countMembers(Files.readAllBytes(compressed.toPath())));
+
+        File restored = temp.resolve("data.bin").toFile();
+        assertEquals(data.length, service.decompressGZIP(compressed, restored));
+        assertArrayEquals(data, Files.readAllBytes(restored.toPath()));
+    }
+
+    // Walks the members: the fixed 10-byte header ParallelGzip writes, raw deflate data, 8-byte trailer
+    private static int countMembers(byte[] compressed) throws IOException {
+        int members = 0;
+        int offset = 0;
+        while (offset < compressed.length) {
+            assertEquals(0x1F, compressed[offset] & 0xFF);
+            assertEquals(0x8B, compressed[offset + 1] & 0xFF);
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(compressed, offset + 10, compressed.length - offset - 10);
+                byte[] buffer = new byte[BLOCK];
+                while (!inflater.finished()) {
+                    if (inflater.inflate(buffer) == 0 && inflater.needsInput()) {
+                        throw new IOException("Truncated member");
+                    }
+                }
+                offset = compressed.length - inflater.getRemaining() + 8;
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            } finally {
+                inflater.end();
+            }
+            members++;
+        }
+        return members;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RawZipTest {
+
+    @TempDir
+    Path temp;
+
+    private final CompressionService service = new CompressionService();
+
+    @Test
+    void copiedEntriesKeepTheirCompressedBytes() throws IOException {
+        Path source = tree("source", Map.of("a.txt", text(20_000, 1), "dir/b.bin", random(50_000, 2)));
+        File archive = temp.resolve("source.zip").toFile();
+        service.compressZIP(source.toFile(), archive);
+
+        File copy = temp.resolve("copy.zip").toFile();
+        try (FileChannel in = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+             RawZipWriter writer = new RawZipWriter(FileChannel.open(copy.toPath(),
+                     StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))) {
+            for (RawZipEntry entry : RawZipReader.readEntries(in)) {
+                writer.copyEntry(in, entry);
+            }
+            writer.finish();
+        }
+
+        Map<String, RawZipEntry> before = entries(archive);
+        Map<String, RawZipEntry> after = entries(copy);
+        assertEquals(before.keySet(), after.keySet());
+        for (RawZipEntry entry : before.values()) {
+            RawZipEntry copied = after.get(entry.getName());
+            assertEquals(entry.getCrc(), copied.getCrc());
+            assertEquals(entry.getCompressedSize(), copied.getCompressedSize());
+        }
+        assertContents(copy, Map.of("source/a.txt", text(20_000, 1), "source/dir/b.bin", random(50_000, 2)));
+    }
+
+    @Test
+    void updateAddsAndReplacesEntries() throws IOException {
+        Path source = tree("source", Map.of("a.txt", text(20_000, 1), "b.txt", text(30_000, 2)));
+        File archive = temp.resolve("source.zip").toFile();
+        service.compressZIP(source.toFile(), archive);
+
+        Path update = tree("update", Map.of("b.txt", text(40_000, 3), "c.txt", text(10_000, 4)));
+        // Newer than the archived b.txt, so it is replaced rather than kept
+        Files.setLastModifiedTime(update.resolve("b.txt"),
+                FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        long[] stats = service.updateZIP(archive, update.toFile());
+
+        // The update tree's entries are named after it, so both of them are new
+        assertEquals(2, stats[0]);
+        assertEquals(2, stats[1]);
+        assertEquals(0, stats[2]);
+        assertContents(archive, Map.of(
+                "source/a.txt", text(20_000, 1),
+                "source/b.txt", text(30_000, 2),
+                "update/b.txt", text(40_000, 3),
+                "update/c.txt", text(10_000, 4)));
+
+        Path replacement = tree("source", Map.of("b.txt", text(40_000, 5)));
+        Files.setLastModifiedTime(replacement.resolve("b.txt"),
+                FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        stats = service.updateZIP(archive, replacement.toFile());
+        assertEquals(3, stats[0]);
+        assertEquals(0, stats[1]);
+        assertEquals(1, stats[2]);
+        assertContents(archive, Map.of(
+                "source/a.txt", text(20_000, 1),
+                "source/b.txt", text(40_000, 5),
+                "update/b.txt", text(40_000, 3),
+                "update/c.txt", text(10_000, 4)));
+    }
+
+    @Test
+    void updateDropsTheIncrementalManifest() throws IOException {
+        Path source = tree("source", Map.of("a.txt", text(20_000, 1)));
+        File archive = temp.resolve("source.zip").toFile();
+        service.compressZIPIncremental(source.toFile(), archive);
+        File manifest = ArchiveManifest.manifestFileFor(archive);
+        assertTrue(manifest.isFile());
+
+        service.updateZIP(archive, tree("more", Map.of("b.txt", text(1_000, 2))).toFile());
+        assertFalse(manifest.exists());
+    }
+
+    private Path tree(String name, Map<String, byte[]> files) throws IOException {
+        Path root = temp.resolve("in-" + name + "-" + System.nanoTime()).resolve(name);
+        for (Map.Entry<String, byte[]> file : files.entrySet()) {
+            Path path = root.resolve(file.getKey());
+            Files.createDirectories(path.getParent());
+            Files.write(path, file.getValue());
+        }
+        return root;
+    }
+
+    private static Map<String, RawZipEntry> entries(File archive) throws IOException {
+        Map<String, RawZipEntry> entries = new HashMap<>();
+        try (FileChannel in = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            List<RawZipEntry> list = RawZipReader.readEntries(in);
+            for (RawZipEntry entry : list) {
+                entries.put(entry.getName(), entry);
+            }
+        }
+        return entries;
+    }
+
+    // Reads the archive back with java.util.zip, so the output is checked by another reader
+    private static void assertContents(File archive, Map<String, byte[]> expected) throws IOException {
+        Map<String, byte[]> actual = new HashMap<>();
+        try (ZipFile zip = new ZipFile(archive)) {
+            for (ZipEntry entry : zip.stream().toList()) {
+                if (entry.isDirectory()) continue;
+                try (InputStream in = zip.getInputStream(entry)) {
+                    actual.put(entry.getName(), in.readAllBytes());
+                }
+            }
+        }
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertArrayEquals(entry.getValue(), actual.get(entry.getKey()), entry.getKey());
+        }
+    }
+
+    static byte[] text(int length, int seed) {
+        StringBuilder text = new StringBuilder(length);
+        Random random = new Random(seed);
+        String[] words = {"alpha ", "beta ", "gamma ", "delta ", "epsilon\n", "zeta "};
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]);
+        }
+        return text.substring(0, length).getBytes();
+    }
+
+    static byte[] random(int length, int seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
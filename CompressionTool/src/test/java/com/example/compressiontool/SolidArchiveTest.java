@@ -0,0 +1,114 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static com.example.compressiontool.RawZipTest.text;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolidArchiveTest {
+
+    @TempDir
+    Path temp;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void roundTripThroughTheService() throws IOException {
+        Path source = temp.resolve("source");
+        for (int i = 0; i < 40; i++) {
+            write(source.resolve("small/f" + i + ".txt"), text(500 + i * 37, i));
+        }
+        write(source.resolve("big.bin"), random(300_000, 99));
+        Files.createDirectories(source.resolve("empty"));
+
+        CompressionService service = new CompressionService();
+        File archive = temp.resolve("source.solid").toFile();
+        long[] stats = service.compressSolid(source.toFile(), archive);
+        assertEquals(41, stats[0]);
+        assertTrue(SolidArchive.isSolidArchive(archive));
+
+        Path dest = temp.resolve("dest");
+        long[] extracted = service.decompressSolid(archive, dest.toFile());
+        assertEquals(41, extracted[0]);
+        assertEquals(stats[2], extracted[2]);
+        assertTrue(Files.isDirectory(dest.resolve("source/empty")));
+        try (var files = Files.walk(source)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Path restored = dest.resolve(temp.relativize(file).toString());
+                assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(restored), file.toString());
+            }
+        }
+    }
+
+    @Test
+    void extractsOneEntryAcrossBlocks() throws IOException {
+        Path source = temp.resolve("source");
+        write(source.resolve("a.txt"), text(100_000, 1));
+        write(source.resolve("b.txt"), text(150_000, 2));
+        write(source.resolve("c.txt"), text(10_000, 3));
+
+        File archive = temp.resolve("source.solid").toFile();
+        long[] stats = SolidArchive.create(new TreeScanner().scan(source.toFile()), archive,
+                Deflater.DEFAULT_COMPRESSION, executor, 2, 64 * 1024);
+        assertEquals(4, stats[1]);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(150_000, SolidArchive.extract(archive, "source/b.txt", out));
+        assertArrayEquals(text(150_000, 2), out.toByteArray());
+
+        Path dest = temp.resolve("dest");
+        SolidArchive.extractAll(archive, dest.toFile(), executor, 2);
+        assertArrayEquals(text(100_000, 1), Files.readAllBytes(dest.resolve("source/a.txt")));
+        assertArrayEquals(text(10_000, 3), Files.readAllBytes(dest.resolve("source/c.txt")));
+    }
+
+    @Test
+    void rejectsNamesTooLongForTheIndex() throws IOException {
+        Path file = temp.resolve("a.txt");
+        write(file, text(100, 1));
+        FileTree tree = new FileTree();
+        tree.addFile(new FileTree.Node(file.toFile(), "d/".repeat(33_000) + "a.txt", 100, 0));
+
+        File archive = temp.resolve("long.solid").toFile();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> SolidArchive.create(tree,
+                archive, Deflater.DEFAULT_COMPRESSION, executor, 2, SolidArchive.DEFAULT_BLOCK_SIZE));
+        assertTrue(e.getMessage().contains("at most 65535"), e.getMessage());
+        assertFalse(archive.exists());
+    }
+
+    @Test
+    void refusesToExtractOutsideTheDestination() throws IOException {
+        Path file = temp.resolve("a.txt");
+        write(file, text(100, 1));
+        FileTree tree = new FileTree();
+        // dest-other shares dest's name as a prefix, which a string comparison would let through
+        tree.addFile(new FileTree.Node(file.toFile(), "../dest-other/a.txt", 100, 0));
+        File archive = temp.resolve("evil.solid").toFile();
+        SolidArchive.create(tree, archive, Deflater.DEFAULT_COMPRESSION, executor, 2, SolidArchive.DEFAULT_BLOCK_SIZE);
+
+        assertThrows(IOException.class, () -> SolidArchive.extractAll(archive, temp.resolve("dest").toFile(), executor, 2));
+        assertFalse(Files.exists(temp.resolve("dest-other")));
+    }
+
+    private static void write(Path path, byte[] data) throws IOException {
+        Files.createDirectories(path.getParent());
+        Files.write(path, data);
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.compressiontool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.example.compressiontool.RawZipTest.random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkAreaTest {
+
+    private static final long QUOTA = 1_000_000;
+
+    @TempDir
+    Path temp;
+
+    private WorkArea workArea;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        workArea = new WorkArea();
+        ReflectionTestUtils.setField(workArea, "metrics", CompressionMetrics.noop());
+        workArea.setDirectory(temp.resolve("work").toString());
+        workArea.setQuotaBytes(QUOTA);
+        workArea.setMinFreeBytes(0);
+        workArea.setTtlMinutes(60);
+        workArea.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        workArea.stop();
+    }
+
+    @Test
+    void jobsAreRefusedOverTheQuota() throws IOException {
+        WorkArea.Job first = workArea.create(300_000);
+        assertEquals(600_000, workArea.getBytesHeld());
+        WorkArea.InsufficientSpaceException e = assertThrows(WorkArea.InsufficientSpaceException.class,
+                () -> workArea.create(300_000));
+        assertTrue(e.getMessage().startsWith("Work area is full"), e.getMessage());
+
+        first.close();
+        assertFalse(first.getDirectory().exists());
+        assertEquals(0, workArea.getBytesHeld());
+        workArea.create(300_000).close();
+    }
+
+    @Test
+    void keptJobsAreChargedTheirRealSize() throws IOException {
+        WorkArea.Job job = workArea.create(400_000);
+        Files.write(job.getDirectory().toPath().resolve("result.gz"), new byte[1000]);
+        Runnable downloaded = job.keepForDownload();
+        job.close();
+        assertTrue(job.getDirectory().exists());
+        assertEquals(1000, workArea.getBytesHeld());
+
+        downloaded.run();
+        assertFalse(job.getDirectory().exists());
+        assertEquals(0, workArea.getBytesHeld());
+    }
+
+    @Test
+    void reservationsCountUntilTheirInputMovesIntoAJob() throws IOException {
+        WorkArea.Reservation upload = workArea.reserve(400_000);
+        assertEquals(400_000, workArea.getBytesHeld());
+        assertThrows(WorkArea.InsufficientSpaceException.class, () -> workArea.reserve(700_000));
+        // 800,000 for the job, of which the upload's 400,000 are already held
+        assertThrows(WorkArea.InsufficientSpaceException.class, () -> workArea.create(400_000));
+        WorkArea.Job job = workArea.create(400_000, upload);
+
+        upload.close();
+        upload.close();
+        assertEquals(800_000, workArea.getBytesHeld());
+        job.close();
+        assertEquals(0, workArea.getBytesHeld());
+    }
+
+    @Test
+    void chunkedUploadsHoldTheirSizeUntilTakenDeletedOrExpired() throws IOException {
+        ChunkedUploadStore store = new ChunkedUploadStore();
+        store.setDirectory(temp.resolve("uploads").toString());
+        store.setTtlMinutes(60);
+        store.setWorkArea(workArea);
+        int chunk = 64 * 1024;
+        byte[] data = random(2 * chunk, 1);
+
+        // Each holds what its job will need, twice its size
+        ChunkedUploadStore.Upload taken = store.create("taken.bin", data.length, chunk);
+        ChunkedUploadStore.Upload deleted = store.create("deleted.bin", 300_000, chunk);
+        assertEquals(2L * (data.length + 300_000), workArea.getBytesHeld());
+        // 150,000 would fit once, but not the job it would feed
+        WorkArea.InsufficientSpaceException e = assertThrows(WorkArea.InsufficientSpaceException.class,
+                () -> store.create("big.bin", 150_000, chunk));
+        assertTrue(e.getMessage().contains("this upload"), e.getMessage());
+        try (var uploads = Files.list(temp.resolve("uploads"))) {
+            assertEquals(2, uploads.count());
+        }
+
+        assertTrue(store.delete(deleted.getUploadId()));
+        assertEquals(2L * data.length, workArea.getBytesHeld());
+
+        for (int index = 0; index < 2; index++) {
+            store.writeChunk(taken, index, new ByteArrayInputStream(data, index * chunk, chunk),
+                    ChunkedUploadStoreTest.checksum(Arrays.copyOfRange(data, index * chunk, (index + 1) * chunk)));
+        }
+        store.complete(taken);
+        // The job fits in what the upload held, however full the rest of the quota is
+        WorkArea.Reservation others = workArea.reserve(QUOTA - workArea.getBytesHeld());
+        try (WorkArea.Job job = workArea.create(taken.getSize(), taken.getReservation())) {
+            others.close();
+            File input = store.take(taken.getUploadId(), job.getDirectory());
+            assertArrayEquals(data, Files.readAllBytes(input.toPath()));
+            // Only the job's estimate is left
+            assertEquals(2L * data.length, workArea.getBytesHeld());
+        }
+        assertEquals(0, workArea.getBytesHeld());
+
+        // Restarted: an upload found on disk is charged again, and the sweep releases it
+        ChunkedUploadStore.Upload idle = store.create("idle.bin", 100_000, chunk);
+        ChunkedUploadStore restarted = new ChunkedUploadStore();
+        restarted.setDirectory(temp.resolve("uploads").toString());
+        restarted.setTtlMinutes(60);
+        WorkArea other = new WorkArea();
+        ReflectionTestUtils.setField(other, "metrics", CompressionMetrics.noop());
+        other.setQuotaBytes(QUOTA);
+        restarted.setWorkArea(other);
+        assertNotNull(restarted.get(idle.getUploadId()));
+        assertEquals(200_000, other.getBytesHeld());
+        ChunkedUploadStoreTest.age(temp.resolve("uploads").resolve(idle.getUploadId()));
+        restarted.sweep();
+        assertEquals(0, other.getBytesHeld());
+    }
+
+    @Test
+    void inputsOfUnknownSizeAreChargedAsTheyArrive() throws IOException {
+        workArea.setQuotaBytes(3 * WorkArea.CHARGE_STEP * WorkArea.ESTIMATE_FACTOR);
+        WorkArea.Job job = workArea.create(0);
+        assertEquals(0, workArea.getBytesHeld());
+
+        InputStream in = job.charge(new InputStream() {
+            @Override
+            public int read() {
+                return 0;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return len;
+            }
+        });
+        byte[] buffer = new byte[1024 * 1024];
+        assertEquals(buffer.length, in.read(buffer));
+        assertEquals(WorkArea.CHARGE_STEP * WorkArea.ESTIMATE_FACTOR, workArea.getBytesHeld());
+        WorkArea.InsufficientSpaceException e = assertThrows(WorkArea.InsufficientSpaceException.class, () -> {
+            while (true) {
+                in.read(buffer);
+            }
+        });
+        assertTrue(e.getMessage().startsWith("Work area is full"), e.getMessage());
+        assertEquals(3 * WorkArea.CHARGE_STEP * WorkArea.ESTIMATE_FACTOR, workArea.getBytesHeld());
+
+        job.close();
+        assertEquals(0, workArea.getBytesHeld());
+    }
+
+    @Test
+    void theQuotaMustFitTheLargestUpload() {
+        WorkArea small = new WorkArea();
+        ReflectionTestUtils.setField(small, "metrics", CompressionMetrics.noop());
+        small.setDirectory(temp.resolve("small").toString());
+        small.setQuotaBytes(10L * 1024 * 1024 * 1024);
+        small.setMaxUploadSize(DataSize.ofGigabytes(16));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, small::start);
+        assertTrue(e.getMessage().startsWith("compression.work.quota-bytes"), e.getMessage());
+    }
+
+    @Test
+    void concurrentJobsNeverOvercommitTheQuota() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicLong peak = new AtomicLong();
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try (WorkArea.Job job = workArea.create(60_000)) {
+                        peak.accumulateAndGet(workArea.getBytesHeld(), Math::max);
+                        assertTrue(job.getDirectory().isDirectory());
+                        return true;
+                    } catch (WorkArea.InsufficientSpaceException e) {
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            int admitted = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) admitted++;
+            }
+            assertTrue(admitted > 0);
+            assertTrue(peak.get() <= QUOTA, "peak " + peak.get());
+            assertEquals(0, workArea.getBytesHeld());
+            try (var jobs = Files.list(temp.resolve("work"))) {
+                assertEquals(0, jobs.count());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}